@@ -29,12 +29,11 @@ public interface AIService {
     List<QuickAction> getQuickActions() throws ApiException;
 
     /**
-     * 获取节日消费分析建议
-     * @param csvPath 账单CSV文件路径
+     * 获取节日消费分析建议，分析的是当前登录用户自己的账单
      * @return AI建议响应
      * @throws ApiException
      */
-    AIAdviceResponse getHolidayAdvice(String csvPath) throws ApiException;
+    AIAdviceResponse getHolidayAdvice() throws ApiException;
 
     /**
      * 获取旅游消费建议
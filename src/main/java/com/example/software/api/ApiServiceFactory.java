@@ -20,6 +20,7 @@ public class ApiServiceFactory {
 
     private String currentUsername;
     private String token;
+    private ChangeEventClient changeEventClient;
 
     private ApiServiceFactory() {
     }
@@ -42,7 +43,8 @@ public class ApiServiceFactory {
      * @param username The username
      * @param token The authentication token
      */
-    public void setUserContext(String username, String token) {
+    public synchronized void setUserContext(String username, String token) {
+        stopChangeEvents();
         this.currentUsername = username;
         this.token = token;
     }
@@ -50,7 +52,8 @@ public class ApiServiceFactory {
     /**
      * Clear the current user context
      */
-    public void clearUserContext() {
+    public synchronized void clearUserContext() {
+        stopChangeEvents();
         this.currentUsername = null;
         this.token = null;
     }
@@ -158,6 +161,27 @@ public class ApiServiceFactory {
         }
     }
 
+    /**
+     * Get the shared change push listener for the current user, started on first use.
+     * The offline test user gets a listener that never connects.
+     *
+     * @return The change event client
+     */
+    public synchronized ChangeEventClient getChangeEventClient() {
+        if (changeEventClient == null) {
+            changeEventClient = new ChangeEventClient(isTestUser() ? null : token);
+            changeEventClient.start();
+        }
+        return changeEventClient;
+    }
+
+    private void stopChangeEvents() {
+        if (changeEventClient != null) {
+            changeEventClient.stop();
+            changeEventClient = null;
+        }
+    }
+
     /**
      * Get the user service
      *
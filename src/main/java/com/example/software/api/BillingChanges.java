@@ -0,0 +1,69 @@
+package com.example.software.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Billing changes since a client's last sync.
+ * entries holds the current state of inserted or updated entries, deleted holds the IDs of removed ones.
+ * When reset is true the client is too far behind (or the server restarted) and must reload everything;
+ * epoch and sequence are then the values to sync from after the reload.
+ */
+public class BillingChanges {
+    private long epoch;
+    private long sequence;
+    private boolean reset;
+    private List<BillingEntry> entries = new ArrayList<>();
+    private List<String> deleted = new ArrayList<>();
+
+    public BillingChanges() {
+    }
+
+    public BillingChanges(long epoch, long sequence, boolean reset, List<BillingEntry> entries, List<String> deleted) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.reset = reset;
+        this.entries = entries;
+        this.deleted = deleted;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    public List<BillingEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<BillingEntry> entries) {
+        this.entries = entries;
+    }
+
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<String> deleted) {
+        this.deleted = deleted;
+    }
+}
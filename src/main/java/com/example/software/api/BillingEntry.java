@@ -1,6 +1,14 @@
 package com.example.software.api;
 
+import com.example.software.util.LocalDateAdapter;
+import com.example.software.util.LocalTimeAdapter;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlTransient;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -10,17 +18,25 @@ import java.time.format.DateTimeFormatter;
 /**
  * Model class for a billing entry
  */
+@XmlAccessorType(XmlAccessType.FIELD)
 public class BillingEntry {
     private String entryId;
     private String category;
     private String product;
     private BigDecimal price;
     @JsonFormat(pattern = "yyyy-MM-dd")
+    @XmlJavaTypeAdapter(LocalDateAdapter.class)
     private LocalDate date;
     @JsonFormat(pattern = "HH:mm")
+    @XmlJavaTypeAdapter(LocalTimeAdapter.class)
     private LocalTime time;
+    // Derived from time, not written to XML
+    @XmlTransient
     private String formattedTime;
     private String remark;
+    // Version for optimistic concurrency, assigned by the server; null when unknown
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long version;
 
     public BillingEntry() {
     }
@@ -101,4 +117,12 @@ public class BillingEntry {
     public void setRemark(String remark) {
         this.remark = remark;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,47 @@
+package com.example.software.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of billing entries returned by keyset pagination.
+ * nextCursor is opaque and is passed back as the cursor parameter to fetch the following page.
+ */
+public class BillingEntryPage {
+    private List<BillingEntry> entries = new ArrayList<>();
+    private String nextCursor;
+    private boolean hasMore;
+
+    public BillingEntryPage() {
+    }
+
+    public BillingEntryPage(List<BillingEntry> entries, String nextCursor, boolean hasMore) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<BillingEntry> getEntries() {
+        return entries;
+    }
+
+    public void setEntries(List<BillingEntry> entries) {
+        this.entries = entries;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+}
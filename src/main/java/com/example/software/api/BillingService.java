@@ -25,6 +25,15 @@ public interface BillingService {
      */
     BillingEntryResponse createEntry(String category, String product, BigDecimal price, 
                                     LocalDate date, LocalTime time, String remark) throws ApiException;
+
+    /**
+     * Create several billing entries in one request
+     *
+     * @param entries The entries to create; entry IDs are assigned by the server
+     * @return One response per entry, in the same order
+     * @throws ApiException If the request fails as a whole
+     */
+    List<BillingEntryResponse> createEntries(List<BillingEntry> entries) throws ApiException;
     
     /**
      * Get all billing entries for the authenticated user
@@ -38,7 +47,33 @@ public interface BillingService {
      */
     List<BillingEntry> getEntries(LocalDate startDate, LocalDate endDate,
                                  String category, String searchTerm) throws ApiException;
+
+    /**
+     * Get one page of billing entries, ordered by date, time and entry ID
+     *
+     * @param startDate Optional start date filter
+     * @param endDate Optional end date filter
+     * @param category Optional category filter
+     * @param keyword Optional search keyword
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @param limit Maximum number of entries in the page
+     * @param ascending True for oldest first, false for newest first
+     * @return The page and the cursor of the next page
+     * @throws ApiException If retrieval fails
+     */
+    BillingEntryPage getEntriesPage(LocalDate startDate, LocalDate endDate, String category, String keyword,
+                                    String cursor, int limit, boolean ascending) throws ApiException;
     
+    /**
+     * Get the billing entries created, updated or deleted since the last sync
+     *
+     * @param epoch The epoch returned by the previous sync, or 0 for the first one
+     * @param since The sequence returned by the previous sync, or -1 for the first one
+     * @return The changes, or a reset marker when all entries must be reloaded
+     * @throws ApiException If retrieval fails
+     */
+    BillingChanges getChanges(long epoch, long since) throws ApiException;
+
     /**
      * Update an existing billing entry
      * 
@@ -73,5 +108,33 @@ public interface BillingService {
      * @throws ApiException If import fails
      */
     ImportResponse importFromCsv(File file) throws ApiException;
+
+    /**
+     * Upload a CSV or XML file as a background import job and start it.
+     * The file is sent in chunks; an interrupted chunk is resumed from the bytes the server already has.
+     *
+     * @param file The CSV or XML file
+     * @return The job status right after it was queued
+     * @throws ApiException If the upload or start fails
+     */
+    ImportJob startImportJob(File file) throws ApiException;
+
+    /**
+     * Get the progress of an import job
+     *
+     * @param jobId The job ID
+     * @return The current job status
+     * @throws ApiException If the job does not exist or retrieval fails
+     */
+    ImportJob getImportJob(String jobId) throws ApiException;
+
+    /**
+     * Cancel an import job; entries committed before cancellation are kept
+     *
+     * @param jobId The job ID
+     * @return The job status after the cancel request
+     * @throws ApiException If the job does not exist or the request fails
+     */
+    ImportJob cancelImportJob(String jobId) throws ApiException;
     ApiResponse saveData() throws ApiException;
 }
@@ -0,0 +1,190 @@
+package com.example.software.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Listens to the server's change push channel (Server-Sent Events on /v1/events)
+ *
+ * Events are named "billing", "savings" or "summary" and carry the latest change sequence;
+ * "ready" is sent whenever the connection is (re)established, so listeners can catch up on
+ * anything missed while disconnected. Listeners run on the background reader thread and must
+ * hand UI work to the JavaFX thread themselves. A lost connection is retried with backoff.
+ * A client created without a token (the offline test user) never connects.
+ */
+public class ChangeEventClient {
+
+    public static final String BILLING = "billing";
+    public static final String SAVINGS = "savings";
+    public static final String SUMMARY = "summary";
+    public static final String READY = "ready";
+
+    private static final String EVENTS_URL = "http://localhost:8080/api/purseai/v1/events";
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+    private static final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String token;
+    private final Map<String, List<LongConsumer>> listeners = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    private volatile InputStream stream;
+    private Thread reader;
+
+    public ChangeEventClient(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Register a listener for one event name
+     *
+     * @param event The event name (billing, savings, summary or ready)
+     * @param listener Receives the change sequence (-1 for ready)
+     * @return Runnable that removes the listener again
+     */
+    public Runnable addListener(String event, LongConsumer listener) {
+        List<LongConsumer> eventListeners = listeners.computeIfAbsent(event, e -> new CopyOnWriteArrayList<>());
+        eventListeners.add(listener);
+        return () -> eventListeners.remove(listener);
+    }
+
+    /**
+     * Start listening in a background daemon thread; does nothing if already started
+     */
+    public synchronized void start() {
+        if (running || token == null || token.isEmpty()) {
+            return;
+        }
+        running = true;
+        reader = new Thread(this::run, "change-events");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Close the connection and stop reconnecting
+     */
+    public synchronized void stop() {
+        running = false;
+        closeStream();
+        if (reader != null) {
+            reader.interrupt();
+            reader = null;
+        }
+    }
+
+    private void run() {
+        long retryDelay = 1000;
+        while (running) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder()
+                        .uri(URI.create(EVENTS_URL))
+                        .header("Authorization", "Bearer " + token)
+                        .header("Accept", "text/event-stream")
+                        .GET()
+                        .build();
+                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                if (response.statusCode() == 200) {
+                    stream = response.body();
+                    retryDelay = 1000;
+                    readEvents(stream);
+                } else {
+                    response.body().close();
+                    System.out.println("订阅变更推送失败，响应码: " + response.statusCode());
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("变更推送连接中断: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                closeStream();
+            }
+
+            if (running) {
+                try {
+                    Thread.sleep(retryDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    // Minimal SSE parsing: "event:" and "data:" fields, a blank line dispatches, ":" lines are comments
+    private void readEvents(InputStream input) throws IOException {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String event = "message";
+        StringBuilder data = new StringBuilder();
+        String line;
+        while (running && (line = lines.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    dispatch(event, data.toString());
+                }
+                event = "message";
+                data.setLength(0);
+            } else if (line.startsWith("event:")) {
+                event = line.substring(6).trim();
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line.substring(5).trim());
+            }
+        }
+    }
+
+    private void dispatch(String event, String data) {
+        List<LongConsumer> eventListeners = listeners.get(event);
+        if (eventListeners == null || eventListeners.isEmpty()) {
+            return;
+        }
+        long sequence;
+        try {
+            sequence = objectMapper.readTree(data).path("sequence").asLong(-1);
+        } catch (IOException e) {
+            sequence = -1;
+        }
+        for (LongConsumer listener : eventListeners) {
+            try {
+                listener.accept(sequence);
+            } catch (RuntimeException e) {
+                System.out.println("处理变更事件 " + event + " 时出错: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeStream() {
+        InputStream current = stream;
+        stream = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+    }
+}
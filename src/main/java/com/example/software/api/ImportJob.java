@@ -0,0 +1,191 @@
+package com.example.software.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Status of a background import job.
+ * state is one of UPLOADING, QUEUED, RUNNING, COMPLETED, FAILED or CANCELLED;
+ * totalBytes is -1 when the size was not declared.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImportJob {
+    private String jobId;
+    private String state;
+    private String fileName;
+    private long totalBytes;
+    private long bytesReceived;
+    private long bytesProcessed;
+    private int entriesImported;
+    private int entriesSkipped;
+    // Rows not imported because an identical entry already existed
+    private int entriesDuplicate;
+    // Imported rows categorised by the user's rules
+    private int entriesCategorized;
+    private double rowsPerSecond;
+    private List<RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+    private String message;
+
+    public ImportJob() {
+    }
+
+    /**
+     * Whether the job has completed, failed or been cancelled
+     */
+    public boolean isFinished() {
+        return "COMPLETED".equals(state) || "FAILED".equals(state) || "CANCELLED".equals(state);
+    }
+
+    /**
+     * Fraction of the file parsed so far (0 to 1), or -1 when the size is unknown
+     */
+    public double getProgress() {
+        if (totalBytes <= 0) {
+            return -1;
+        }
+        return Math.min(1.0, (double) bytesProcessed / totalBytes);
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    public void setBytesProcessed(long bytesProcessed) {
+        this.bytesProcessed = bytesProcessed;
+    }
+
+    public int getEntriesImported() {
+        return entriesImported;
+    }
+
+    public void setEntriesImported(int entriesImported) {
+        this.entriesImported = entriesImported;
+    }
+
+    public int getEntriesSkipped() {
+        return entriesSkipped;
+    }
+
+    public void setEntriesSkipped(int entriesSkipped) {
+        this.entriesSkipped = entriesSkipped;
+    }
+
+    public int getEntriesDuplicate() {
+        return entriesDuplicate;
+    }
+
+    public void setEntriesDuplicate(int entriesDuplicate) {
+        this.entriesDuplicate = entriesDuplicate;
+    }
+
+    public int getEntriesCategorized() {
+        return entriesCategorized;
+    }
+
+    public void setEntriesCategorized(int entriesCategorized) {
+        this.entriesCategorized = entriesCategorized;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public void setErrorsTruncated(boolean errorsTruncated) {
+        this.errorsTruncated = errorsTruncated;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    /**
+     * A rejected row: its line (CSV) or entry position (XML) and the reason
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class RowError {
+        private long line;
+        private String message;
+
+        public RowError() {
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -6,6 +6,8 @@ package com.example.software.api;
 public class ImportResponse extends ApiResponse {
     private int entriesImported;
     private int entriesSkipped;
+    private int entriesDuplicate;
+    private int entriesCategorized;
     
     public ImportResponse() {
         super();
@@ -36,4 +38,26 @@ public class ImportResponse extends ApiResponse {
     public void setEntriesSkipped(int entriesSkipped) {
         this.entriesSkipped = entriesSkipped;
     }
+
+    /**
+     * Rows not imported because an identical entry already existed
+     */
+    public int getEntriesDuplicate() {
+        return entriesDuplicate;
+    }
+
+    public void setEntriesDuplicate(int entriesDuplicate) {
+        this.entriesDuplicate = entriesDuplicate;
+    }
+
+    /**
+     * Imported rows whose category was filled in by the user's categorisation rules
+     */
+    public int getEntriesCategorized() {
+        return entriesCategorized;
+    }
+
+    public void setEntriesCategorized(int entriesCategorized) {
+        this.entriesCategorized = entriesCategorized;
+    }
 }
@@ -65,7 +65,7 @@ public class MockAIService implements AIService {
     }
 
     @Override
-    public AIAdviceResponse getHolidayAdvice(String csvPath) throws ApiException {
+    public AIAdviceResponse getHolidayAdvice() throws ApiException {
         return null;
     }
 
@@ -14,6 +14,9 @@ import java.util.stream.Collectors;
 public class MockBillingService implements BillingService {
 
     private static final Map<String, BillingEntry> billingEntries = new HashMap<>();
+    // Bumped on every change; the mock keeps no history, so any change means a full reload
+    private static long changeSequence;
+    private static final Map<String, ImportJob> importJobs = new HashMap<>();
 
     static {
         // Add some sample billing entries
@@ -104,11 +107,23 @@ public class MockBillingService implements BillingService {
 
         // Save the entry
         billingEntries.put(entryId, entry);
+        changeSequence++;
 
         // Return the response
         return new BillingEntryResponse(entry);
     }
 
+    @Override
+    public List<BillingEntryResponse> createEntries(List<BillingEntry> entries) throws ApiException {
+        List<BillingEntryResponse> results = new ArrayList<>();
+        for (BillingEntry entry : entries) {
+            results.add(createEntry(entry.getCategory(), entry.getProduct(), entry.getPrice(),
+                entry.getDate() != null ? entry.getDate() : LocalDate.now(),
+                entry.getTime() != null ? entry.getTime() : LocalTime.now(), entry.getRemark()));
+        }
+        return results;
+    }
+
     @Override
     public List<BillingEntry> getEntries(LocalDate startDate, LocalDate endDate,
                                         String category, String searchTerm) throws ApiException {
@@ -148,6 +163,29 @@ public class MockBillingService implements BillingService {
         return filteredEntries;
     }
 
+    @Override
+    public BillingEntryPage getEntriesPage(LocalDate startDate, LocalDate endDate, String category, String keyword,
+                                           String cursor, int limit, boolean ascending) throws ApiException {
+        List<BillingEntry> entries = getEntries(startDate, endDate, category, keyword);
+        Comparator<BillingEntry> order = Comparator.comparing(BillingEntry::getDate)
+            .thenComparing(BillingEntry::getTime)
+            .thenComparing(BillingEntry::getEntryId);
+        entries.sort(ascending ? order : order.reversed());
+
+        // The mock cursor is simply the offset of the next page
+        int from = cursor != null ? Integer.parseInt(cursor) : 0;
+        int to = Math.min(entries.size(), from + limit);
+        boolean hasMore = to < entries.size();
+        return new BillingEntryPage(new ArrayList<>(entries.subList(Math.min(from, to), to)),
+            hasMore ? String.valueOf(to) : null, hasMore);
+    }
+
+    @Override
+    public BillingChanges getChanges(long epoch, long since) throws ApiException {
+        return new BillingChanges(0, changeSequence, epoch != 0 || since != changeSequence,
+            new ArrayList<>(), new ArrayList<>());
+    }
+
     @Override
     public BillingEntryResponse updateEntry(String entryId, String category, String product,
                                           BigDecimal price, LocalDate date, LocalTime time,
@@ -170,6 +208,7 @@ public class MockBillingService implements BillingService {
         existingEntry.setDate(date);
         existingEntry.setTime(time);
         existingEntry.setRemark(remark);
+        changeSequence++;
 
         // Return the response
         return new BillingEntryResponse(existingEntry);
@@ -187,6 +226,7 @@ public class MockBillingService implements BillingService {
 
         // Delete the entry
         billingEntries.remove(entryId);
+        changeSequence++;
 
         // Return the response
         return new ApiResponse(true, "Entry deleted successfully");
@@ -202,6 +242,39 @@ public class MockBillingService implements BillingService {
         return new ImportResponse(entriesImported, entriesSkipped);
     }
 
+    @Override
+    public ImportJob startImportJob(File file) throws ApiException {
+        // For the mock implementation, the job finishes immediately with the same counts as importFromCsv
+        ImportJob job = new ImportJob();
+        job.setJobId(UUID.randomUUID().toString());
+        job.setState("COMPLETED");
+        job.setFileName(file.getName());
+        job.setTotalBytes(file.length());
+        job.setBytesReceived(file.length());
+        job.setBytesProcessed(file.length());
+        job.setEntriesImported(5);
+        job.setEntriesSkipped(2);
+        importJobs.put(job.getJobId(), job);
+        return job;
+    }
+
+    @Override
+    public ImportJob getImportJob(String jobId) throws ApiException {
+        ImportJob job = importJobs.get(jobId);
+        if (job == null) {
+            throw new ApiException(
+                new ApiError("NOT_FOUND", "Import job not found"),
+                404
+            );
+        }
+        return job;
+    }
+
+    @Override
+    public ImportJob cancelImportJob(String jobId) throws ApiException {
+        return getImportJob(jobId);
+    }
+
     @Override
     public ApiResponse saveData() throws ApiException {
         return null;
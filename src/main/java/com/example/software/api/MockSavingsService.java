@@ -21,6 +21,8 @@ import java.util.*;
 public class MockSavingsService implements SavingsService {
 
     private static final Map<String, SavingPlan> savingPlans = new HashMap<>();
+    // Bumped on every change; the mock keeps no history, so any change means a full reload
+    private static long changeSequence;
     // 使用绝对路径和相对路径结合的方式
     private static final String SAVE_FILE_PATH = System.getProperty("user.dir") + "/purseai/data/savings_plans.json";
     private static final ObjectMapper objectMapper = new ObjectMapper()
@@ -175,6 +177,7 @@ public class MockSavingsService implements SavingsService {
 
         // Save the plan
         savingPlans.put(planId, plan);
+        changeSequence++;
         
         // 保存到文件
         savePlansToFile();
@@ -189,6 +192,12 @@ public class MockSavingsService implements SavingsService {
         return new ArrayList<>(savingPlans.values());
     }
 
+    @Override
+    public SavingPlanChanges getPlanChanges(long epoch, long since) throws ApiException {
+        return new SavingPlanChanges(0, changeSequence, epoch != 0 || since != changeSequence,
+            new ArrayList<>(), new ArrayList<>());
+    }
+
     @Override
     public SavingPlanResponse updatePlan(String planId, String name, LocalDate startDate,
                                         String cycle, int cycleTimes, BigDecimal amount,
@@ -220,6 +229,7 @@ public class MockSavingsService implements SavingsService {
         existingPlan.setTotalAmount(totalAmount);
         existingPlan.setCurrency(currency);
         existingPlan.setSavedAmount(savedAmount);
+        changeSequence++;
         
         // 保存到文件
         savePlansToFile();
@@ -240,6 +250,7 @@ public class MockSavingsService implements SavingsService {
 
         // Delete the plan
         savingPlans.remove(planId);
+        changeSequence++;
         
         // 保存到文件
         savePlansToFile();
@@ -117,15 +117,13 @@ public class RealAIService implements AIService {
     }
 
     @Override
-    public AIAdviceResponse getHolidayAdvice(String csvPath) throws ApiException {
+    public AIAdviceResponse getHolidayAdvice() throws ApiException {
         try {
-            Map<String, String> requestBody = new HashMap<>();
-            requestBody.put("csvPath", csvPath);
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(BASE_URL + "/ai/holiday-advice"))
                     .header("Content-Type", "application/json")
                     .header("Authorization", "Bearer " + token)
-                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
+                    .POST(HttpRequest.BodyPublishers.noBody())
                     .build();
             HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
             if (response.statusCode() == 200) {
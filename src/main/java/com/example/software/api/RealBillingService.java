@@ -1,14 +1,16 @@
 package com.example.software.api;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
@@ -18,6 +20,7 @@ import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +39,10 @@ public class RealBillingService implements BillingService {
     private static final ObjectMapper objectMapper = new ObjectMapper()
             .registerModule(new JavaTimeModule());
 
+    // 后台导入每个上传分块的大小（服务端默认最多接受 8MB），以及同一分块失败后的续传次数
+    private static final int IMPORT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int IMPORT_CHUNK_RETRIES = 3;
+
     private final String token;
 
     public RealBillingService(String token) {
@@ -82,6 +89,35 @@ public class RealBillingService implements BillingService {
         }
     }
 
+    @Override
+    public List<BillingEntryResponse> createEntries(List<BillingEntry> entries) throws ApiException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/billing/entries:batch"))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(entries)))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                ApiError error = objectMapper.readValue(response.body(), ApiError.class);
+                throw new ApiException(error, response.statusCode());
+            }
+
+            List<BillingEntryResponse> results = new ArrayList<>(entries.size());
+            for (JsonNode result : objectMapper.readTree(response.body()).path("results")) {
+                if (result.path("success").asBoolean()) {
+                    results.add(new BillingEntryResponse(objectMapper.treeToValue(result.get("data"), BillingEntry.class)));
+                } else {
+                    results.add(new BillingEntryResponse(false, result.path("message").asText()));
+                }
+            }
+            return results;
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("Failed to create billing entries: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public List<BillingEntry> getEntries(LocalDate startDate, LocalDate endDate, String category, String keyword) throws ApiException {
         try {
@@ -136,6 +172,63 @@ public class RealBillingService implements BillingService {
             throw new ApiException("Failed to get billing entries: " + e.getMessage());
         }
     }
+
+    @Override
+    public BillingEntryPage getEntriesPage(LocalDate startDate, LocalDate endDate, String category, String keyword,
+                                           String cursor, int limit, boolean ascending) throws ApiException {
+        try {
+            StringBuilder urlBuilder = new StringBuilder(BASE_URL + "/billing/entries?limit=").append(limit)
+                    .append("&order=").append(ascending ? "asc" : "desc");
+            if (startDate != null) {
+                urlBuilder.append("&startDate=").append(startDate);
+            }
+            if (endDate != null) {
+                urlBuilder.append("&endDate=").append(endDate);
+            }
+            if (category != null && !category.isEmpty()) {
+                urlBuilder.append("&category=").append(URLEncoder.encode(category, StandardCharsets.UTF_8));
+            }
+            if (keyword != null && !keyword.isEmpty()) {
+                urlBuilder.append("&keyword=").append(URLEncoder.encode(keyword, StandardCharsets.UTF_8));
+            }
+            if (cursor != null) {
+                urlBuilder.append("&cursor=").append(URLEncoder.encode(cursor, StandardCharsets.UTF_8));
+            }
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(urlBuilder.toString()))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return objectMapper.readValue(response.body(), BillingEntryPage.class);
+            } else {
+                throw new ApiException("获取账单失败，响应码: " + response.statusCode());
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("Failed to get billing entries: " + e.getMessage());
+        }
+    }
+    @Override
+    public BillingChanges getChanges(long epoch, long since) throws ApiException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/billing/changes?epoch=" + epoch + "&since=" + since))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return objectMapper.readValue(response.body(), BillingChanges.class);
+            } else {
+                throw new ApiException("获取账单变更失败，响应码: " + response.statusCode());
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("Failed to get billing changes: " + e.getMessage());
+        }
+    }
+
     @Override
     public BillingEntryResponse updateEntry(String entryId, String category, String product,
                                             BigDecimal price, LocalDate date, LocalTime time,
@@ -290,35 +383,29 @@ public class RealBillingService implements BillingService {
             // 使用边界字符串来分隔不同部分
             String boundary = "----WebKitFormBoundary" + System.currentTimeMillis();
 
-            // 准备multipart内容
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
             // 添加文件部分头信息
             byte[] fileHeader = (
                     "--" + boundary + "\r\n" +
                             "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getName() + "\"\r\n" +
                             "Content-Type: text/csv\r\n\r\n"
             ).getBytes(StandardCharsets.UTF_8);
-            baos.write(fileHeader);
-
-            // 添加文件内容
-            byte[] fileContent = Files.readAllBytes(file.toPath());
-            baos.write(fileContent);
 
             // 添加结束边界
             byte[] fileEnd = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
-            baos.write(fileEnd);
 
-            // 创建HTTP请求
+            // 文件内容直接从磁盘流式发送，不整体读入内存
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(BASE_URL + "/billing/import/csv"))
                     .header("Content-Type", "multipart/form-data; boundary=" + boundary)
                     .header("Authorization", "Bearer " + token)
-                    .POST(HttpRequest.BodyPublishers.ofByteArray(baos.toByteArray()))
+                    .POST(HttpRequest.BodyPublishers.concat(
+                            HttpRequest.BodyPublishers.ofByteArray(fileHeader),
+                            HttpRequest.BodyPublishers.ofFile(file.toPath()),
+                            HttpRequest.BodyPublishers.ofByteArray(fileEnd)))
                     .build();
 
             System.out.println("发送导入请求至: " + BASE_URL + "/billing/import/csv");
-            System.out.println("文件大小: " + fileContent.length + " 字节");
+            System.out.println("文件大小: " + file.length() + " 字节");
 
             // 发送请求
             HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
@@ -343,6 +430,116 @@ public class RealBillingService implements BillingService {
         }
     }
 
+    @Override
+    public ImportJob startImportJob(File file) throws ApiException {
+        try {
+            Map<String, Object> requestBody = new HashMap<>();
+            requestBody.put("fileName", file.getName());
+            requestBody.put("totalBytes", file.length());
+            HttpRequest create = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/billing/import/jobs"))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
+                    .build();
+            ImportJob job = readImportJob(httpClient.send(create, HttpResponse.BodyHandlers.ofString()));
+            System.out.println("创建导入任务 " + job.getJobId() + "，文件大小: " + file.length() + " 字节");
+
+            // 按分块上传；分块失败时以服务端已接收的字节数为准续传
+            long offset = 0;
+            int failures = 0;
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                while (offset < file.length()) {
+                    byte[] chunk = new byte[(int) Math.min(IMPORT_CHUNK_SIZE, file.length() - offset)];
+                    input.seek(offset);
+                    input.readFully(chunk);
+                    HttpRequest upload = HttpRequest.newBuilder()
+                            .uri(URI.create(BASE_URL + "/billing/import/jobs/" + job.getJobId() + "/content?offset=" + offset))
+                            .header("Content-Type", "application/octet-stream")
+                            .header("Authorization", "Bearer " + token)
+                            .PUT(HttpRequest.BodyPublishers.ofByteArray(chunk))
+                            .build();
+                    try {
+                        HttpResponse<String> response = httpClient.send(upload, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 409) {
+                            JsonNode data = objectMapper.readTree(response.body()).path("data");
+                            if (!"UPLOADING".equals(data.path("state").asText()) || ++failures > IMPORT_CHUNK_RETRIES) {
+                                throw new ApiException(errorOf(response), response.statusCode());
+                            }
+                            offset = data.path("bytesReceived").asLong();
+                            continue;
+                        }
+                        offset = readImportJob(response).getBytesReceived();
+                        failures = 0;
+                    } catch (IOException e) {
+                        if (++failures > IMPORT_CHUNK_RETRIES) {
+                            throw e;
+                        }
+                        System.out.println("上传分块失败，准备续传: " + e.getMessage());
+                        offset = getImportJob(job.getJobId()).getBytesReceived();
+                    }
+                }
+            }
+
+            HttpRequest start = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/billing/import/jobs/" + job.getJobId() + "/start"))
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            return readImportJob(httpClient.send(start, HttpResponse.BodyHandlers.ofString()));
+        } catch (IOException | InterruptedException e) {
+            System.out.println("上传导入文件失败: " + e.getMessage());
+            throw new ApiException("上传导入文件失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ImportJob getImportJob(String jobId) throws ApiException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/billing/import/jobs/" + jobId))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build();
+            return readImportJob(httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("查询导入任务失败: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ImportJob cancelImportJob(String jobId) throws ApiException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/billing/import/jobs/" + jobId + "/cancel"))
+                    .header("Authorization", "Bearer " + token)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            return readImportJob(httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("取消导入任务失败: " + e.getMessage(), e);
+        }
+    }
+
+    // 导入任务接口成功时返回 {"success": true, "data": 任务状态}
+    private ImportJob readImportJob(HttpResponse<String> response) throws IOException, ApiException {
+        if (response.statusCode() / 100 != 2) {
+            throw new ApiException(errorOf(response), response.statusCode());
+        }
+        return objectMapper.treeToValue(objectMapper.readTree(response.body()).get("data"), ImportJob.class);
+    }
+
+    private ApiError errorOf(HttpResponse<String> response) {
+        ApiError error = new ApiError();
+        error.setCode(String.valueOf(response.statusCode()));
+        try {
+            error.setMessage(objectMapper.readTree(response.body()).path("message").asText(response.body()));
+        } catch (IOException e) {
+            error.setMessage(response.body());
+        }
+        return error;
+    }
+
     @Override
     public ApiResponse saveData() throws ApiException {
         try {
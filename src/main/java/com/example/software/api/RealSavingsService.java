@@ -164,6 +164,24 @@ public class RealSavingsService implements SavingsService {
         }
     }
 
+    @Override
+    public SavingPlanChanges getPlanChanges(long epoch, long since) throws ApiException {
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(BASE_URL + "/savings/plans/changes?epoch=" + epoch + "&since=" + since))
+                    .header("Authorization", "Bearer " + token)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                return objectMapper.readValue(response.body(), SavingPlanChanges.class);
+            }
+            throw new ApiException("获取计划变更失败，HTTP状态码: " + response.statusCode());
+        } catch (IOException | InterruptedException e) {
+            throw new ApiException("获取计划变更失败: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public SavingPlanResponse updatePlan(String planId, String name, LocalDate startDate,
                                         String cycle, int cycleTimes, BigDecimal amount,
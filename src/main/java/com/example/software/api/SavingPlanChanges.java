@@ -0,0 +1,71 @@
+package com.example.software.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saving plan changes since a client's last sync.
+ * plans holds the current state of created or updated plans, deleted holds the IDs of removed ones.
+ * When reset is true the client must reload all plans and then sync from the returned epoch and sequence.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class SavingPlanChanges {
+    private long epoch;
+    private long sequence;
+    private boolean reset;
+    private List<SavingPlan> plans = new ArrayList<>();
+    private List<String> deleted = new ArrayList<>();
+
+    public SavingPlanChanges() {
+    }
+
+    public SavingPlanChanges(long epoch, long sequence, boolean reset, List<SavingPlan> plans, List<String> deleted) {
+        this.epoch = epoch;
+        this.sequence = sequence;
+        this.reset = reset;
+        this.plans = plans;
+        this.deleted = deleted;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    public List<SavingPlan> getPlans() {
+        return plans;
+    }
+
+    public void setPlans(List<SavingPlan> plans) {
+        this.plans = plans;
+    }
+
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(List<String> deleted) {
+        this.deleted = deleted;
+    }
+}
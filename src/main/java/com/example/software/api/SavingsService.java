@@ -31,6 +31,16 @@ public interface SavingsService {
      * @throws ApiException If retrieval fails
      */
     List<SavingPlan> getAllPlans() throws ApiException;
+
+    /**
+     * Get the saving plans created, updated or deleted since the last sync
+     *
+     * @param epoch The epoch returned by the previous sync, or 0 for the first one
+     * @param since The sequence returned by the previous sync, or -1 for the first one
+     * @return The changes, or a reset marker when all plans must be reloaded
+     * @throws ApiException If retrieval fails
+     */
+    SavingPlanChanges getPlanChanges(long epoch, long since) throws ApiException;
     
     /**
      * Update an existing saving plan
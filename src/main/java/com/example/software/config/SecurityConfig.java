@@ -18,9 +18,8 @@ import org.springframework.http.HttpMethod;
 import lombok.extern.slf4j.Slf4j;
 
 import com.example.software.security.JwtAuthenticationFilter;
-import com.example.software.security.JwtUtil;
+import com.example.software.security.JwtTokenCache;
 import com.example.software.security.UserDetailsServiceImpl;
-import org.springframework.security.core.userdetails.UserDetailsService;
 
 import java.util.Arrays;
 
@@ -30,9 +29,9 @@ import java.util.Arrays;
 public class SecurityConfig {
 
     @Bean
-    public JwtAuthenticationFilter jwtAuthenticationFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter jwtAuthenticationFilter(JwtTokenCache jwtTokenCache) {
         log.info("Initializing JWT Authentication Filter");
-        return new JwtAuthenticationFilter(jwtUtil, userDetailsService);
+        return new JwtAuthenticationFilter(jwtTokenCache);
     }
 
     @Bean
@@ -1,8 +1,12 @@
 package com.example.software.controller;
 
+import com.example.software.security.TokenUserResolver;
 import com.example.software.service.AiService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,9 +17,11 @@ import java.util.Map;
 @RequestMapping("/v1/ai")
 public class AiController {
     private final AiService aiService;
+    private final TokenUserResolver tokenUserResolver;
 
-    public AiController(AiService aiService) {
+    public AiController(AiService aiService, TokenUserResolver tokenUserResolver) {
         this.aiService = aiService;
+        this.tokenUserResolver = tokenUserResolver;
     }
 
 //    @PostMapping("/chat")
@@ -30,9 +36,13 @@ public class AiController {
     }
 
     @PostMapping("/holiday-advice")
-    public String holidayAdvice(@RequestBody Map<String, String> body) {
-        String csvPath = body.getOrDefault("csvPath", "data/billing/billingEntries.csv");
-        return aiService.holidaySpendingAdvice(csvPath);
+    public ResponseEntity<String> holidayAdvice(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
+        // 只分析调用者自己分区中的账单
+        return ResponseEntity.ok(aiService.holidaySpendingAdvice(userId));
     }
 
     @PostMapping("/tourism-advice")
@@ -42,19 +52,32 @@ public class AiController {
     }
 
     @GetMapping("/consume-analysis")
-    public String consumeAnalysis() {
-        return aiService.consumeAnalysis();
+    public ResponseEntity<String> consumeAnalysis(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
+        return ResponseEntity.ok(aiService.consumeAnalysis(userId));
     }
 
     @PostMapping("/consume-record")
-    public String consumeRecord(@RequestBody Map<String, String> body) {
+    public ResponseEntity<String> consumeRecord(@RequestHeader("Authorization") String token,
+                                                @RequestBody Map<String, String> body) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
         String record = body.get("record");
-        return aiService.consumeRecordAndAdd(record);
+        return ResponseEntity.ok(aiService.consumeRecordAndAdd(userId, record));
     }
 
     @GetMapping("/periodic-reminders")
-    public String periodicReminders() {
-        return aiService.periodicReminders();
+    public ResponseEntity<String> periodicReminders(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        }
+        return ResponseEntity.ok(aiService.periodicReminders(userId));
     }
 
 }
\ No newline at end of file
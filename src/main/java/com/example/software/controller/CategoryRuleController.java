@@ -0,0 +1,160 @@
+package com.example.software.controller;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.model.CategoryRule;
+import com.example.software.security.TokenUserResolver;
+import com.example.software.service.CategoryRuleService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * 自动分类规则
+ *
+ * GET /v1/billing/rules 按优先级列出规则，POST 在末尾新增，PUT 以请求体中的列表替换全部规则（用于调整顺序），
+ * PUT/DELETE /{ruleId} 修改或删除单条规则。
+ * POST /v1/billing/rules/test 用当前规则对请求体中的账单分类，data.category 为 null 表示没有规则匹配。
+ */
+@RestController
+@RequestMapping("/v1/billing/rules")
+public class CategoryRuleController {
+
+    private static final Logger logger = Logger.getLogger(CategoryRuleController.class.getName());
+
+    private final CategoryRuleService categoryRuleService;
+    private final TokenUserResolver tokenUserResolver;
+
+    public CategoryRuleController(CategoryRuleService categoryRuleService, TokenUserResolver tokenUserResolver) {
+        this.categoryRuleService = categoryRuleService;
+        this.tokenUserResolver = tokenUserResolver;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> listRules(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(success(categoryRuleService.list(userId)));
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createRule(@RequestHeader("Authorization") String token,
+                                        @RequestBody CategoryRule rule) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(success(categoryRuleService.create(userId, rule)));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IOException e) {
+            return saveFailed(e);
+        }
+    }
+
+    @PutMapping
+    public ResponseEntity<?> replaceRules(@RequestHeader("Authorization") String token,
+                                          @RequestBody List<CategoryRule> rules) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        try {
+            return ResponseEntity.ok(success(categoryRuleService.replaceAll(userId, rules)));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IOException e) {
+            return saveFailed(e);
+        }
+    }
+
+    @PutMapping("/{ruleId}")
+    public ResponseEntity<?> updateRule(@RequestHeader("Authorization") String token,
+                                        @PathVariable String ruleId,
+                                        @RequestBody CategoryRule rule) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        try {
+            CategoryRule updated = categoryRuleService.update(userId, ruleId, rule);
+            return updated == null ? notFound(ruleId) : ResponseEntity.ok(success(updated));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IOException e) {
+            return saveFailed(e);
+        }
+    }
+
+    @DeleteMapping("/{ruleId}")
+    public ResponseEntity<?> deleteRule(@RequestHeader("Authorization") String token, @PathVariable String ruleId) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        try {
+            if (!categoryRuleService.delete(userId, ruleId)) {
+                return notFound(ruleId);
+            }
+            return ResponseEntity.ok(Map.of("success", true, "message", "规则已删除"));
+        } catch (IOException e) {
+            return saveFailed(e);
+        }
+    }
+
+    @PostMapping("/test")
+    public ResponseEntity<?> testRules(@RequestHeader("Authorization") String token,
+                                       @RequestBody BillingEntry entry) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("category", categoryRuleService.rulesFor(userId).categorize(entry));
+        return ResponseEntity.ok(success(data));
+    }
+
+    private static Map<String, Object> success(Object data) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", data);
+        return response;
+    }
+
+    private static ResponseEntity<?> saveFailed(IOException e) {
+        logger.severe("保存分类规则失败: " + e.getMessage());
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "保存分类规则失败: " + e.getMessage());
+    }
+
+    private static ResponseEntity<?> notFound(String ruleId) {
+        return error(HttpStatus.NOT_FOUND, "分类规则不存在: " + ruleId);
+    }
+
+    private static ResponseEntity<?> unauthorized() {
+        return error(HttpStatus.UNAUTHORIZED, "Invalid token");
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("success", false, "message", message));
+    }
+}
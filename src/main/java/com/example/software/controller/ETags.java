@@ -0,0 +1,43 @@
+package com.example.software.controller;
+
+/**
+ * 版本号与 HTTP ETag / If-Match 之间的转换
+ *
+ * ETag 为带引号的版本号，如 "1718000000000001"。
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * 取调用方期望的版本：优先使用 If-Match 头，其次使用请求中的 expectedVersion。
+     * 两者都没有或 If-Match 为 * 时返回 null，表示不比较版本。
+     *
+     * @throws IllegalArgumentException If-Match 不是单个版本号时
+     */
+    static Long expectedVersion(String ifMatch, Long expectedVersion) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return expectedVersion;
+        }
+        String tag = ifMatch.trim();
+        if ("*".equals(tag)) {
+            return null;
+        }
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+            tag = tag.substring(1, tag.length() - 1);
+        }
+        try {
+            return Long.parseLong(tag);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的 If-Match: " + ifMatch);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.software.controller;
+
+import com.example.software.security.TokenUserResolver;
+import com.example.software.service.ChangeEventBroadcaster;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 数据变更推送（Server-Sent Events）
+ *
+ * 事件名为 billing、savings 或 summary，数据为 {"sequence": n}；客户端收到后
+ * 用对应的 /changes 接口按序号拉取增量。连接建立时先收到一个 ready 事件。
+ */
+@RestController
+@RequestMapping("/v1/events")
+public class EventController {
+
+    private final ChangeEventBroadcaster changeEventBroadcaster;
+    private final TokenUserResolver tokenUserResolver;
+
+    public EventController(ChangeEventBroadcaster changeEventBroadcaster, TokenUserResolver tokenUserResolver) {
+        this.changeEventBroadcaster = changeEventBroadcaster;
+        this.tokenUserResolver = tokenUserResolver;
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> subscribe(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("success", false, "message", "Invalid token"));
+        }
+        return ResponseEntity.ok(changeEventBroadcaster.subscribe(userId));
+    }
+}
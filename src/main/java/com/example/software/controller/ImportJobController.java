@@ -0,0 +1,174 @@
+package com.example.software.controller;
+
+import com.example.software.model.ImportJobStatus;
+import com.example.software.security.TokenUserResolver;
+import com.example.software.service.ImportJobService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * 后台导入任务
+ *
+ * 1. POST /v1/billing/import/jobs，请求体 {"fileName", "format"（可选）, "totalBytes"}，返回任务状态
+ * 2. PUT /{jobId}/content?offset=n，请求体为文件内容的一个分块（application/octet-stream），可多次调用；
+ *    偏移量不符时返回 409 和当前状态，客户端从 data.bytesReceived 继续上传
+ * 3. POST /{jobId}/start 开始导入，之后用 GET /{jobId} 查询进度，POST /{jobId}/cancel 取消
+ */
+@RestController
+@RequestMapping("/v1/billing/import/jobs")
+public class ImportJobController {
+
+    private static final Logger logger = Logger.getLogger(ImportJobController.class.getName());
+
+    private final ImportJobService importJobService;
+    private final TokenUserResolver tokenUserResolver;
+
+    public ImportJobController(ImportJobService importJobService, TokenUserResolver tokenUserResolver) {
+        this.importJobService = importJobService;
+        this.tokenUserResolver = tokenUserResolver;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createJob(@RequestHeader("Authorization") String token,
+                                       @RequestBody Map<String, Object> body) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        Object fileName = body.get("fileName");
+        Object format = body.get("format");
+        Object totalBytes = body.get("totalBytes");
+        if (fileName == null || fileName.toString().isBlank()) {
+            return error(HttpStatus.BAD_REQUEST, "缺少文件名");
+        }
+        try {
+            ImportJobStatus status = importJobService.create(userId, fileName.toString(),
+                format == null ? null : format.toString(),
+                totalBytes instanceof Number ? ((Number) totalBytes).longValue() : -1);
+            return ResponseEntity.status(HttpStatus.CREATED).body(success(status));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+        } catch (IOException e) {
+            logger.severe("创建导入任务失败: " + e.getMessage());
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "创建导入任务失败: " + e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> listJobs(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", importJobService.list(userId));
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(@RequestHeader("Authorization") String token, @PathVariable String jobId) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        ImportJobStatus status = importJobService.find(userId, jobId);
+        return status == null ? notFound(jobId) : ResponseEntity.ok(success(status));
+    }
+
+    @PutMapping(value = "/{jobId}/content", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunk(@RequestHeader("Authorization") String token,
+                                         @PathVariable String jobId,
+                                         @RequestParam(defaultValue = "0") long offset,
+                                         InputStream content) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        try {
+            ImportJobStatus status = importJobService.append(userId, jobId, offset, content);
+            return status == null ? notFound(jobId) : ResponseEntity.ok(success(status));
+        } catch (IllegalStateException e) {
+            return conflict(userId, jobId, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+        } catch (IOException e) {
+            // 已写入的部分计入 bytesReceived，客户端查询状态后续传
+            logger.warning("接收导入分块失败: " + e.getMessage());
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "接收分块失败: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{jobId}/start")
+    public ResponseEntity<?> startJob(@RequestHeader("Authorization") String token, @PathVariable String jobId) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        try {
+            ImportJobStatus status = importJobService.start(userId, jobId);
+            return status == null ? notFound(jobId) : ResponseEntity.ok(success(status));
+        } catch (IllegalStateException e) {
+            return conflict(userId, jobId, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return error(HttpStatus.SERVICE_UNAVAILABLE, "导入队列已满，请稍后重试");
+        }
+    }
+
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<?> cancelJob(@RequestHeader("Authorization") String token, @PathVariable String jobId) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return unauthorized();
+        }
+        ImportJobStatus status = importJobService.cancel(userId, jobId);
+        return status == null ? notFound(jobId) : ResponseEntity.ok(success(status));
+    }
+
+    private static Map<String, Object> success(ImportJobStatus status) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", status);
+        return response;
+    }
+
+    // 409 时附带当前状态，客户端据此决定续传位置
+    private ResponseEntity<?> conflict(String userId, String jobId, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        response.put("data", importJobService.find(userId, jobId));
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+
+    private static ResponseEntity<?> notFound(String jobId) {
+        return error(HttpStatus.NOT_FOUND, "导入任务不存在: " + jobId);
+    }
+
+    private static ResponseEntity<?> unauthorized() {
+        return error(HttpStatus.UNAUTHORIZED, "Invalid token");
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("success", false, "message", message));
+    }
+}
@@ -3,10 +3,12 @@ package com.example.software.controller;
 import com.example.software.dto.SavingsPlanRequest;
 import com.example.software.dto.SavingsPlanResponse;
 import com.example.software.model.User;
+import com.example.software.repository.VersionConflictException;
 import com.example.software.security.UserDetailsImpl;
 import com.example.software.service.SavingsPlanService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -50,6 +52,14 @@ public class SavingsPlanController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/changes")
+    public ResponseEntity<Map<String, Object>> getPlanChanges(
+            @RequestParam(defaultValue = "0") long epoch,
+            @RequestParam(defaultValue = "-1") long since) {
+        User user = getCurrentUser();
+        return ResponseEntity.ok(savingsPlanService.getPlanChanges(user.getUserId(), epoch, since));
+    }
+
     @GetMapping("/getPlan")
     public ResponseEntity<SavingsPlanResponse> getPlan(@RequestParam(value = "planId") String planId) {
         User user = getCurrentUser();
@@ -59,22 +69,43 @@ public class SavingsPlanController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 更新计划。If-Match 头或请求体中的 expectedVersion 指定期望的版本，
+     * 计划已被其他请求修改时返回 409 和当前版本
+     */
     @PutMapping("/updatePlan")
-    public ResponseEntity<SavingsPlanResponse> updatePlan(
+    public ResponseEntity<?> updatePlan(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestParam(value = "planId") String planId,
             @Valid @RequestBody SavingsPlanRequest request) {
         User user = getCurrentUser();
         String userId = user.getUserId();
         
-        SavingsPlanResponse response = savingsPlanService.updatePlan(planId, request, userId);
-        return ResponseEntity.ok(response);
+        try {
+            Long expected = ETags.expectedVersion(ifMatch, request.getExpectedVersion());
+            SavingsPlanResponse response = savingsPlanService.updatePlan(planId, request, userId, expected);
+            return ResponseEntity.ok().eTag(ETags.of(response.getVersion())).body(response);
+        } catch (VersionConflictException e) {
+            return versionConflict(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
     }
 
     @DeleteMapping("/deletePlan")
-    public ResponseEntity<Map<String, Object>> deletePlan(@RequestParam(value = "planId") String planId) {
+    public ResponseEntity<?> deletePlan(
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(value = "planId") String planId,
+            @RequestParam(required = false) Long expectedVersion) {
         User user = getCurrentUser();
 
-        savingsPlanService.deletePlan(planId, user.getUserId());
+        try {
+            savingsPlanService.deletePlan(planId, user.getUserId(), ETags.expectedVersion(ifMatch, expectedVersion));
+        } catch (VersionConflictException e) {
+            return versionConflict(e);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
         
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
@@ -83,6 +114,14 @@ public class SavingsPlanController {
         return ResponseEntity.ok(response);
     }
 
+    private ResponseEntity<?> versionConflict(VersionConflictException e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", e.getMessage());
+        response.put("currentVersion", e.getCurrentVersion());
+        return ResponseEntity.status(HttpStatus.CONFLICT).eTag(ETags.of(e.getCurrentVersion())).body(response);
+    }
+
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         UserDetailsImpl principal = (UserDetailsImpl) authentication.getPrincipal();
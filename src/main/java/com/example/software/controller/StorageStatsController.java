@@ -0,0 +1,59 @@
+package com.example.software.controller;
+
+import com.example.software.security.TokenUserResolver;
+import com.example.software.util.AtomicFileWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 存储运维信息，只对 admin.user-ids 中配置的用户开放
+ *
+ * GET /v1/admin/storage/writes 返回每个文件的写入统计：请求数、实际写入次数（两者之差为被合并的写入）、
+ * 字节数，以及平均、最大和最近一次的写入耗时（毫秒）。
+ */
+@RestController
+@RequestMapping("/v1/admin/storage")
+public class StorageStatsController {
+
+    private final AtomicFileWriter fileWriter;
+    private final TokenUserResolver tokenUserResolver;
+    private final Set<String> adminUserIds;
+
+    public StorageStatsController(AtomicFileWriter fileWriter, TokenUserResolver tokenUserResolver,
+                                  @Value("${admin.user-ids:}") String adminUserIds) {
+        this.fileWriter = fileWriter;
+        this.tokenUserResolver = tokenUserResolver;
+        this.adminUserIds = Arrays.stream(adminUserIds.split(","))
+            .map(String::trim)
+            .filter(id -> !id.isEmpty())
+            .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @GetMapping("/writes")
+    public ResponseEntity<?> writeStats(@RequestHeader("Authorization") String token) {
+        String userId = tokenUserResolver.resolveUserId(token);
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("success", false, "message", "Invalid token"));
+        }
+        if (!adminUserIds.contains(userId)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("success", false, "message", "没有权限"));
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", fileWriter.getStats());
+        return ResponseEntity.ok(response);
+    }
+}
@@ -1,12 +1,11 @@
 package com.example.software.controller;
 
 import com.example.software.model.SummaryResponse;
-import com.example.software.security.JwtUtil;
+import com.example.software.security.TokenUserResolver;
 import com.example.software.service.JwtSecretKeyService;
 import com.example.software.service.SummaryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.logging.Logger;
@@ -18,9 +17,7 @@ public class SummaryController {
     private final SummaryService summaryService;
     private final JwtSecretKeyService jwtService;
     @Autowired
-    private JwtUtil jwtUtil;
-    @Autowired
-    private UserDetailsService userDetailsService;
+    private TokenUserResolver tokenUserResolver;
     public SummaryController(SummaryService summaryService, JwtSecretKeyService jwtService) {
         this.summaryService = summaryService;
         this.jwtService = jwtService;
@@ -56,16 +53,14 @@ public class SummaryController {
 //        if (userId == null) {
 //            return ResponseEntity.status(401).body(null);
 //        }
-        logger.info("Received expenditure request with token: " + authorizationHeader);
-        authorizationHeader = authorizationHeader.replace("Bearer ", "");
-        String username = jwtUtil.extractUsername(authorizationHeader);
-        boolean res = jwtUtil.validateToken(authorizationHeader,userDetailsService.loadUserByUsername(username));
-        if (!res) {
+        logger.info("Received expenditure request");
+        String userId = tokenUserResolver.resolveUserId(authorizationHeader);
+        if (userId == null) {
             return ResponseEntity.status(401).body(null);
         }
 
         try {
-            SummaryResponse response = summaryService.getExpenditureSummary(period, startDate, endDate);
+            SummaryResponse response = summaryService.getExpenditureSummary(userId, period, startDate, endDate);
             return ResponseEntity.ok(response);
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(null);
@@ -86,15 +81,13 @@ public class SummaryController {
 //        if (userId == null) {
 //            return ResponseEntity.status(401).body(null);
 //        }
-        logger.info("Received income request with token: " + authorizationHeader);
-        authorizationHeader = authorizationHeader.replace("Bearer ", "");
-        String username = jwtUtil.extractUsername(authorizationHeader);
-        boolean res = jwtUtil.validateToken(authorizationHeader,userDetailsService.loadUserByUsername(username));
-        if (!res) {
+        logger.info("Received income request");
+        String userId = tokenUserResolver.resolveUserId(authorizationHeader);
+        if (userId == null) {
             return ResponseEntity.status(401).body(null);
         }
         try {
-            SummaryResponse response = summaryService.getIncomeSummary(period, startDate, endDate);
+            SummaryResponse response = summaryService.getIncomeSummary(userId, period, startDate, endDate);
             return ResponseEntity.ok(response);
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(null);
@@ -30,6 +30,9 @@ public class SavingsPlanRequest {
     @NotNull(message = "Currency is required")
     private SavingsPlan.CurrencyType currency;
     
+    // 可选：客户端读取到的计划版本，更新时与当前版本比较
+    private Long expectedVersion;
+    
     public SavingsPlanRequest() {
     }
     
@@ -80,4 +83,12 @@ public class SavingsPlanRequest {
     public void setCurrency(SavingsPlan.CurrencyType currency) {
         this.currency = currency;
     }
-} 
\ No newline at end of file
+    
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
+    
+    public void setExpectedVersion(Long expectedVersion) {
+        this.expectedVersion = expectedVersion;
+    }
+}
@@ -16,6 +16,7 @@ public class SavingsPlanResponse {
     private BigDecimal totalAmount;
     private SavingsPlan.CurrencyType currency;
     private BigDecimal savedAmount;
+    private Long version;
 
     public SavingsPlanResponse() {
     }
@@ -107,4 +108,12 @@ public class SavingsPlanResponse {
     public void setSavedAmount(BigDecimal savedAmount) {
         this.savedAmount = savedAmount;
     }
-} 
\ No newline at end of file
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.software.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 自动分类规则：账单满足所有已设置的条件时归入 category
+ *
+ * keywords 中任一关键词出现在产品名或备注中（不区分大小写）即满足关键词条件；
+ * pattern 为正则表达式，在产品名或备注中找到匹配即满足；
+ * minAmount / maxAmount 为金额闭区间，只设置一端时另一端不限。
+ * 至少要设置一个条件。多条规则同时满足时，按列表顺序取第一条。
+ */
+@Setter
+@Getter
+public class CategoryRule {
+    private String ruleId;
+    private String category;
+    private List<String> keywords = new ArrayList<>();
+    private String pattern;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+
+    public CategoryRule() {
+    }
+}
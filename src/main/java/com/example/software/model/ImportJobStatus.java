@@ -0,0 +1,47 @@
+package com.example.software.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 后台导入任务的状态快照，时间均为毫秒时间戳（未发生时为 0）
+ */
+@Setter
+@Getter
+public class ImportJobStatus {
+    private String jobId;
+    private State state;
+    private String format;
+    private String fileName;
+    // 声明的文件大小，未知时为 -1
+    private long totalBytes;
+    private long bytesReceived;
+    // 已被解析的字节数，用于计算导入进度
+    private long bytesProcessed;
+    private int entriesImported;
+    private int entriesSkipped;
+    private int entriesDuplicate;
+    private int entriesCategorized;
+    private int batches;
+    private double rowsPerSecond;
+    private List<ImportResult.RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+    private String message;
+    private long createdAt;
+    private long startedAt;
+    private long finishedAt;
+
+    public ImportJobStatus() {
+    }
+
+    public enum State {
+        UPLOADING, QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+}
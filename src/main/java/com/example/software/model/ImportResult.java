@@ -0,0 +1,41 @@
+package com.example.software.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Setter
+@Getter
+public class ImportResult {
+    private boolean success;
+    private int entriesImported;
+    private int entriesSkipped;
+    // 与已有账单内容相同而未导入的条数，不计入 entriesSkipped
+    private int entriesDuplicate;
+    // 导入的记录中由分类规则填入类别的条数，包含在 entriesImported 中
+    private int entriesCategorized;
+    private int batches;
+    // 只保留前若干条出错行的详情，errorsTruncated 表示是否有更多错误未列出
+    private List<RowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+
+    public ImportResult() {
+    }
+
+    @Setter
+    @Getter
+    public static class RowError {
+        private long line;
+        private String message;
+
+        public RowError() {
+        }
+
+        public RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+    }
+}
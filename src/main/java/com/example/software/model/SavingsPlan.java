@@ -49,6 +49,10 @@ public class SavingsPlan {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    // 乐观并发版本号，每次保存加一；旧数据没有版本时视为 0
+    @Version
+    private Long version;
+
     // 全参数构造方法
     public SavingsPlan(String planId, String name, LocalDate startDate, LocalDate endDate,
                       String cycle, int cycleTimes, double amount, double totalAmount,
@@ -0,0 +1,160 @@
+package com.example.software.repository;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按 (日期, 类别) 增量维护的收入/支出汇总
+ *
+ * 每个类别各有一棵收入和一棵支出的树状数组（Fenwick tree），下标为距基准日期的天数，
+ * 金额以分为单位存成 long。账单写入时 O(log n) 更新，任意日期范围的分类合计
+ * 只需每个类别做两次前缀和查询，不再扫描原始记录。
+ *
+ * 非线程安全，由 BillingEntryStore 在其读写锁内调用。
+ */
+public class BillingAggregates {
+
+    private final Map<String, DaySeries> income = new HashMap<>();
+    private final Map<String, DaySeries> expense = new HashMap<>();
+
+    /**
+     * 计入一条账单，epochDay 为 BillingLedger.NO_DATE、在 [MIN_DAY, MAX_DAY] 之外，或金额为 NO_AMOUNT、0 时忽略
+     */
+    public void add(String category, int epochDay, long cents) {
+        apply(category, epochDay, cents, 1);
+    }
+
+    public void remove(String category, int epochDay, long cents) {
+        apply(category, epochDay, cents, -1);
+    }
+
+    /**
+     * 返回 [start, end] 内各类别的收入或支出合计（取绝对值），合计为 0 的类别不返回
+     */
+    public Map<String, Double> sumByCategory(LocalDate start, LocalDate end, boolean incomeSide) {
+        long from = start.toEpochDay();
+        long to = end.toEpochDay();
+        Map<String, Double> totals = new HashMap<>();
+        for (Map.Entry<String, DaySeries> series : (incomeSide ? income : expense).entrySet()) {
+            long cents = series.getValue().sum(from, to);
+            if (cents != 0) {
+                totals.put(series.getKey(), Math.abs(cents) / 100.0);
+            }
+        }
+        return totals;
+    }
+
+    private void apply(String category, int epochDay, long cents, int sign) {
+        if (epochDay == BillingLedger.NO_DATE || cents == BillingLedger.NO_AMOUNT || cents == 0) {
+            return;
+        }
+        // 只可能是范围限制之前写入的旧数据，不计入汇总，避免按极端日期跨度分配数组
+        if (epochDay < BillingLedger.MIN_DAY || epochDay > BillingLedger.MAX_DAY) {
+            return;
+        }
+        Map<String, DaySeries> side = cents > 0 ? income : expense;
+        DaySeries series = side.computeIfAbsent(category, c -> new DaySeries());
+        series.add(epochDay, sign * cents);
+        if (series.isEmpty()) {
+            side.remove(category);
+        }
+    }
+
+    /**
+     * 按天的金额序列，daily 保存每天的原始值，tree 是对应的树状数组（1 起始）。
+     * 日期超出当前范围时按倍数扩容并重建。
+     */
+    static final class DaySeries {
+        private static final int INITIAL_DAYS = 64;
+        // 支持的日期范围的天数，扩容后的长度不超过其两倍
+        private static final long MAX_DAYS = BillingLedger.MAX_DAY - BillingLedger.MIN_DAY + 1L;
+
+        private long baseDay;
+        private long[] daily = new long[0];
+        private long[] tree = new long[1];
+        private int nonZeroDays;
+
+        void add(long epochDay, long delta) {
+            ensureCapacity(epochDay);
+            int i = (int) (epochDay - baseDay);
+            long before = daily[i];
+            daily[i] += delta;
+            if (before == 0 && daily[i] != 0) {
+                nonZeroDays++;
+            } else if (before != 0 && daily[i] == 0) {
+                nonZeroDays--;
+            }
+            for (int j = i + 1; j < tree.length; j += j & -j) {
+                tree[j] += delta;
+            }
+        }
+
+        // [fromDay, toDay] 闭区间合计
+        long sum(long fromDay, long toDay) {
+            if (fromDay > toDay) {
+                return 0;
+            }
+            return prefix(toDay) - prefix(fromDay - 1);
+        }
+
+        boolean isEmpty() {
+            return nonZeroDays == 0;
+        }
+
+        // epochDay 及之前所有天的合计
+        private long prefix(long epochDay) {
+            if (daily.length == 0 || epochDay < baseDay) {
+                return 0;
+            }
+            int i = (int) Math.min(epochDay - baseDay, daily.length - 1);
+            long sum = 0;
+            for (int j = i + 1; j > 0; j -= j & -j) {
+                sum += tree[j];
+            }
+            return sum;
+        }
+
+        private void ensureCapacity(long epochDay) {
+            if (daily.length == 0) {
+                baseDay = epochDay;
+                daily = new long[INITIAL_DAYS];
+                tree = new long[INITIAL_DAYS + 1];
+                return;
+            }
+            long lastDay = baseDay + daily.length - 1;
+            if (epochDay >= baseDay && epochDay <= lastDay) {
+                return;
+            }
+
+            long low = Math.min(baseDay, epochDay);
+            long high = Math.max(lastDay, epochDay);
+            long span = high - low + 1;
+            if (span > MAX_DAYS) {
+                throw new IllegalArgumentException("日期跨度超出汇总范围: " + span + " 天");
+            }
+            int size = daily.length;
+            while (size < span) {
+                size *= 2;
+            }
+            // 向前扩展时把空余留在前面，连续插入更早的日期不必每次重建
+            long newBase = epochDay < baseDay ? high - size + 1 : baseDay;
+            long[] grown = new long[size];
+            System.arraycopy(daily, 0, grown, (int) (baseDay - newBase), daily.length);
+            baseDay = newBase;
+            daily = grown;
+            rebuild();
+        }
+
+        private void rebuild() {
+            tree = new long[daily.length + 1];
+            for (int i = 1; i < tree.length; i++) {
+                tree[i] += daily[i - 1];
+                int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,940 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingChanges;
+import com.example.software.api.BillingEntry;
+import com.example.software.api.BillingEntryPage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+/**
+ * 内存中的账单存储
+ *
+ * 启动时映射 BillingJournal 的各月份段并重放日志，之后所有读操作都走内存：
+ * 账单按列存放在 BillingLedger 中，另有 entryId 到行号的主键索引、按月份的行索引、
+ * product/remark 的字符 n-gram 倒排索引（单字和相邻两字，行号位图），以及按 (日期, 类别) 增量维护的收支汇总。
+ * n-gram 不依赖分词，中文和英文单词的任意片段都能直接检索：关键词的各个二元组位图求交得到候选行，
+ * 再逐行确认包含关系，查询只与候选数量有关而与账单总数无关。
+ * 带日期范围的查询只扫描范围内的月份（并跳过最早/最晚日期不相交的月份），
+ * 返回结果时才生成 BillingEntry。
+ * 写操作先持久化到日志，再更新列和索引，并记录变更的月份；合并日志时只重写这些月份段。
+ * 每次变更还会在 ChangeLog 中分配一个序号，客户端用 changesSince 只拉取增量。
+ * 另按内容指纹（EntryFingerprint）维护哈希索引，导入时用 newDuplicateFilter 逐条判断是否已存在。
+ *
+ * 每条账单带一个版本号，update/remove 可以传入期望版本做比较后写入（乐观并发），
+ * 版本不一致时抛出 VersionConflictException。版本号只在内存中：加载时所有账单取同一个
+ * 起始版本（毫秒时间戳 * 1000），之后每次写入分配下一个版本，因此重启前拿到的旧版本
+ * 在重启后一定不匹配，不会误判为最新。
+ */
+public class BillingEntryStore {
+
+    private static final Logger logger = Logger.getLogger(BillingEntryStore.class.getName());
+    // 已删除的行（或字典中无行引用的文本）超过该数量且多于有效部分时回收
+    private static final int COMPACT_MIN_DEAD_ROWS = 1024;
+    // 增量同步最多保留的变更条数（按 entryId 去重）
+    private static final int CHANGE_LOG_CAPACITY = 10000;
+
+    private final BillingJournal billingJournal;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final BillingLedger ledger;
+    // entryId 主键索引，更新和删除按 ID 直接定位行
+    private final Map<String, Integer> byId = new HashMap<>();
+    private final NavigableMap<Integer, MonthRows> months = new TreeMap<>();
+    // 上次合并后有变更、尚未重写的月份段
+    private final Set<Integer> dirtyMonths = new HashSet<>();
+    // n-gram -> 包含它的行
+    private final Map<String, BitSet> gramIndex = new HashMap<>();
+    // 按文本字典编码缓存 n-gram，相同的 product/remark 只切分一次
+    private final Map<Integer, Set<String>> gramsByText = new HashMap<>();
+    // 内容指纹 -> 具有该指纹的行
+    private final Map<Long, int[]> fingerprintIndex = new HashMap<>();
+    // 按文本字典编码缓存规范化文本的哈希
+    private final Map<Integer, Long> textHashes = new HashMap<>();
+    private final BillingAggregates aggregates = new BillingAggregates();
+    private final ChangeLog changeLog = new ChangeLog(CHANGE_LOG_CAPACITY);
+    // 每次写操作提交后以最新序号回调一次
+    private LongConsumer changeListener = sequence -> { };
+    private long lastId;
+    private long lastVersion = System.currentTimeMillis() * 1000;
+
+    public BillingEntryStore(BillingJournal billingJournal) {
+        this.billingJournal = billingJournal;
+        try {
+            ledger = billingJournal.loadSegments();
+            List<Integer> unassigned = new ArrayList<>();
+            for (int row = ledger.nextLive(0); row >= 0; row = ledger.nextLive(row + 1)) {
+                register(row, unassigned);
+            }
+            billingJournal.replay(entry -> replayPut(entry, unassigned), this::replayDelete);
+
+            // 旧数据没有 entryId，分配后立即合并一次，保证 ID 在重启后保持不变
+            for (int row : unassigned) {
+                if (ledger.isLive(row)) {
+                    ledger.setEntryId(row, nextId());
+                    byId.put(ledger.entryId(row), row);
+                    touch(row);
+                }
+            }
+            for (int row = ledger.nextLive(0); row >= 0; row = ledger.nextLive(row + 1)) {
+                ledger.setVersion(row, lastVersion);
+                index(row);
+            }
+            if (!unassigned.isEmpty()) {
+                billingJournal.compact(ledger, dirtySegments());
+                dirtyMonths.clear();
+                logger.info("已为旧账单记录分配 entryId");
+            }
+            logger.info("账单存储已加载 " + ledger.liveCount() + " 条记录，" + months.size() + " 个月份");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load billing entries", e);
+        }
+    }
+
+    /**
+     * 加载时登记一行的 entryId。没有 ID 的行留待分配；
+     * 与已有 ID 重复的行来自中途中断的合并，丢弃后由日志重放恢复。
+     */
+    private void register(int row, List<Integer> unassigned) {
+        String entryId = ledger.entryId(row);
+        if (entryId == null || entryId.isEmpty()) {
+            unassigned.add(row);
+        } else if (byId.containsKey(entryId)) {
+            logger.warning("丢弃月份段中重复的账单 " + entryId);
+            touch(row);
+            ledger.delete(row);
+        } else {
+            observeId(entryId);
+            byId.put(entryId, row);
+        }
+    }
+
+    private static void check(BillingEntry entry) {
+        BillingLedger.checkDate(entry.getDate());
+        BillingLedger.checkAmount(entry.getPrice());
+    }
+
+    // 重放的变更尚未写入月份段，涉及的月份都要在下次合并时重写
+    private void replayPut(BillingEntry entry, List<Integer> unassigned) {
+        Integer row = entry.getEntryId() == null ? null : byId.get(entry.getEntryId());
+        if (row != null) {
+            touch(row);
+            ledger.set(row, entry);
+        } else {
+            row = ledger.append(entry);
+            register(row, unassigned);
+        }
+        touch(row);
+    }
+
+    private void replayDelete(String entryId) {
+        Integer row = byId.remove(entryId);
+        if (row != null) {
+            touch(row);
+            ledger.delete(row);
+        }
+    }
+
+    /**
+     * 新增账单，由存储分配 entryId（忽略调用方传入的值）
+     *
+     * @throws IllegalArgumentException 日期或金额超出 BillingLedger 支持的范围时
+     */
+    public void add(BillingEntry entry) throws IOException {
+        check(entry);
+        lock.writeLock().lock();
+        try {
+            entry.setEntryId(nextId());
+            billingJournal.put(entry);
+            insert(entry);
+            changeLog.record(entry.getEntryId(), false);
+            changeListener.accept(changeLog.getSequence());
+            compactJournalIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量新增账单，整批只做一次持久化写入；有日期或金额超出范围的账单时整批不写入
+     */
+    public void addAll(List<BillingEntry> batch) throws IOException {
+        for (BillingEntry entry : batch) {
+            check(entry);
+        }
+        lock.writeLock().lock();
+        try {
+            for (BillingEntry entry : batch) {
+                entry.setEntryId(nextId());
+            }
+            billingJournal.putAll(batch);
+            for (BillingEntry entry : batch) {
+                insert(entry);
+                changeLog.record(entry.getEntryId(), false);
+            }
+            changeListener.accept(changeLog.getSequence());
+            compactJournalIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public BillingEntry findById(String entryId) {
+        lock.readLock().lock();
+        try {
+            Integer row = byId.get(entryId);
+            return row == null ? null : ledger.materialize(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 用 changes 中的字段覆盖指定账单，并重建其索引
+     *
+     * @return 更新后的账单，不存在时返回 null
+     */
+    public BillingEntry update(String entryId, BillingEntry changes) throws IOException {
+        return update(entryId, changes, null);
+    }
+
+    /**
+     * 当前版本等于 expectedVersion 时才更新（为 null 时不比较）
+     *
+     * @return 更新后的账单（带新版本号），不存在时返回 null
+     * @throws VersionConflictException 版本不一致时
+     */
+    public BillingEntry update(String entryId, BillingEntry changes, Long expectedVersion) throws IOException {
+        check(changes);
+        lock.writeLock().lock();
+        try {
+            Integer row = byId.get(entryId);
+            if (row == null) {
+                return null;
+            }
+            checkVersion(entryId, row, expectedVersion);
+            BillingEntry updated = ledger.materialize(row);
+            updated.setCategory(changes.getCategory());
+            updated.setProduct(changes.getProduct());
+            updated.setPrice(changes.getPrice());
+            updated.setDate(changes.getDate());
+            if (changes.getTime() != null) {
+                updated.setTime(changes.getTime());
+            }
+            updated.setRemark(changes.getRemark());
+            billingJournal.put(updated);
+
+            unindex(row);
+            ledger.set(row, updated);
+            ledger.setVersion(row, nextVersion());
+            index(row);
+            touch(row);
+            changeLog.record(entryId, false);
+            changeListener.accept(changeLog.getSequence());
+            // 回收会改变行号，先生成返回值
+            BillingEntry result = ledger.materialize(row);
+            compactIfSparse();
+            compactJournalIfNeeded();
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除指定账单
+     *
+     * @return 是否存在并已删除
+     */
+    public boolean remove(String entryId) throws IOException {
+        return remove(entryId, null);
+    }
+
+    /**
+     * 当前版本等于 expectedVersion 时才删除（为 null 时不比较）
+     *
+     * @return 是否存在并已删除
+     * @throws VersionConflictException 版本不一致时
+     */
+    public boolean remove(String entryId, Long expectedVersion) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Integer row = byId.get(entryId);
+            if (row == null) {
+                return false;
+            }
+            checkVersion(entryId, row, expectedVersion);
+            billingJournal.delete(entryId);
+            byId.remove(entryId);
+            unindex(row);
+            ledger.delete(row);
+            changeLog.record(entryId, true);
+            changeListener.accept(changeLog.getSequence());
+            compactIfSparse();
+            compactJournalIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 创建导入用的重复检查器，此刻已有的账单作为重复来源
+     */
+    public DuplicateFilter newDuplicateFilter() {
+        lock.readLock().lock();
+        try {
+            return new DuplicateFilter(this, lastVersion);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 内容与 entry 相同（见 EntryFingerprint）且版本不大于 maxVersion 的账单数
+     */
+    int countMatching(BillingEntry entry, long fingerprint, long maxVersion) {
+        lock.readLock().lock();
+        try {
+            int[] rows = fingerprintIndex.get(fingerprint);
+            if (rows == null) {
+                return 0;
+            }
+            int count = 0;
+            for (int row : rows) {
+                // 指纹相同后逐字段确认，排除哈希碰撞
+                if (ledger.version(row) <= maxVersion
+                        && EntryFingerprint.sameContent(ledger.materialize(row), entry)) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<BillingEntry> findAll() {
+        lock.readLock().lock();
+        try {
+            return materializeAll();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询 [start, end] 日期范围内的账单，start/end 为 null 表示不限
+     */
+    public List<BillingEntry> findByDateRange(LocalDate start, LocalDate end) {
+        return query(start, end, null, null);
+    }
+
+    /**
+     * 按日期、类别和关键词组合查询，所有条件均可为 null
+     *
+     * 关键词按空白拆成多个词，每个词都要出现在 product 或 remark 中（不区分大小写）。
+     * 带关键词时结果按相关度排序：命中 product 优先于 remark，完全相同优先于前缀匹配，
+     * 前缀匹配优先于包含；相关度相同的按时间从新到旧。
+     */
+    public List<BillingEntry> query(LocalDate start, LocalDate end, String category, String keyword) {
+        lock.readLock().lock();
+        try {
+            List<BillingEntry> result = new ArrayList<>();
+            int categoryCode = -1;
+            if (category != null && !category.isEmpty()) {
+                categoryCode = ledger.findCategoryCode(category);
+                if (categoryCode < 0) {
+                    return result;
+                }
+            }
+            List<String> terms = searchTerms(keyword);
+            boolean dated = start != null || end != null;
+            int from = start == null ? Integer.MIN_VALUE : BillingLedger.boundOf(start);
+            int to = end == null ? Integer.MAX_VALUE : BillingLedger.boundOf(end);
+
+            if (!terms.isEmpty()) {
+                BitSet candidates = matchTerms(terms);
+                Map<Integer, Integer> scores = new HashMap<>();
+                for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                    if (matches(row, from, to, dated, categoryCode, terms)) {
+                        scores.put(row, relevance(row, terms));
+                    }
+                }
+                List<Integer> ranked = new ArrayList<>(scores.keySet());
+                ranked.sort((a, b) -> {
+                    int byScore = Integer.compare(scores.get(b), scores.get(a));
+                    return byScore != 0 ? byScore : compareRows(b, a);
+                });
+                for (int row : ranked) {
+                    result.add(ledger.materialize(row));
+                }
+                return result;
+            }
+            if (dated) {
+                // 只扫描范围内的月份
+                int fromMonth = start == null ? BillingLedger.NO_MONTH + 1 : BillingLedger.monthOf(from);
+                int toMonth = end == null ? Integer.MAX_VALUE : BillingLedger.monthOf(to);
+                for (MonthRows month : months.subMap(fromMonth, true, toMonth, true).values()) {
+                    if (month.maxDay < from || month.minDay > to) {
+                        continue;
+                    }
+                    for (int i = 0; i < month.size; i++) {
+                        collect(month.rows[i], from, to, true, categoryCode, terms, result);
+                    }
+                }
+                return result;
+            }
+            for (int row = ledger.nextLive(0); row >= 0; row = ledger.nextLive(row + 1)) {
+                collect(row, from, to, false, categoryCode, terms, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按 (日期, 时间, entryId) 排序的分页查询，过滤条件与 query 相同
+     *
+     * 使用键集分页：cursor 为上一页最后一条的排序键，本页从其后开始。
+     * 没有关键词时按月份顺序扫描，凑满 limit + 1 条即停止，不必读取更早（或更晚）的月份。
+     *
+     * @param ascending 为 true 时从旧到新，否则从新到旧
+     * @param cursor    上一页返回的 nextCursor，第一页为 null
+     * @throws IllegalArgumentException cursor 无效时
+     */
+    public BillingEntryPage queryPage(LocalDate start, LocalDate end, String category, String keyword,
+                                      boolean ascending, String cursor, int limit) {
+        PageKey after = cursor == null || cursor.isEmpty() ? null : PageKey.decode(cursor);
+        lock.readLock().lock();
+        try {
+            int categoryCode = -1;
+            if (category != null && !category.isEmpty()) {
+                categoryCode = ledger.findCategoryCode(category);
+                if (categoryCode < 0) {
+                    return new BillingEntryPage(new ArrayList<>(), null, false);
+                }
+            }
+            List<String> terms = searchTerms(keyword);
+            boolean dated = start != null || end != null;
+            int from = start == null ? Integer.MIN_VALUE : BillingLedger.boundOf(start);
+            int to = end == null ? Integer.MAX_VALUE : BillingLedger.boundOf(end);
+            Comparator<Integer> order = ascending ? this::compareRows : (a, b) -> compareRows(b, a);
+
+            List<Integer> matches = new ArrayList<>();
+            if (!terms.isEmpty()) {
+                BitSet candidates = matchTerms(terms);
+                for (int row = candidates.nextSetBit(0); row >= 0; row = candidates.nextSetBit(row + 1)) {
+                    if (matches(row, from, to, dated, categoryCode, terms) && isAfter(row, after, ascending)) {
+                        matches.add(row);
+                    }
+                }
+                matches.sort(order);
+            } else {
+                NavigableMap<Integer, MonthRows> range = months;
+                if (dated) {
+                    int fromMonth = start == null ? BillingLedger.NO_MONTH + 1 : BillingLedger.monthOf(from);
+                    int toMonth = end == null ? Integer.MAX_VALUE : BillingLedger.monthOf(to);
+                    range = range.subMap(fromMonth, true, toMonth, true);
+                }
+                if (after != null) {
+                    int cursorMonth = BillingLedger.monthOf(after.day);
+                    range = ascending ? range.tailMap(cursorMonth, true) : range.headMap(cursorMonth, true);
+                }
+                for (MonthRows month : (ascending ? range : range.descendingMap()).values()) {
+                    if (dated && (month.maxDay < from || month.minDay > to)) {
+                        continue;
+                    }
+                    int before = matches.size();
+                    for (int i = 0; i < month.size; i++) {
+                        int row = month.rows[i];
+                        if (matches(row, from, to, dated, categoryCode, terms) && isAfter(row, after, ascending)) {
+                            matches.add(row);
+                        }
+                    }
+                    matches.subList(before, matches.size()).sort(order);
+                    if (matches.size() > limit) {
+                        break;
+                    }
+                }
+            }
+
+            int count = Math.min(limit, matches.size());
+            List<BillingEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(ledger.materialize(matches.get(i)));
+            }
+            boolean hasMore = matches.size() > limit;
+            String nextCursor = hasMore && count > 0 ? PageKey.of(ledger, matches.get(count - 1)).encode() : null;
+            return new BillingEntryPage(entries, nextCursor, hasMore);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按类别汇总 [start, end] 内的收入（income 为 true）或支出，直接读取增量维护的日汇总
+     */
+    public Map<String, Double> sumByCategory(LocalDate start, LocalDate end, boolean income) {
+        lock.readLock().lock();
+        try {
+            return aggregates.sumByCategory(start, end, income);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getSequence() {
+        return billingJournal.getSequence();
+    }
+
+    /**
+     * 返回客户端上次同步（epoch, since）之后的变更：新增或修改的账单给出当前内容，删除的只给出 entryId
+     */
+    public BillingChanges changesSince(long epoch, long since) {
+        lock.readLock().lock();
+        try {
+            ChangeLog.Delta delta = changeLog.since(epoch, since);
+            List<BillingEntry> entries = new ArrayList<>(delta.getUpdated().size());
+            for (String entryId : delta.getUpdated()) {
+                Integer row = byId.get(entryId);
+                if (row != null) {
+                    entries.add(ledger.materialize(row));
+                }
+            }
+            return new BillingChanges(delta.getEpoch(), delta.getSequence(), delta.isReset(),
+                entries, new ArrayList<>(delta.getDeleted()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 设置变更回调。回调在写锁内执行，只应做排队之类的轻量操作
+     */
+    void setChangeListener(LongConsumer changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    void close() {
+        billingJournal.close();
+    }
+
+    /**
+     * 生成按时间递增的 entryId：毫秒时间戳 * 1000，同一毫秒内顺序递增
+     */
+    private String nextId() {
+        lastId = Math.max(lastId + 1, System.currentTimeMillis() * 1000);
+        return Long.toString(lastId);
+    }
+
+    private long nextVersion() {
+        lastVersion++;
+        return lastVersion;
+    }
+
+    private void checkVersion(String entryId, int row, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != ledger.version(row)) {
+            throw new VersionConflictException(entryId, expectedVersion, ledger.version(row));
+        }
+    }
+
+    private void observeId(String entryId) {
+        try {
+            lastId = Math.max(lastId, Long.parseLong(entryId));
+        } catch (NumberFormatException ignored) {
+            // 早期版本生成的非数字 ID 保持原样
+        }
+    }
+
+    /**
+     * 日志达到阈值时把当前账单表写为快照。数据已经写入日志，合并失败只记录日志，下次写入时重试。
+     */
+    private void compactJournalIfNeeded() {
+        if (!billingJournal.needsCompaction()) {
+            return;
+        }
+        try {
+            billingJournal.compact(ledger, dirtySegments());
+            dirtyMonths.clear();
+        } catch (IOException e) {
+            logger.severe("合并账单日志时出错: " + e.getMessage());
+        }
+    }
+
+    // 追加新行并分配版本号，entry 上同时写回版本，供调用方返回给客户端
+    private void insert(BillingEntry entry) {
+        int row = ledger.append(entry);
+        entry.setVersion(nextVersion());
+        ledger.setVersion(row, entry.getVersion());
+        byId.put(entry.getEntryId(), row);
+        index(row);
+        touch(row);
+    }
+
+    private List<BillingEntry> materializeAll() {
+        List<BillingEntry> result = new ArrayList<>(ledger.liveCount());
+        for (int row = ledger.nextLive(0); row >= 0; row = ledger.nextLive(row + 1)) {
+            result.add(ledger.materialize(row));
+        }
+        return result;
+    }
+
+    /**
+     * 取各检索词全部 n-gram 倒排位图的交集（从最小的开始），得到候选行。
+     * 单字的词用单字位图，更长的词用相邻两字的位图；候选行仍需 containsTerms 确认。
+     */
+    private BitSet matchTerms(List<String> terms) {
+        List<BitSet> postings = new ArrayList<>();
+        for (String term : terms) {
+            for (String gram : queryGrams(term)) {
+                BitSet posting = gramIndex.get(gram);
+                if (posting == null) {
+                    return new BitSet();
+                }
+                postings.add(posting);
+            }
+        }
+        postings.sort((a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        BitSet result = (BitSet) postings.get(0).clone();
+        for (int i = 1; i < postings.size() && !result.isEmpty(); i++) {
+            result.and(postings.get(i));
+        }
+        return result;
+    }
+
+    private void collect(int row, int from, int to, boolean dated, int categoryCode,
+                         List<String> terms, List<BillingEntry> result) {
+        if (matches(row, from, to, dated, categoryCode, terms)) {
+            result.add(ledger.materialize(row));
+        }
+    }
+
+    private boolean matches(int row, int from, int to, boolean dated, int categoryCode,
+                            List<String> terms) {
+        int day = ledger.epochDay(row);
+        if (dated && (day == BillingLedger.NO_DATE || day < from || day > to)) return false;
+        if (categoryCode >= 0 && ledger.categoryCode(row) != categoryCode) return false;
+        return terms.isEmpty() || containsTerms(row, terms);
+    }
+
+    // 按 (日期, 时间, entryId) 升序比较两行，没有日期或时间的排在前面
+    private int compareRows(int a, int b) {
+        int result = Integer.compare(ledger.epochDay(a), ledger.epochDay(b));
+        if (result == 0) {
+            result = Integer.compare(ledger.minuteOfDay(a), ledger.minuteOfDay(b));
+        }
+        return result != 0 ? result : compareIds(ledger.entryId(a), ledger.entryId(b));
+    }
+
+    // 该行是否排在游标之后
+    private boolean isAfter(int row, PageKey after, boolean ascending) {
+        if (after == null) {
+            return true;
+        }
+        int result = Integer.compare(ledger.epochDay(row), after.day);
+        if (result == 0) {
+            result = Integer.compare(ledger.minuteOfDay(row), after.minute);
+        }
+        if (result == 0) {
+            result = compareIds(ledger.entryId(row), after.entryId);
+        }
+        return ascending ? result > 0 : result < 0;
+    }
+
+    // 生成的 ID 都是等长数字，先比长度再比字符串即为数值顺序
+    private static int compareIds(String a, String b) {
+        int result = Integer.compare(a.length(), b.length());
+        return result != 0 ? result : a.compareTo(b);
+    }
+
+    private boolean containsTerms(int row, List<String> terms) {
+        String product = lowerText(ledger.product(row));
+        String remark = lowerText(ledger.remark(row));
+        for (String term : terms) {
+            if (!product.contains(term) && !remark.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 各检索词得分之和：product 完全相同 8、前缀 6、包含 4；remark 完全相同 3、前缀 2、包含 1
+    private int relevance(int row, List<String> terms) {
+        String product = lowerText(ledger.product(row));
+        String remark = lowerText(ledger.remark(row));
+        int score = 0;
+        for (String term : terms) {
+            score += product.equals(term) ? 8 : product.startsWith(term) ? 6 : product.contains(term) ? 4 : 0;
+            score += remark.equals(term) ? 3 : remark.startsWith(term) ? 2 : remark.contains(term) ? 1 : 0;
+        }
+        return score;
+    }
+
+    private static String lowerText(String text) {
+        return text == null ? "" : text.toLowerCase();
+    }
+
+    private void index(int row) {
+        for (String gram : rowGrams(row)) {
+            gramIndex.computeIfAbsent(gram, g -> new BitSet()).set(row);
+        }
+        months.computeIfAbsent(BillingLedger.monthOf(ledger.epochDay(row)), m -> new MonthRows())
+            .add(row, ledger.epochDay(row));
+        addFingerprint(row);
+        aggregates.add(ledger.category(row), ledger.epochDay(row), ledger.amount(row));
+    }
+
+    private void unindex(int row) {
+        touch(row);
+        int month = BillingLedger.monthOf(ledger.epochDay(row));
+        MonthRows monthRows = months.get(month);
+        if (monthRows != null && monthRows.remove(row) && monthRows.size == 0) {
+            months.remove(month);
+        }
+        for (String gram : rowGrams(row)) {
+            BitSet posting = gramIndex.get(gram);
+            if (posting != null) {
+                posting.clear(row);
+                if (posting.isEmpty()) {
+                    gramIndex.remove(gram);
+                }
+            }
+        }
+        removeFingerprint(row);
+        aggregates.remove(ledger.category(row), ledger.epochDay(row), ledger.amount(row));
+    }
+
+    /**
+     * 删除的行较多、或修改留下的无用文本较多时回收：去掉空行并重建字典。
+     * 行号和文本编码改变后重建主键、n-gram、月份和指纹索引，按文本编码的缓存清空后重新计算
+     * （汇总与行号无关，保持不变）
+     */
+    private void compactIfSparse() {
+        int live = ledger.liveCount();
+        int dead = ledger.rowCount() - live;
+        // 每行最多引用两个文本（product 和 remark），超出的部分一定已无行引用
+        long unusedTexts = ledger.textCount() - 2L * live;
+        boolean sparseRows = dead >= COMPACT_MIN_DEAD_ROWS && dead >= live;
+        boolean sparseTexts = unusedTexts >= COMPACT_MIN_DEAD_ROWS && unusedTexts >= 2L * live;
+        if (!sparseRows && !sparseTexts) {
+            return;
+        }
+        ledger.compact();
+        byId.clear();
+        gramIndex.clear();
+        months.clear();
+        fingerprintIndex.clear();
+        gramsByText.clear();
+        textHashes.clear();
+        for (int row = ledger.nextLive(0); row >= 0; row = ledger.nextLive(row + 1)) {
+            byId.put(ledger.entryId(row), row);
+            addFingerprint(row);
+            for (String gram : rowGrams(row)) {
+                gramIndex.computeIfAbsent(gram, g -> new BitSet()).set(row);
+            }
+            months.computeIfAbsent(BillingLedger.monthOf(ledger.epochDay(row)), m -> new MonthRows())
+                .add(row, ledger.epochDay(row));
+        }
+    }
+
+    private long rowFingerprint(int row) {
+        return EntryFingerprint.of(ledger.epochDay(row), ledger.minuteOfDay(row), ledger.amount(row),
+            textHash(ledger.productCode(row)), textHash(ledger.remarkCode(row)));
+    }
+
+    private long textHash(int code) {
+        return textHashes.computeIfAbsent(code, c -> EntryFingerprint.textHash(c < 0 ? null : ledger.text(c)));
+    }
+
+    private void addFingerprint(int row) {
+        fingerprintIndex.merge(rowFingerprint(row), new int[]{row}, (rows, added) -> {
+            int[] grown = Arrays.copyOf(rows, rows.length + 1);
+            grown[rows.length] = row;
+            return grown;
+        });
+    }
+
+    private void removeFingerprint(int row) {
+        fingerprintIndex.computeIfPresent(rowFingerprint(row), (fingerprint, rows) -> {
+            int at = -1;
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i] == row) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) {
+                return rows;
+            }
+            if (rows.length == 1) {
+                return null;
+            }
+            int[] shrunk = new int[rows.length - 1];
+            System.arraycopy(rows, 0, shrunk, 0, at);
+            System.arraycopy(rows, at + 1, shrunk, at, rows.length - at - 1);
+            return shrunk;
+        });
+    }
+
+    // 记录该行所在月份有变更
+    private void touch(int row) {
+        dirtyMonths.add(BillingLedger.monthOf(ledger.epochDay(row)));
+    }
+
+    // 有变更的月份段及其当前的行，已经没有行的月份对应空数组
+    private Map<String, int[]> dirtySegments() {
+        Map<String, int[]> segments = new TreeMap<>();
+        for (int month : dirtyMonths) {
+            MonthRows monthRows = months.get(month);
+            int[] rows = monthRows == null ? new int[0] : Arrays.copyOf(monthRows.rows, monthRows.size);
+            segments.put(BillingLedger.segmentName(month), rows);
+        }
+        return segments;
+    }
+
+    private Set<String> rowGrams(int row) {
+        Set<String> grams = new HashSet<>(textGrams(ledger.productCode(row)));
+        grams.addAll(textGrams(ledger.remarkCode(row)));
+        return grams;
+    }
+
+    private Set<String> textGrams(int code) {
+        if (code < 0) {
+            return Set.of();
+        }
+        return gramsByText.computeIfAbsent(code, c -> grams(ledger.text(c)));
+    }
+
+    /**
+     * 分页游标：上一页最后一条的 (epochDay, 分钟, entryId)，编码为 URL 安全的 Base64
+     */
+    private static final class PageKey {
+        private final int day;
+        private final int minute;
+        private final String entryId;
+
+        private PageKey(int day, int minute, String entryId) {
+            this.day = day;
+            this.minute = minute;
+            this.entryId = entryId;
+        }
+
+        static PageKey of(BillingLedger ledger, int row) {
+            return new PageKey(ledger.epochDay(row), ledger.minuteOfDay(row), ledger.entryId(row));
+        }
+
+        String encode() {
+            String key = day + ":" + minute + ":" + entryId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * @throws IllegalArgumentException 格式错误，或日期、时间超出存储可能产生的取值时
+         */
+        static PageKey decode(String cursor) {
+            PageKey key;
+            try {
+                String text = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = text.split(":", 3);
+                key = new PageKey(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+            // 没有日期的账单为 NO_DATE，没有时间的为 -1
+            boolean validDay = key.day == BillingLedger.NO_DATE
+                || (key.day >= BillingLedger.MIN_DAY && key.day <= BillingLedger.MAX_DAY);
+            if (!validDay || key.minute < -1 || key.minute >= 24 * 60 || key.entryId.isEmpty()) {
+                throw new IllegalArgumentException("无效的分页游标: " + cursor);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * 一个月份的行号（按写入顺序）和其中的最早/最晚日期。
+     * 删除行时日期范围不收缩，只会比实际范围宽，不影响裁剪的正确性。
+     */
+    private static final class MonthRows {
+        private int[] rows = new int[16];
+        private int size;
+        private int minDay = Integer.MAX_VALUE;
+        private int maxDay = Integer.MIN_VALUE;
+
+        void add(int row, int day) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+        }
+
+        boolean remove(int row) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] == row) {
+                    System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 切分文本的 n-gram：转为小写后的每个字符和每对相邻字符，跨越空白的不计入
+     */
+    static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        String lower = text.toLowerCase();
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            grams.add(String.valueOf(c));
+            if (i + 1 < lower.length() && !Character.isWhitespace(lower.charAt(i + 1))) {
+                grams.add(lower.substring(i, i + 2));
+            }
+        }
+        return grams;
+    }
+
+    // 检索词在索引中对应的 n-gram：单字为其本身，否则为全部相邻两字
+    static List<String> queryGrams(String term) {
+        if (term.length() == 1) {
+            return List.of(term);
+        }
+        List<String> grams = new ArrayList<>(term.length() - 1);
+        for (int i = 0; i + 1 < term.length(); i++) {
+            grams.add(term.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    // 关键词转为小写后按空白拆分，null 或空白返回空列表
+    static List<String> searchTerms(String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return List.of();
+        }
+        return Arrays.asList(keyword.trim().toLowerCase().split("\\s+"));
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.util.AtomicFileWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * 账单预写日志（WAL）
+ *
+ * 每次写入只在 billing.journal 末尾追加一条带长度前缀和 CRC 校验的记录，
+ * 累积到一定条数后由 BillingEntryStore 合并（compaction）：只重写有变更的月份段
+ * （segments/yyyy-MM.seg，见 BillingSegment），然后清空日志。
+ * 没有变更的历史月份段保持不变。
+ * 记录格式: [int 数据长度][int CRC32][byte 操作类型][数据]
+ * PUT 记录的数据为账单 JSON（按 entryId 覆盖），DELETE 记录的数据为 entryId。
+ * 旧版的 JSON 快照和整表二进制快照只在首次打开时读取一次并转换为月份段。
+ *
+ * 每个用户分区（data/billing/users/{userId}）各有一个实例，由 BillingStoreRegistry 创建。
+ */
+public class BillingJournal {
+
+    private static final Logger logger = Logger.getLogger(BillingJournal.class.getName());
+    private static final String JOURNAL_FILE = "billing.journal";
+    private static final String SEGMENTS_DIR = "segments";
+    private static final String SINGLE_SNAPSHOT_FILE = "billing.snapshot.bin";
+    private static final String JSON_SNAPSHOT_FILE = "billing.snapshot.json";
+    private static final String LEGACY_JSON_FILE = "billingEntries.json";
+
+    // 旧版本只追加、不带 entryId 的记录，仅在重放时识别
+    private static final byte OP_APPEND = 1;
+    private static final byte OP_PUT = 2;
+    private static final byte OP_DELETE = 3;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + 1;
+
+    private final ObjectMapper objectMapper;
+    private final AtomicFileWriter fileWriter;
+    private final Path journalPath;
+    private final Path segmentsDirectory;
+    private final int compactThreshold;
+    private final boolean fsync;
+
+    private FileChannel journalChannel;
+    private int journalRecords;
+    // 每次变更递增，供导出视图判断是否过期
+    private long sequence;
+
+    public BillingJournal(Path dataDirectory, AtomicFileWriter fileWriter, int compactThreshold, boolean fsync) {
+        this.objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        this.fileWriter = fileWriter;
+        this.journalPath = dataDirectory.resolve(JOURNAL_FILE);
+        this.segmentsDirectory = dataDirectory.resolve(SEGMENTS_DIR);
+        this.compactThreshold = compactThreshold;
+        this.fsync = fsync;
+
+        initialize(dataDirectory);
+    }
+
+    private void initialize(Path dataDirectory) {
+        try {
+            Files.createDirectories(dataDirectory);
+
+            journalChannel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journalRecords = recoverJournal(null, null);
+
+            // 首次启动时，把旧版快照转换为月份段
+            if (!Files.exists(segmentsDirectory)) {
+                Path singleSnapshot = dataDirectory.resolve(SINGLE_SNAPSHOT_FILE);
+                Path jsonSnapshot = dataDirectory.resolve(JSON_SNAPSHOT_FILE);
+                Path legacyJson = dataDirectory.resolve(LEGACY_JSON_FILE);
+                if (Files.exists(singleSnapshot)) {
+                    migrate(BillingSegment.readSingleFile(singleSnapshot));
+                    Files.delete(singleSnapshot);
+                    logger.info("已把整表快照 " + singleSnapshot + " 拆分为月份段");
+                } else if (isNonEmpty(jsonSnapshot)) {
+                    migrateJson(jsonSnapshot);
+                } else if (journalRecords == 0 && isNonEmpty(legacyJson)) {
+                    migrateJson(legacyJson);
+                } else {
+                    Files.createDirectories(segmentsDirectory);
+                }
+            }
+            logger.info("账单日志已打开，待合并记录数: " + journalRecords);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open billing journal", e);
+        }
+    }
+
+    private static boolean isNonEmpty(Path path) throws IOException {
+        return Files.exists(path) && Files.size(path) > 0;
+    }
+
+    private void migrateJson(Path jsonFile) throws IOException {
+        List<BillingEntry> entries = objectMapper.readValue(jsonFile.toFile(),
+            new TypeReference<List<BillingEntry>>() {});
+        BillingLedger ledger = new BillingLedger();
+        Set<String> seen = new HashSet<>();
+        for (BillingEntry entry : entries) {
+            // 重复的 ID 清空，加载时重新分配，避免与跨段重复混淆
+            if (entry.getEntryId() != null && !seen.add(entry.getEntryId())) {
+                entry.setEntryId(null);
+            }
+            ledger.append(entry);
+        }
+        migrate(ledger);
+        logger.info("已从 " + jsonFile + " 迁移 " + entries.size() + " 条账单记录到月份段");
+    }
+
+    /**
+     * 先把全部月份段写入临时目录，完成后整体重命名为 segments，迁移中途崩溃时下次启动会重新迁移
+     */
+    private void migrate(BillingLedger ledger) throws IOException {
+        Path staging = segmentsDirectory.resolveSibling(SEGMENTS_DIR + ".migrating");
+        if (Files.exists(staging)) {
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(staging)) {
+                for (Path file : stale) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.createDirectories(staging);
+        for (Map.Entry<String, int[]> segment : ledger.rowsBySegment().entrySet()) {
+            writeSegment(staging, segment.getKey(), ledger, segment.getValue());
+        }
+        Files.move(staging, segmentsDirectory, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 写入（新增或覆盖）一条账单记录，只写入该条记录本身的字节
+     */
+    public synchronized void put(BillingEntry entry) throws IOException {
+        writeRecord(OP_PUT, objectMapper.writeValueAsBytes(entry));
+        afterWrite();
+    }
+
+    /**
+     * 批量写入多条账单记录：所有记录编码进同一个缓冲区，只做一次写入和一次 fsync
+     */
+    public synchronized void putAll(List<BillingEntry> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<byte[]> bodies = new ArrayList<>(entries.size());
+        int total = 0;
+        for (BillingEntry entry : entries) {
+            byte[] body = objectMapper.writeValueAsBytes(entry);
+            bodies.add(body);
+            total += HEADER_SIZE + body.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (byte[] body : bodies) {
+            encodeRecord(buffer, OP_PUT, body);
+        }
+        buffer.flip();
+        writeBuffer(buffer);
+
+        sequence++;
+        journalRecords += entries.size();
+    }
+
+    /**
+     * 按 entryId 删除一条账单记录
+     */
+    public synchronized void delete(String entryId) throws IOException {
+        writeRecord(OP_DELETE, entryId.getBytes(StandardCharsets.UTF_8));
+        afterWrite();
+    }
+
+    private void afterWrite() {
+        sequence++;
+        journalRecords++;
+    }
+
+    /**
+     * 日志记录数是否已达到合并阈值
+     */
+    public synchronized boolean needsCompaction() {
+        return journalRecords >= compactThreshold;
+    }
+
+    /**
+     * 按月份顺序读取全部段，合并为一张账单表。日志中的记录需再通过 replay 应用。
+     * 合并中途崩溃时同一 entryId 可能同时出现在新旧两个月份段中，此时日志中必然还有
+     * 该账单的 PUT 记录，调用方应保留先出现的一行并在重放时覆盖。
+     */
+    public synchronized BillingLedger loadSegments() throws IOException {
+        BillingLedger ledger = new BillingLedger();
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentsDirectory, "*" + BillingSegment.EXTENSION)) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        for (Path segment : segments) {
+            ledger.appendAll(BillingSegment.read(segment));
+        }
+        return ledger;
+    }
+
+    /**
+     * 按写入顺序重放日志：PUT 记录交给 onPut（entryId 已存在时应覆盖），DELETE 记录交给 onDelete
+     */
+    public synchronized void replay(Consumer<BillingEntry> onPut, Consumer<String> onDelete) throws IOException {
+        recoverJournal(onPut, onDelete);
+    }
+
+    /**
+     * 重写有变更的月份段并清空日志
+     *
+     * @param segments 段名称 -> 该月的有效行，行为空时删除该段
+     */
+    public synchronized void compact(BillingLedger ledger, Map<String, int[]> segments) throws IOException {
+        for (Map.Entry<String, int[]> segment : segments.entrySet()) {
+            writeSegment(segmentsDirectory, segment.getKey(), ledger, segment.getValue());
+        }
+        truncateJournal();
+        logger.info("账单日志已合并，重写了 " + segments.size() + " 个月份段");
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    private void writeRecord(byte op, byte[] body) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        encodeRecord(buffer, op, body);
+        buffer.flip();
+        writeBuffer(buffer);
+    }
+
+    private static void encodeRecord(ByteBuffer buffer, byte op, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(body);
+        buffer.putInt(body.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(op);
+        buffer.put(body);
+    }
+
+    private void writeBuffer(ByteBuffer buffer) throws IOException {
+        journalChannel.position(journalChannel.size());
+        while (buffer.hasRemaining()) {
+            journalChannel.write(buffer);
+        }
+        if (fsync) {
+            journalChannel.force(false);
+        }
+    }
+
+    /**
+     * 顺序扫描日志，把记录交给回调（为 null 时只计数）。
+     * 遇到不完整或校验失败的尾部记录（写入中途崩溃）时截断日志。
+     */
+    private int recoverJournal(Consumer<BillingEntry> onPut, Consumer<String> onDelete) throws IOException {
+        long size = journalChannel.size();
+        long position = 0;
+        int records = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            journalChannel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            byte op = header.get();
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length);
+            journalChannel.read(body, position + HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(op);
+            crc.update(body.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            if (onPut != null) {
+                apply(op, body.array(), onPut, onDelete);
+            }
+            position += HEADER_SIZE + length;
+            records++;
+        }
+
+        if (position < size) {
+            logger.warning("账单日志尾部存在不完整记录，截断到 " + position + " 字节");
+            journalChannel.truncate(position);
+        }
+        return records;
+    }
+
+    private void apply(byte op, byte[] body, Consumer<BillingEntry> onPut, Consumer<String> onDelete)
+            throws IOException {
+        switch (op) {
+            case OP_APPEND, OP_PUT -> onPut.accept(objectMapper.readValue(body, BillingEntry.class));
+            case OP_DELETE -> onDelete.accept(new String(body, StandardCharsets.UTF_8));
+            default -> logger.warning("未知的账单日志操作类型: " + op);
+        }
+    }
+
+    // 临时文件 + fsync + 原子重命名
+    private void writeSegment(Path directory, String name, BillingLedger ledger, int[] rows) throws IOException {
+        Path path = directory.resolve(name + BillingSegment.EXTENSION);
+        if (rows.length == 0) {
+            Files.deleteIfExists(path);
+        } else {
+            fileWriter.write(path, BillingSegment.encode(ledger, rows));
+        }
+    }
+
+    private void truncateJournal() throws IOException {
+        journalChannel.truncate(0);
+        if (fsync) {
+            journalChannel.force(true);
+        }
+        journalRecords = 0;
+    }
+
+    public synchronized void close() {
+        try {
+            if (journalChannel != null && journalChannel.isOpen()) {
+                journalChannel.close();
+            }
+        } catch (IOException e) {
+            logger.severe("关闭账单日志时出错: " + e.getMessage());
+        }
+    }
+}
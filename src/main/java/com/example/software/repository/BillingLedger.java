@@ -0,0 +1,584 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 按列存储的账单数据
+ *
+ * 每条账单占一行，各字段分别存放在原始类型数组中：金额为以分为单位的 long，
+ * 日期为 epochDay（int），时间为当天的分钟数（short），类别、产品和备注为字典编码（int）。
+ * 数值型 entryId 直接存成 long，其余 ID 单独保存。
+ * 另有一列乐观并发用的版本号，只在内存中维护，不写入快照。
+ * 汇总和过滤只扫描需要的列，BillingEntry 对象只在返回给调用方时生成。
+ *
+ * 删除只清除 live 标记，修改后不再使用的文本也留在字典中，由 BillingEntryStore 在空行或无用文本过多时
+ * 调用 compact 一并回收。
+ * 非线程安全，由 BillingEntryStore 在其读写锁内调用。
+ */
+public class BillingLedger {
+
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    // 没有日期的账单所属的月份键
+    public static final int NO_MONTH = Integer.MIN_VALUE;
+    public static final long NO_AMOUNT = Long.MIN_VALUE;
+    // 支持的账单日期范围，超出范围的账单在写入存储时被拒绝
+    public static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    public static final LocalDate MAX_DATE = LocalDate.of(2100, 12, 31);
+    public static final int MIN_DAY = (int) MIN_DATE.toEpochDay();
+    public static final int MAX_DAY = (int) MAX_DATE.toEpochDay();
+    private static final short NO_TIME = -1;
+    private static final long IRREGULAR_ID = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] dates = new int[INITIAL_CAPACITY];
+    private short[] times = new short[INITIAL_CAPACITY];
+    private int[] categories = new int[INITIAL_CAPACITY];
+    private int[] products = new int[INITIAL_CAPACITY];
+    private int[] remarks = new int[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private final BitSet live = new BitSet();
+    // 无法无损表示为 long 的 entryId（早期版本生成的 ID），按行保存
+    private final Map<Integer, String> irregularIds = new HashMap<>();
+    private int rows;
+
+    private Dictionary categoryDictionary = new Dictionary();
+    private Dictionary textDictionary = new Dictionary();
+
+    /**
+     * 追加一行，返回行号
+     */
+    public int append(BillingEntry entry) {
+        if (rows == amounts.length) {
+            grow();
+        }
+        int row = rows++;
+        write(row, entry);
+        live.set(row);
+        return row;
+    }
+
+    /**
+     * 用 entry 的内容覆盖指定行
+     */
+    public void set(int row, BillingEntry entry) {
+        irregularIds.remove(row);
+        write(row, entry);
+    }
+
+    public void setEntryId(int row, String entryId) {
+        irregularIds.remove(row);
+        ids[row] = encodeId(row, entryId);
+    }
+
+    public long version(int row) {
+        return versions[row];
+    }
+
+    public void setVersion(int row, long version) {
+        versions[row] = version;
+    }
+
+    public void delete(int row) {
+        live.clear(row);
+        irregularIds.remove(row);
+    }
+
+    public boolean isLive(int row) {
+        return live.get(row);
+    }
+
+    /**
+     * 从 fromRow 开始的下一条有效行，没有时返回 -1
+     */
+    public int nextLive(int fromRow) {
+        return live.nextSetBit(fromRow);
+    }
+
+    public int liveCount() {
+        return live.cardinality();
+    }
+
+    // 已分配的行数，包含已删除的行
+    public int rowCount() {
+        return rows;
+    }
+
+    public String entryId(int row) {
+        return ids[row] == IRREGULAR_ID ? irregularIds.get(row) : Long.toString(ids[row]);
+    }
+
+    public long amount(int row) {
+        return amounts[row];
+    }
+
+    public int epochDay(int row) {
+        return dates[row];
+    }
+
+    // 当天的分钟数，没有时间时为 -1
+    public int minuteOfDay(int row) {
+        return times[row];
+    }
+
+    public int categoryCode(int row) {
+        return categories[row];
+    }
+
+    public String category(int row) {
+        return categoryDictionary.value(categories[row]);
+    }
+
+    public String product(int row) {
+        return textDictionary.value(products[row]);
+    }
+
+    public String remark(int row) {
+        return textDictionary.value(remarks[row]);
+    }
+
+    // product 和 remark 共用一个字典，编码相同即文本相同
+    public int productCode(int row) {
+        return products[row];
+    }
+
+    public int remarkCode(int row) {
+        return remarks[row];
+    }
+
+    public String text(int code) {
+        return textDictionary.value(code);
+    }
+
+    // 文本字典的大小，包含已无行引用的文本
+    public int textCount() {
+        return textDictionary.size();
+    }
+
+    /**
+     * 类别对应的字典编码，类别从未出现过时返回 -1
+     */
+    public int findCategoryCode(String category) {
+        return categoryDictionary.find(category);
+    }
+
+    /**
+     * 把指定行还原为 BillingEntry
+     */
+    public BillingEntry materialize(int row) {
+        BillingEntry entry = new BillingEntry();
+        entry.setEntryId(entryId(row));
+        entry.setVersion(versions[row]);
+        entry.setCategory(category(row));
+        entry.setProduct(product(row));
+        entry.setRemark(remark(row));
+        if (amounts[row] != NO_AMOUNT) {
+            entry.setPrice(BigDecimal.valueOf(amounts[row], 2));
+        }
+        if (dates[row] != NO_DATE) {
+            entry.setDate(LocalDate.ofEpochDay(dates[row]));
+        }
+        if (times[row] != NO_TIME) {
+            entry.setTime(LocalTime.of(times[row] / 60, times[row] % 60));
+        }
+        return entry;
+    }
+
+    /**
+     * 去掉已删除的行并重建字典，只保留有效行仍在引用的类别和文本。
+     * 返回旧行号到新行号的映射（已删除的行映射为 -1）；之后类别和文本的编码都会改变。
+     */
+    public int[] compact() {
+        int[] remap = new int[rows];
+        Map<Integer, String> movedIds = new HashMap<>();
+        Dictionary liveCategories = new Dictionary();
+        Dictionary liveTexts = new Dictionary();
+        int target = 0;
+        for (int row = 0; row < rows; row++) {
+            if (!live.get(row)) {
+                remap[row] = -1;
+                continue;
+            }
+            remap[row] = target;
+            if (ids[row] == IRREGULAR_ID) {
+                movedIds.put(target, irregularIds.get(row));
+            }
+            ids[target] = ids[row];
+            amounts[target] = amounts[row];
+            dates[target] = dates[row];
+            times[target] = times[row];
+            categories[target] = liveCategories.code(categoryDictionary.value(categories[row]));
+            products[target] = liveTexts.code(textDictionary.value(products[row]));
+            remarks[target] = liveTexts.code(textDictionary.value(remarks[row]));
+            versions[target] = versions[row];
+            target++;
+        }
+        rows = target;
+        categoryDictionary = liveCategories;
+        textDictionary = liveTexts;
+        live.clear();
+        live.set(0, rows);
+        irregularIds.clear();
+        irregularIds.putAll(movedIds);
+        return remap;
+    }
+
+    /**
+     * 按列写出指定的行，格式由 readSnapshot 读取：
+     * 行数、各列数组、非数字 ID 表、类别字典、文本字典。
+     * 字典只包含这些行用到的值，写出的文件不依赖本表的其他部分。
+     */
+    void writeSnapshot(DataOutputStream out, int[] selectedRows) throws IOException {
+        Dictionary localCategories = new Dictionary();
+        Dictionary localTexts = new Dictionary();
+        int count = selectedRows.length;
+        out.writeInt(count);
+        for (int row : selectedRows) {
+            out.writeLong(ids[row]);
+        }
+        for (int row : selectedRows) {
+            out.writeLong(amounts[row]);
+        }
+        for (int row : selectedRows) {
+            out.writeInt(dates[row]);
+        }
+        for (int row : selectedRows) {
+            out.writeShort(times[row]);
+        }
+        for (int row : selectedRows) {
+            out.writeInt(localCategories.code(category(row)));
+        }
+        for (int row : selectedRows) {
+            out.writeInt(localTexts.code(product(row)));
+        }
+        for (int row : selectedRows) {
+            out.writeInt(localTexts.code(remark(row)));
+        }
+
+        // 非数字 ID 按写出后的行号保存
+        List<Integer> irregular = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (ids[selectedRows[i]] == IRREGULAR_ID) {
+                irregular.add(i);
+            }
+        }
+        out.writeInt(irregular.size());
+        for (int i : irregular) {
+            out.writeInt(i);
+            writeString(out, irregularIds.get(selectedRows[i]));
+        }
+        localCategories.writeTo(out);
+        localTexts.writeTo(out);
+    }
+
+    /**
+     * 从 writeSnapshot 写出的数据构建账单表，各列整块复制到数组中，不逐行解析
+     */
+    static BillingLedger readSnapshot(ByteBuffer buffer) {
+        BillingLedger ledger = new BillingLedger();
+        int count = buffer.getInt();
+        int capacity = Math.max(INITIAL_CAPACITY, count);
+        ledger.ids = new long[capacity];
+        ledger.amounts = new long[capacity];
+        ledger.dates = new int[capacity];
+        ledger.times = new short[capacity];
+        ledger.categories = new int[capacity];
+        ledger.products = new int[capacity];
+        ledger.remarks = new int[capacity];
+        ledger.versions = new long[capacity];
+
+        buffer.asLongBuffer().get(ledger.ids, 0, count);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        buffer.asLongBuffer().get(ledger.amounts, 0, count);
+        buffer.position(buffer.position() + count * Long.BYTES);
+        buffer.asIntBuffer().get(ledger.dates, 0, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        buffer.asShortBuffer().get(ledger.times, 0, count);
+        buffer.position(buffer.position() + count * Short.BYTES);
+        buffer.asIntBuffer().get(ledger.categories, 0, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        buffer.asIntBuffer().get(ledger.products, 0, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        buffer.asIntBuffer().get(ledger.remarks, 0, count);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+
+        int irregular = buffer.getInt();
+        for (int i = 0; i < irregular; i++) {
+            int row = buffer.getInt();
+            ledger.irregularIds.put(row, readString(buffer));
+        }
+        ledger.categoryDictionary.readFrom(buffer);
+        ledger.textDictionary.readFrom(buffer);
+        ledger.rows = count;
+        ledger.live.set(0, count);
+        return ledger;
+    }
+
+    /**
+     * 把另一张表的全部有效行追加到本表，类别和文本按本表字典重新编码
+     */
+    public void appendAll(BillingLedger other) {
+        int[] categoryCodes = other.categoryDictionary.remapInto(categoryDictionary);
+        int[] textCodes = other.textDictionary.remapInto(textDictionary);
+        for (int source = other.nextLive(0); source >= 0; source = other.nextLive(source + 1)) {
+            if (rows == amounts.length) {
+                grow();
+            }
+            int row = rows++;
+            ids[row] = other.ids[source];
+            if (ids[row] == IRREGULAR_ID) {
+                irregularIds.put(row, other.irregularIds.get(source));
+            }
+            amounts[row] = other.amounts[source];
+            dates[row] = other.dates[source];
+            times[row] = other.times[source];
+            categories[row] = remap(categoryCodes, other.categories[source]);
+            products[row] = remap(textCodes, other.products[source]);
+            remarks[row] = remap(textCodes, other.remarks[source]);
+            versions[row] = other.versions[source];
+            live.set(row);
+        }
+    }
+
+    private static int remap(int[] codes, int code) {
+        return code < 0 ? code : codes[code];
+    }
+
+    /**
+     * 全部有效行按月份分段，键为 segmentName
+     */
+    public Map<String, int[]> rowsBySegment() {
+        Map<Integer, List<Integer>> byMonth = new TreeMap<>();
+        for (int row = nextLive(0); row >= 0; row = nextLive(row + 1)) {
+            byMonth.computeIfAbsent(monthOf(dates[row]), m -> new ArrayList<>()).add(row);
+        }
+        Map<String, int[]> segments = new TreeMap<>();
+        for (Map.Entry<Integer, List<Integer>> month : byMonth.entrySet()) {
+            segments.put(segmentName(month.getKey()),
+                month.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return segments;
+    }
+
+    /**
+     * 日期为 null 或在 [MIN_DATE, MAX_DATE] 内时通过
+     *
+     * @throws IllegalArgumentException 日期超出范围时
+     */
+    public static void checkDate(LocalDate date) {
+        if (date != null && (date.isBefore(MIN_DATE) || date.isAfter(MAX_DATE))) {
+            throw new IllegalArgumentException("日期超出范围（" + MIN_DATE + " 至 " + MAX_DATE + "）: " + date);
+        }
+    }
+
+    /**
+     * 查询条件中的日期转为 epochDay，范围外的日期收到 [MIN_DAY - 1, MAX_DAY + 1]，
+     * 过滤结果不变，且不会在转为 int 时溢出
+     */
+    public static int boundOf(LocalDate date) {
+        return (int) Math.max(MIN_DAY - 1L, Math.min(MAX_DAY + 1L, date.toEpochDay()));
+    }
+
+    /**
+     * epochDay 所在月份的键（年 * 12 + 月 - 1），NO_DATE 对应 NO_MONTH
+     */
+    public static int monthOf(int epochDay) {
+        if (epochDay == NO_DATE) {
+            return NO_MONTH;
+        }
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    /**
+     * 月份段的名称，如 2024-05，没有日期的账单为 undated
+     */
+    public static String segmentName(int month) {
+        if (month == NO_MONTH) {
+            return "undated";
+        }
+        return String.format("%04d-%02d", Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+    }
+
+    // null 写为长度 -1
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 新写入的日期已由 checkDate 限制在范围内；这里按饱和转换，旧数据中的极端日期也不会溢出成 NO_DATE
+    static int toDay(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE + 1L, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+
+    /**
+     * 金额为 null，或最多两位小数且以分为单位能用 long 表示（不含 NO_AMOUNT）时通过
+     *
+     * @throws IllegalArgumentException 金额精度或范围超出支持时
+     */
+    public static void checkAmount(BigDecimal amount) {
+        if (amount == null) {
+            return;
+        }
+        try {
+            toCents(amount);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                (amount.stripTrailingZeros().scale() > 2 ? "金额最多两位小数: " : "金额超出范围: ")
+                    + amount.toPlainString());
+        }
+    }
+
+    /**
+     * 金额精确转为分
+     *
+     * @throws ArithmeticException 超过两位小数、超出 long 范围或等于 NO_AMOUNT 时
+     */
+    public static long toCents(BigDecimal amount) {
+        long cents = amount.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        if (cents == NO_AMOUNT) {
+            throw new ArithmeticException("amount collides with NO_AMOUNT");
+        }
+        return cents;
+    }
+
+    // 新写入的金额已由 checkAmount 校验；旧数据中超出精度或范围的金额按四舍五入并饱和保存，不会变成 NO_AMOUNT
+    static long storedCents(BigDecimal amount) {
+        try {
+            return toCents(amount);
+        } catch (ArithmeticException e) {
+            BigDecimal cents = amount.setScale(2, RoundingMode.HALF_UP).movePointRight(2);
+            return cents.signum() < 0
+                ? cents.max(BigDecimal.valueOf(-Long.MAX_VALUE)).longValue()
+                : cents.min(BigDecimal.valueOf(Long.MAX_VALUE)).longValue();
+        }
+    }
+
+    private void write(int row, BillingEntry entry) {
+        ids[row] = encodeId(row, entry.getEntryId());
+        amounts[row] = entry.getPrice() == null ? NO_AMOUNT : storedCents(entry.getPrice());
+        dates[row] = entry.getDate() == null ? NO_DATE : toDay(entry.getDate());
+        times[row] = entry.getTime() == null ? NO_TIME
+            : (short) (entry.getTime().getHour() * 60 + entry.getTime().getMinute());
+        categories[row] = categoryDictionary.code(entry.getCategory());
+        products[row] = textDictionary.code(entry.getProduct());
+        remarks[row] = textDictionary.code(entry.getRemark());
+    }
+
+    private long encodeId(int row, String entryId) {
+        if (entryId != null) {
+            try {
+                long id = Long.parseLong(entryId);
+                if (id != IRREGULAR_ID && Long.toString(id).equals(entryId)) {
+                    return id;
+                }
+            } catch (NumberFormatException ignored) {
+                // 非数字 ID 单独保存
+            }
+        }
+        irregularIds.put(row, entryId);
+        return IRREGULAR_ID;
+    }
+
+    private void grow() {
+        int capacity = amounts.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+        times = Arrays.copyOf(times, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        products = Arrays.copyOf(products, capacity);
+        remarks = Arrays.copyOf(remarks, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+    }
+
+    /**
+     * 字符串字典，相同的字符串只保存一份。编码只增不减（由 compact 整体重建），null 编码为 -1。
+     */
+    private static final class Dictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        int find(String value) {
+            return value == null ? -1 : codes.getOrDefault(value, -1);
+        }
+
+        String value(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        // 返回本字典编码到 target 编码的映射，target 中没有的值会被加入
+        int[] remapInto(Dictionary target) {
+            int[] mapping = new int[values.size()];
+            for (int code = 0; code < mapping.length; code++) {
+                mapping[code] = target.code(values.get(code));
+            }
+            return mapping;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                writeString(out, value);
+            }
+        }
+
+        void readFrom(ByteBuffer buffer) {
+            int size = buffer.getInt();
+            for (int i = 0; i < size; i++) {
+                String value = readString(buffer);
+                codes.put(value, values.size());
+                values.add(value);
+            }
+        }
+    }
+}
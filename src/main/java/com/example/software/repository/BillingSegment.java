@@ -0,0 +1,200 @@
+package com.example.software.repository;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 单个月份的账单段文件（segments/yyyy-MM.seg）
+ *
+ * 文件格式: [int 魔数][int 版本][int 数据长度][int 尾部长度][int CRC32(数据 + 尾部)][数据][尾部]
+ * 数据部分为 BillingLedger.writeSnapshot 写出的列式内容；尾部（footer）记录该段的
+ * 最早/最晚日期、行数和各类别的收入、支出合计（分），读取时用于核对行数。
+ * 读取时用 FileChannel.map 映射整个文件，校验后把各列整块复制进数组，不逐行反序列化。
+ */
+final class BillingSegment {
+
+    static final String EXTENSION = ".seg";
+    private static final int MAGIC = 0x424C5347; // "BLSG"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    // 分段之前的整表快照（billing.snapshot.bin）: [魔数][版本 1][数据长度][CRC32][数据]
+    private static final int SINGLE_FILE_VERSION = 1;
+    private static final int SINGLE_FILE_HEADER_SIZE = 4 * Integer.BYTES;
+
+    private BillingSegment() {
+    }
+
+    /**
+     * 段尾部的统计信息
+     */
+    static final class Footer {
+        final int minDay;
+        final int maxDay;
+        final int rows;
+        // 类别 -> {收入, 支出}，单位为分，支出为负数
+        final Map<String, long[]> categoryTotals;
+
+        Footer(int minDay, int maxDay, int rows, Map<String, long[]> categoryTotals) {
+            this.minDay = minDay;
+            this.maxDay = maxDay;
+            this.rows = rows;
+            this.categoryTotals = categoryTotals;
+        }
+    }
+
+    static byte[] encode(BillingLedger ledger, int[] rows) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(payload))) {
+            ledger.writeSnapshot(out, rows);
+        }
+        byte[] data = payload.toByteArray();
+        byte[] footer = encodeFooter(summarize(ledger, rows));
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        crc.update(footer);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length + footer.length);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(data.length);
+        buffer.putInt(footer.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(data);
+        buffer.put(footer);
+        return buffer.array();
+    }
+
+    /**
+     * 读取整个段，返回只包含该段数据的账单表
+     */
+    static BillingLedger read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int[] lengths = readHeader(buffer, channel.size(), path);
+            int checksum = buffer.getInt();
+
+            ByteBuffer body = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("账单段校验失败: " + path);
+            }
+            BillingLedger ledger = BillingLedger.readSnapshot(body.duplicate().limit(lengths[0]));
+            Footer footer = decodeFooter(body.position(lengths[0]).slice());
+            if (footer.rows != ledger.liveCount()) {
+                throw new IOException("账单段行数与尾部记录不符: " + path);
+            }
+            return ledger;
+        }
+    }
+
+    /**
+     * 读取分段之前的整表快照，仅用于迁移
+     */
+    static BillingLedger readSingleFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (channel.size() < SINGLE_FILE_HEADER_SIZE || buffer.getInt() != MAGIC
+                    || buffer.getInt() != SINGLE_FILE_VERSION) {
+                throw new IOException("无法识别的账单快照: " + path);
+            }
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (SINGLE_FILE_HEADER_SIZE + (long) length != channel.size()) {
+                throw new IOException("账单快照长度不符: " + path);
+            }
+            ByteBuffer data = buffer.slice();
+            CRC32 crc = new CRC32();
+            crc.update(data.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("账单快照校验失败: " + path);
+            }
+            return BillingLedger.readSnapshot(data);
+        }
+    }
+
+    // 校验魔数、版本和长度，返回 {数据长度, 尾部长度}
+    private static int[] readHeader(ByteBuffer buffer, long size, Path path) throws IOException {
+        if (size < HEADER_SIZE) {
+            throw new IOException("账单段文件不完整: " + path);
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("不是账单段文件: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的账单段版本 " + version + ": " + path);
+        }
+        int dataLength = buffer.getInt();
+        int footerLength = buffer.getInt();
+        if (dataLength < 0 || footerLength < 0 || HEADER_SIZE + (long) dataLength + footerLength != size) {
+            throw new IOException("账单段长度不符: " + path);
+        }
+        return new int[] {dataLength, footerLength};
+    }
+
+    private static Footer summarize(BillingLedger ledger, int[] rows) {
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        Map<String, long[]> totals = new TreeMap<>();
+        for (int row : rows) {
+            int day = ledger.epochDay(row);
+            if (day != BillingLedger.NO_DATE) {
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+            long amount = ledger.amount(row);
+            if (amount != BillingLedger.NO_AMOUNT && amount != 0 && ledger.category(row) != null) {
+                totals.computeIfAbsent(ledger.category(row), c -> new long[2])[amount > 0 ? 0 : 1] += amount;
+            }
+        }
+        if (minDay > maxDay) {
+            minDay = BillingLedger.NO_DATE;
+            maxDay = BillingLedger.NO_DATE;
+        }
+        return new Footer(minDay, maxDay, rows.length, totals);
+    }
+
+    private static byte[] encodeFooter(Footer footer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(footer.minDay);
+            out.writeInt(footer.maxDay);
+            out.writeInt(footer.rows);
+            out.writeInt(footer.categoryTotals.size());
+            for (Map.Entry<String, long[]> total : footer.categoryTotals.entrySet()) {
+                byte[] name = total.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeLong(total.getValue()[0]);
+                out.writeLong(total.getValue()[1]);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Footer decodeFooter(ByteBuffer buffer) {
+        int minDay = buffer.getInt();
+        int maxDay = buffer.getInt();
+        int rows = buffer.getInt();
+        int categories = buffer.getInt();
+        Map<String, long[]> totals = new TreeMap<>();
+        for (int i = 0; i < categories; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            totals.put(new String(name, StandardCharsets.UTF_8), new long[] {buffer.getLong(), buffer.getLong()});
+        }
+        return new Footer(minDay, maxDay, rows, totals);
+    }
+}
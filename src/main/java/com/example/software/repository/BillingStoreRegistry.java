@@ -0,0 +1,129 @@
+package com.example.software.repository;
+
+import com.example.software.util.AtomicFileWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * 按用户分区的账单存储
+ *
+ * 每个 userId 对应 data/billing/users/{userId} 目录下独立的日志、快照和内存索引，
+ * 分区在第一次访问时打开，之后常驻内存。不同用户之间不共享锁，也不会扫描彼此的数据。
+ */
+@Component
+public class BillingStoreRegistry {
+
+    private static final Logger logger = Logger.getLogger(BillingStoreRegistry.class.getName());
+    private static final String DATA_DIR = "data" + File.separator + "billing";
+    private static final String USERS_DIR = "users";
+    // 分区之前所有用户共用的数据文件
+    private static final List<String> LEGACY_FILES =
+        List.of("billing.snapshot.json", "billing.journal", "billingEntries.json");
+    private static final Pattern USER_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final Map<String, BillingEntryStore> stores = new ConcurrentHashMap<>();
+    private final AtomicFileWriter fileWriter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int compactThreshold;
+    private final boolean fsync;
+    private final String legacyOwner;
+    // 未配置 billing.legacy-owner 时只提示一次，由 open 的同步保护
+    private boolean legacyWarned;
+
+    public BillingStoreRegistry(AtomicFileWriter fileWriter,
+                                ApplicationEventPublisher eventPublisher,
+                                @Value("${billing.journal.compact-threshold:1000}") int compactThreshold,
+                                @Value("${billing.journal.fsync:true}") boolean fsync,
+                                @Value("${billing.legacy-owner:}") String legacyOwner) {
+        this.fileWriter = fileWriter;
+        this.eventPublisher = eventPublisher;
+        this.compactThreshold = compactThreshold;
+        this.fsync = fsync;
+        this.legacyOwner = legacyOwner;
+    }
+
+    /**
+     * 返回指定用户的账单存储，不存在时创建
+     */
+    public BillingEntryStore forUser(String userId) {
+        if (userId == null || !USER_ID_PATTERN.matcher(userId).matches()) {
+            throw new IllegalArgumentException("Invalid userId: " + userId);
+        }
+        return stores.computeIfAbsent(userId, this::open);
+    }
+
+    /**
+     * 用户分区目录，导出文件也写在这里
+     */
+    public Path directoryOf(String userId) {
+        return Paths.get(DATA_DIR, USERS_DIR, userId);
+    }
+
+    private synchronized BillingEntryStore open(String userId) {
+        Path directory = directoryOf(userId);
+        try {
+            Files.createDirectories(directory);
+            claimLegacyData(userId, directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open billing partition for " + userId, e);
+        }
+        logger.info("打开用户账单分区: " + directory);
+        BillingEntryStore store = new BillingEntryStore(new BillingJournal(directory, fileWriter, compactThreshold, fsync));
+        store.setChangeListener(sequence ->
+            eventPublisher.publishEvent(new DataChangedEvent(userId, DataChangedEvent.BILLING, sequence)));
+        return store;
+    }
+
+    /**
+     * 把分区前的共享数据移入 billing.legacy-owner 指定的用户分区。移动后共享文件不再存在，因此只会被认领一次。
+     * 未配置 billing.legacy-owner 时共享数据保持原样、不归任何用户，只记录一条警告：
+     * 旧数据混有所有用户的账单，不能随便交给某一个账户。
+     */
+    private void claimLegacyData(String userId, Path directory) throws IOException {
+        Path legacyDirectory = Paths.get(DATA_DIR);
+        if (legacyOwner.isEmpty()) {
+            if (!legacyWarned && LEGACY_FILES.stream().anyMatch(name -> Files.exists(legacyDirectory.resolve(name)))) {
+                legacyWarned = true;
+                logger.warning("发现分区前的共享账单数据 " + legacyDirectory
+                    + "，未配置 billing.legacy-owner，保持原样不迁移");
+            }
+            return;
+        }
+        if (!legacyOwner.equals(userId)) {
+            return;
+        }
+        for (String name : LEGACY_FILES) {
+            if (Files.exists(directory.resolve(name))) {
+                return;
+            }
+        }
+        for (String name : LEGACY_FILES) {
+            Path legacy = legacyDirectory.resolve(name);
+            if (Files.exists(legacy)) {
+                Files.move(legacy, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+                logger.info("已将共享账单文件 " + legacy + " 迁移到用户分区 " + directory);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (BillingEntryStore store : stores.values()) {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.software.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 内存中的变更序号表，供客户端增量同步
+ *
+ * 每次新增、修改或删除都分配一个单调递增的序号，每个 ID 只保留最近一次变更
+ * （删除保留为墓碑）。最多保留 capacity 个 ID，超出时丢弃最旧的变更并抬高下限 floor，
+ * 落后于下限的客户端需要全量重新加载。
+ * 序号只在本次进程内有效：epoch 取创建时的时间戳，服务重启后 epoch 改变，
+ * 客户端带着旧 epoch 来同步时同样要求全量重新加载。
+ */
+public class ChangeLog {
+
+    private final long epoch = System.currentTimeMillis();
+    private final int capacity;
+    private long sequence;
+    // 序号不大于 floor 的变更已被丢弃
+    private long floor;
+    private final NavigableMap<Long, String> idsBySequence = new TreeMap<>();
+    private final Map<String, Change> latest = new HashMap<>();
+
+    public ChangeLog(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * 记录一次变更
+     *
+     * @param deleted 为 true 表示该 ID 已被删除
+     * @return 分配给该变更的序号
+     */
+    public synchronized long record(String id, boolean deleted) {
+        sequence++;
+        Change previous = latest.put(id, new Change(sequence, deleted));
+        if (previous != null) {
+            idsBySequence.remove(previous.sequence);
+        }
+        idsBySequence.put(sequence, id);
+        while (idsBySequence.size() > capacity) {
+            Map.Entry<Long, String> oldest = idsBySequence.pollFirstEntry();
+            latest.remove(oldest.getValue());
+            floor = oldest.getKey();
+        }
+        return sequence;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * 返回 since 之后的变更。epoch 不一致、since 早于已丢弃的变更或大于当前序号时
+     * 返回 reset 结果，只带当前的 epoch 和序号。
+     */
+    public synchronized Delta since(long clientEpoch, long since) {
+        if (clientEpoch != epoch || since < floor || since > sequence) {
+            return new Delta(epoch, sequence, true, List.of(), List.of());
+        }
+        List<String> updated = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (String id : idsBySequence.tailMap(since, false).values()) {
+            (latest.get(id).deleted ? deleted : updated).add(id);
+        }
+        return new Delta(epoch, sequence, false, updated, deleted);
+    }
+
+    private static final class Change {
+        private final long sequence;
+        private final boolean deleted;
+
+        private Change(long sequence, boolean deleted) {
+            this.sequence = sequence;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * 一次增量查询的结果，updated 与 deleted 按变更顺序排列
+     */
+    public static final class Delta {
+        private final long epoch;
+        private final long sequence;
+        private final boolean reset;
+        private final List<String> updated;
+        private final List<String> deleted;
+
+        private Delta(long epoch, long sequence, boolean reset, List<String> updated, List<String> deleted) {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            this.reset = reset;
+            this.updated = updated;
+            this.deleted = deleted;
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public boolean isReset() {
+            return reset;
+        }
+
+        public List<String> getUpdated() {
+            return updated;
+        }
+
+        public List<String> getDeleted() {
+            return deleted;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.software.repository;
+
+/**
+ * 某个用户的账单或储蓄计划有变更且已持久化时发布，sequence 为对应 ChangeLog 的最新序号。
+ * 账单在写入日志后发布；储蓄计划在组提交把变更写入文件后发布，可能晚于修改最多一个 flush 间隔，
+ * 同一次写入中的多次变更只发布一次（带最新序号）。
+ */
+public class DataChangedEvent {
+    public static final String BILLING = "billing";
+    public static final String SAVINGS = "savings";
+
+    private final String userId;
+    private final String topic;
+    private final long sequence;
+
+    public DataChangedEvent(String userId, String topic, long sequence) {
+        this.userId = userId;
+        this.topic = topic;
+        this.sequence = sequence;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 一次导入过程中的重复检查，由 BillingEntryStore.newDuplicateFilter 创建，非线程安全
+ *
+ * 只有创建时已在存储中的账单算作重复来源，本次导入新增的不算。
+ * 同一文件内相同的记录按个数比较：存储中已有 n 条相同的账单时，文件中前 n 条判为重复，
+ * 之后的照常导入。因此重新导入同一个文件时全部判为重复，而文件中本来就相同的两笔交易
+ * 第一次导入时都会保留。每条记录的检查是一次指纹哈希查找。
+ */
+public class DuplicateFilter {
+
+    private final BillingEntryStore store;
+    private final long maxVersion;
+    // 指纹 -> {已有的相同账单数, 本次导入已遇到的次数}，只记录已有账单数大于 0 的指纹
+    private final Map<Long, int[]> seen = new HashMap<>();
+
+    DuplicateFilter(BillingEntryStore store, long maxVersion) {
+        this.store = store;
+        this.maxVersion = maxVersion;
+    }
+
+    public boolean isDuplicate(BillingEntry entry) {
+        long fingerprint = EntryFingerprint.of(entry);
+        int[] counts = seen.get(fingerprint);
+        if (counts == null) {
+            int existing = store.countMatching(entry, fingerprint, maxVersion);
+            if (existing == 0) {
+                return false;
+            }
+            counts = new int[]{existing, 0};
+            seen.put(fingerprint, counts);
+        }
+        return ++counts[1] <= counts[0];
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+
+/**
+ * 账单内容指纹，用于识别重复导入的记录
+ *
+ * 指纹覆盖 (日期, 时间到分钟, 金额（分）, product, remark)，不含类别和 entryId：
+ * 同一笔交易重新导入时可能被归到不同类别。文本先规范化——去掉首尾空白、
+ * 连续空白合并为一个空格、转为小写；remark 与 product 相同时按空处理，
+ * 与导入时“备注为空则沿用产品名”的规则一致。
+ * 指纹是 64 位哈希，命中后仍需用 sameContent 逐字段确认。
+ */
+final class EntryFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long EMPTY_TEXT = textHash("");
+
+    private EntryFingerprint() {
+    }
+
+    static long of(BillingEntry entry) {
+        return of(epochDay(entry), minuteOfDay(entry), amount(entry),
+            textHash(entry.getProduct()), textHash(entry.getRemark()));
+    }
+
+    /**
+     * 两条账单的指纹字段在规范化后是否完全相同
+     */
+    static boolean sameContent(BillingEntry a, BillingEntry b) {
+        return epochDay(a) == epochDay(b)
+            && minuteOfDay(a) == minuteOfDay(b)
+            && amount(a) == amount(b)
+            && normalize(a.getProduct()).equals(normalize(b.getProduct()))
+            && normalizedRemark(a.getProduct(), a.getRemark()).equals(normalizedRemark(b.getProduct(), b.getRemark()));
+    }
+
+    /**
+     * @param productHash product 的 textHash
+     * @param remarkHash  remark 的 textHash
+     */
+    static long of(int epochDay, int minuteOfDay, long amount, long productHash, long remarkHash) {
+        long h = mix(epochDay);
+        h = mix(h * 31 + minuteOfDay);
+        h = mix(h * 31 + amount);
+        h = mix(h * 31 + productHash);
+        return mix(h * 31 + (remarkHash == productHash ? EMPTY_TEXT : remarkHash));
+    }
+
+    /**
+     * 规范化文本的 FNV-1a 哈希，null 与空串相同
+     */
+    static long textHash(String text) {
+        long h = FNV_OFFSET;
+        String normalized = normalize(text);
+        for (int i = 0; i < normalized.length(); i++) {
+            h = (h ^ normalized.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    // 规范化后的 remark：与 product 相同时为空
+    private static String normalizedRemark(String product, String remark) {
+        String normalized = normalize(remark);
+        return normalized.equals(normalize(product)) ? "" : normalized;
+    }
+
+    // 与 BillingLedger 中的列取值一致
+    private static int epochDay(BillingEntry entry) {
+        return entry.getDate() == null ? BillingLedger.NO_DATE : BillingLedger.toDay(entry.getDate());
+    }
+
+    private static int minuteOfDay(BillingEntry entry) {
+        return entry.getTime() == null ? -1 : entry.getTime().getHour() * 60 + entry.getTime().getMinute();
+    }
+
+    private static long amount(BillingEntry entry) {
+        return entry.getPrice() == null ? BillingLedger.NO_AMOUNT : BillingLedger.storedCents(entry.getPrice());
+    }
+
+    // MurmurHash3 的 64 位收尾混合
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
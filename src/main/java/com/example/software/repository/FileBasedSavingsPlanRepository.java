@@ -6,6 +6,10 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.example.software.util.AtomicFileWriter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedWriter;
@@ -20,9 +24,25 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+/**
+ * 储蓄计划存储
+ *
+ * 写入采用组提交：save/deleteById 立即更新内存并记一次未落盘变更，由后台线程
+ * 每隔 flushInterval 毫秒、或未落盘变更达到 flushBatchSize 条时统一写一次文件，
+ * 关闭时再写一次。需要返回前落盘的调用方传 sync = true。
+ * flushInterval 不大于 0 时每次写入都同步落盘。
+ * 每个用户的计划变更记录在各自的 ChangeLog 中，供客户端增量同步；对应的 DataChangedEvent
+ * 在包含该变更的写入完成后才发布，客户端不会收到之后因崩溃而丢失的变更的通知。
+ * 每次保存把计划的 version 加一，saveIfVersion/deleteIfVersion 在同一次原子的
+ * compute 中比较版本后写入，不同计划的并发修改互不阻塞。
+ */
 @Component
 public class FileBasedSavingsPlanRepository implements SavingsPlanRepository {
     
@@ -30,26 +50,59 @@ public class FileBasedSavingsPlanRepository implements SavingsPlanRepository {
     private static final String DATA_DIR = "data";
     private static final String PLANS_FILE = "savings_plans.json";
     private static final String LOGS_FILE = "transactions.log";
+    private static final int CHANGE_LOG_CAPACITY = 1000;
     
     private final ObjectMapper objectMapper;
+    private final AtomicFileWriter fileWriter;
+    private final ApplicationEventPublisher eventPublisher;
     private final Path dataDirectory;
     private final Path plansFilePath;
     private final Path logsFilePath;
+    private final int flushBatchSize;
     
     // 内存缓存
     private final Map<String, SavingsPlan> planCache = new ConcurrentHashMap<>();
+    // 上次落盘后的变更数
+    private final AtomicInteger pendingChanges = new AtomicInteger();
+    private final ScheduledExecutorService flusher;
+    // userId -> 该用户计划的变更序号
+    private final Map<String, ChangeLog> changeLogs = new ConcurrentHashMap<>();
+    // userId -> 已记录但尚未落盘的最新变更序号，落盘后发布事件
+    private final Map<String, Long> unpublished = new ConcurrentHashMap<>();
     
-    public FileBasedSavingsPlanRepository() {
+    public FileBasedSavingsPlanRepository(AtomicFileWriter fileWriter,
+                                          ApplicationEventPublisher eventPublisher,
+                                          @Value("${savings.flush.interval-ms:1000}") long flushInterval,
+                                          @Value("${savings.flush.batch-size:50}") int flushBatchSize) {
+        this(Paths.get(DATA_DIR), fileWriter, eventPublisher, flushInterval, flushBatchSize);
+    }
+    
+    FileBasedSavingsPlanRepository(Path dataDirectory, AtomicFileWriter fileWriter,
+                                   ApplicationEventPublisher eventPublisher, long flushInterval, int flushBatchSize) {
         this.objectMapper = new ObjectMapper()
             .registerModule(new JavaTimeModule())
             .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
             .enable(SerializationFeature.INDENT_OUTPUT);
+        this.fileWriter = fileWriter;
+        this.eventPublisher = eventPublisher;
             
-        this.dataDirectory = Paths.get(DATA_DIR);
+        this.dataDirectory = dataDirectory;
         this.plansFilePath = dataDirectory.resolve(PLANS_FILE);
         this.logsFilePath = dataDirectory.resolve(LOGS_FILE);
+        this.flushBatchSize = Math.max(1, flushBatchSize);
         
         initialize();
+        
+        if (flushInterval > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "savings-plan-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
     }
     
     private void initialize() {
@@ -81,15 +134,76 @@ public class FileBasedSavingsPlanRepository implements SavingsPlanRepository {
         }
     }
     
-    private void saveToFile() {
+    private boolean saveToFile() {
         try {
-            objectMapper.writeValue(plansFilePath.toFile(), planCache.values());
+            fileWriter.write(plansFilePath, () -> objectMapper.writeValueAsBytes(planCache.values()));
             logger.info("储蓄计划数据已保存到文件");
+            return true;
         } catch (IOException e) {
             logger.severe("保存储蓄计划数据时出错: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // 记录一次内存变更，按需同步落盘或唤醒后台写入
+    private void markDirty(boolean sync) {
+        int pending = pendingChanges.incrementAndGet();
+        if (sync || flusher == null) {
+            flush();
+        } else if (pending == flushBatchSize) {
+            flusher.execute(this::flush);
         }
     }
     
+    /**
+     * 把未落盘的变更写入文件。同一时间只有一次 flush 在执行，sync 调用方会等待进行中的写入结束后再写一次。
+     * 先清零计数再取出待发布的事件：事件总是在对应的变更写入缓存之后才记录，取出时变更已在缓存中，
+     * 必然包含在这次写入里，写入成功后才发布；清零之后才计入的变更在下一次写入时落盘。
+     */
+    public synchronized void flush() {
+        int pending = pendingChanges.getAndSet(0);
+        Map<String, Long> events = drainUnpublished();
+        if (pending == 0) {
+            requeue(events);
+            return;
+        }
+        if (!saveToFile()) {
+            pendingChanges.addAndGet(pending);
+            requeue(events);
+            return;
+        }
+        events.forEach((userId, sequence) ->
+            eventPublisher.publishEvent(new DataChangedEvent(userId, DataChangedEvent.SAVINGS, sequence)));
+    }
+
+    private Map<String, Long> drainUnpublished() {
+        Map<String, Long> events = new HashMap<>();
+        for (String userId : unpublished.keySet()) {
+            Long sequence = unpublished.remove(userId);
+            if (sequence != null) {
+                events.put(userId, sequence);
+            }
+        }
+        return events;
+    }
+
+    private void requeue(Map<String, Long> events) {
+        events.forEach((userId, sequence) -> unpublished.merge(userId, sequence, Math::max));
+    }
+    
+    @PreDestroy
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+    
     private void logTransaction(String message) {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(logsFilePath.toFile(), true))) {
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
@@ -101,14 +215,39 @@ public class FileBasedSavingsPlanRepository implements SavingsPlanRepository {
     
     @Override
     public SavingsPlan save(SavingsPlan savingsPlan) {
+        return save(savingsPlan, false);
+    }
+    
+    @Override
+    public SavingsPlan save(SavingsPlan savingsPlan, boolean sync) {
         // 如果没有ID则生成一个
         if (savingsPlan.getPlanId() == null || savingsPlan.getPlanId().isEmpty()) {
             savingsPlan.setPlanId(UUID.randomUUID().toString());
             printPlanDetails(savingsPlan); // 仅在新建时打印详情
         }
         
-        planCache.put(savingsPlan.getPlanId(), savingsPlan);
-        saveToFile();
+        planCache.compute(savingsPlan.getPlanId(), (id, current) -> {
+            savingsPlan.setVersion(versionOf(current) + 1);
+            return savingsPlan;
+        });
+        recordChange(savingsPlan, false);
+        markDirty(sync);
+        
+        return savingsPlan;
+    }
+    
+    @Override
+    public SavingsPlan saveIfVersion(SavingsPlan savingsPlan, long expectedVersion) {
+        planCache.compute(savingsPlan.getPlanId(), (id, current) -> {
+            long currentVersion = versionOf(current);
+            if (current == null || currentVersion != expectedVersion) {
+                throw new VersionConflictException(id, expectedVersion, currentVersion);
+            }
+            savingsPlan.setVersion(currentVersion + 1);
+            return savingsPlan;
+        });
+        recordChange(savingsPlan, false);
+        markDirty(false);
         
         return savingsPlan;
     }
@@ -139,18 +278,62 @@ public class FileBasedSavingsPlanRepository implements SavingsPlanRepository {
     
     @Override
     public void deleteById(String planId) {
+        deleteById(planId, false);
+    }
+    
+    @Override
+    public void deleteById(String planId, boolean sync) {
         SavingsPlan removed = planCache.remove(planId);
         if (removed != null) {
-            saveToFile();
+            recordChange(removed, true);
+            markDirty(sync);
             logTransaction("删除了储蓄计划: " + removed.getName() + " (ID: " + planId + ")");
         }
     }
     
+    @Override
+    public boolean deleteIfVersion(String planId, long expectedVersion) {
+        SavingsPlan[] removed = new SavingsPlan[1];
+        planCache.computeIfPresent(planId, (id, current) -> {
+            if (versionOf(current) != expectedVersion) {
+                throw new VersionConflictException(id, expectedVersion, versionOf(current));
+            }
+            removed[0] = current;
+            return null;
+        });
+        if (removed[0] == null) {
+            return false;
+        }
+        recordChange(removed[0], true);
+        markDirty(false);
+        logTransaction("删除了储蓄计划: " + removed[0].getName() + " (ID: " + planId + ")");
+        return true;
+    }
+    
+    private static long versionOf(SavingsPlan plan) {
+        return plan == null || plan.getVersion() == null ? 0 : plan.getVersion();
+    }
+    
     @Override
     public Optional<SavingsPlan> findById(String planId) {
         return Optional.ofNullable(planCache.get(planId));
     }
     
+    @Override
+    public ChangeLog.Delta changesSince(String userId, long epoch, long since) {
+        return changeLogs.computeIfAbsent(userId, id -> new ChangeLog(CHANGE_LOG_CAPACITY)).since(epoch, since);
+    }
+    
+    private void recordChange(SavingsPlan plan, boolean deleted) {
+        if (plan.getUser() != null && plan.getUser().getUserId() != null) {
+            String userId = plan.getUser().getUserId();
+            long sequence = changeLogs.computeIfAbsent(userId, id -> new ChangeLog(CHANGE_LOG_CAPACITY))
+                .record(plan.getPlanId(), deleted);
+            // 由 flush 在落盘后发布
+            unpublished.merge(userId, sequence, Math::max);
+        }
+    }
+    
     // 打印存储计划详情到控制台和日志
     private void printPlanDetails(SavingsPlan plan) {
         StringBuilder sb = new StringBuilder();
@@ -1,9 +1,12 @@
 package com.example.software.repository;
 
 import com.example.software.model.User;
+import com.example.software.security.UserCredentialsChangedEvent;
+import com.example.software.util.AtomicFileWriter;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -22,15 +25,25 @@ public class FileBasedUserRepository implements UserRepository {
     private static final String USERS_FILE = "users.json";
     
     private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final AtomicFileWriter fileWriter;
     private final Path dataDirectory;
     private final Path usersFilePath;
     
-    // 内存缓存
+    // 内存缓存，按 userId
     private final Map<String, User> userCache = new ConcurrentHashMap<>();
+    // 二级索引：用户名、邮箱（空邮箱不建索引），在 save/deleteById 中与 userCache 一起维护
+    private final Map<String, User> usernameIndex = new ConcurrentHashMap<>();
+    private final Map<String, User> emailIndex = new ConcurrentHashMap<>();
+    // userId -> 建索引时的 {用户名, 邮箱}
+    private final Map<String, String[]> indexedKeys = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
     
-    public FileBasedUserRepository() {
+    public FileBasedUserRepository(ApplicationEventPublisher eventPublisher, AtomicFileWriter fileWriter) {
         this.objectMapper = new ObjectMapper()
             .enable(SerializationFeature.INDENT_OUTPUT);
+        this.eventPublisher = eventPublisher;
+        this.fileWriter = fileWriter;
             
         this.dataDirectory = Paths.get(DATA_DIR);
         this.usersFilePath = dataDirectory.resolve(USERS_FILE);
@@ -54,6 +67,7 @@ public class FileBasedUserRepository implements UserRepository {
                 
                 for (User user : users) {
                     userCache.put(user.getUserId(), user);
+                    index(user);
                 }
                 
                 logger.info("已加载 " + users.size() + " 个用户记录");
@@ -69,22 +83,77 @@ public class FileBasedUserRepository implements UserRepository {
     
     private void saveToFile() {
         try {
-            objectMapper.writeValue(usersFilePath.toFile(), userCache.values());
+            fileWriter.write(usersFilePath, () -> objectMapper.writeValueAsBytes(userCache.values()));
             logger.info("用户数据已保存到文件");
         } catch (IOException e) {
             logger.severe("保存用户数据时出错: " + e.getMessage());
         }
     }
     
+    private void index(User user) {
+        String username = user.getUsername();
+        String email = user.getEmail() != null && !user.getEmail().isEmpty() ? user.getEmail() : null;
+        if (username != null) {
+            usernameIndex.put(username, user);
+        }
+        if (email != null) {
+            emailIndex.putIfAbsent(email, user);
+        }
+        // 记下建索引时的键，调用方原地修改 User 后仍能找到旧的索引项
+        indexedKeys.put(user.getUserId(), new String[] {username, email});
+    }
+
+    private void unindex(User user) {
+        String[] keys = indexedKeys.remove(user.getUserId());
+        if (keys == null) {
+            return;
+        }
+        if (keys[0] != null) {
+            usernameIndex.remove(keys[0], user);
+        }
+        if (keys[1] != null && emailIndex.remove(keys[1], user)) {
+            // 邮箱不唯一时，索引改指向仍使用该邮箱的其他用户
+            userCache.values().stream()
+                .filter(other -> keys[1].equals(other.getEmail()))
+                .findFirst()
+                .ifPresent(other -> emailIndex.putIfAbsent(keys[1], other));
+        }
+    }
+
+    /**
+     * 保存用户。内存和索引的修改串行执行，用户名已被其他用户占用时抛出异常，
+     * 并发注册同名用户时只有一个成功；文件写入在锁外进行，并发的保存会合并为一次写入
+     */
     @Override
     public User save(User user) {
         // 如果没有ID则生成一个
         if (user.getUserId() == null || user.getUserId().isEmpty()) {
             user.setUserId(UUID.randomUUID().toString());
         }
-        
-        userCache.put(user.getUserId(), user);
+
+        User previous;
+        String previousUsername = null;
+        synchronized (writeLock) {
+            User owner = user.getUsername() != null ? usernameIndex.get(user.getUsername()) : null;
+            if (owner != null && !owner.getUserId().equals(user.getUserId())) {
+                throw new IllegalStateException("Username is already taken!");
+            }
+
+            previous = userCache.put(user.getUserId(), user);
+            if (previous != null) {
+                String[] keys = indexedKeys.get(previous.getUserId());
+                previousUsername = keys != null ? keys[0] : previous.getUsername();
+                unindex(previous);
+            }
+            index(user);
+        }
         saveToFile();
+
+        // 用户记录被替换或用户名、密码变更后，旧令牌的缓存失效
+        if (previous != null && (previous != user || !Objects.equals(previousUsername, user.getUsername())
+                || !Objects.equals(previous.getPassword(), user.getPassword()))) {
+            eventPublisher.publishEvent(new UserCredentialsChangedEvent(previousUsername));
+        }
         
         logger.info("保存了用户: " + user.getUsername());
         return user;
@@ -97,16 +166,12 @@ public class FileBasedUserRepository implements UserRepository {
     
     @Override
     public Optional<User> findByUsername(String username) {
-        return userCache.values().stream()
-            .filter(user -> user.getUsername().equals(username))
-            .findFirst();
+        return username == null ? Optional.empty() : Optional.ofNullable(usernameIndex.get(username));
     }
     
     @Override
     public Optional<User> findByEmail(String email) {
-        return userCache.values().stream()
-            .filter(user -> user.getEmail().equals(email))
-            .findFirst();
+        return email == null ? Optional.empty() : Optional.ofNullable(emailIndex.get(email));
     }
     
     @Override
@@ -116,21 +181,26 @@ public class FileBasedUserRepository implements UserRepository {
     
     @Override
     public boolean existsByUsername(String username) {
-        return userCache.values().stream()
-            .anyMatch(user -> user.getUsername().equals(username));
+        return username != null && usernameIndex.containsKey(username);
     }
     
     @Override
     public boolean existsByEmail(String email) {
-        return userCache.values().stream()
-            .anyMatch(user -> user.getEmail().equals(email));
+        return email != null && emailIndex.containsKey(email);
     }
     
     @Override
     public void deleteById(String userId) {
-        User removed = userCache.remove(userId);
+        User removed;
+        synchronized (writeLock) {
+            removed = userCache.remove(userId);
+            if (removed != null) {
+                unindex(removed);
+            }
+        }
         if (removed != null) {
             saveToFile();
+            eventPublisher.publishEvent(new UserCredentialsChangedEvent(removed.getUsername()));
             logger.info("删除了用户: " + removed.getUsername());
         }
     }
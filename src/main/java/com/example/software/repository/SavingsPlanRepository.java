@@ -10,9 +10,18 @@ import java.util.Optional;
 @Repository
 public interface SavingsPlanRepository {
     SavingsPlan save(SavingsPlan savingsPlan);
+    // sync 为 true 时返回前数据已写入磁盘
+    SavingsPlan save(SavingsPlan savingsPlan, boolean sync);
+    // 当前版本等于 expectedVersion 时才保存，否则抛出 VersionConflictException
+    SavingsPlan saveIfVersion(SavingsPlan savingsPlan, long expectedVersion);
     List<SavingsPlan> findByUser(User user);
     Optional<SavingsPlan> findByPlanIdAndUser(String planId, User user);
     Optional<SavingsPlan> findById(String planId);
     List<SavingsPlan> findAll();
     void deleteById(String planId);
-}
\ No newline at end of file
+    void deleteById(String planId, boolean sync);
+    // 当前版本等于 expectedVersion 时才删除，返回是否存在并已删除
+    boolean deleteIfVersion(String planId, long expectedVersion);
+    // 该用户的计划在 (epoch, since) 之后的变更
+    ChangeLog.Delta changesSince(String userId, long epoch, long since);
+}
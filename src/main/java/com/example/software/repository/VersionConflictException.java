@@ -0,0 +1,26 @@
+package com.example.software.repository;
+
+/**
+ * 按版本号修改或删除时，记录的当前版本与调用方期望的版本不一致
+ *
+ * 说明记录在调用方读取之后已被其他请求修改，调用方应重新读取后再提交。
+ */
+public class VersionConflictException extends RuntimeException {
+
+    private final String id;
+    private final long currentVersion;
+
+    public VersionConflictException(String id, long expectedVersion, long currentVersion) {
+        super("记录 " + id + " 已被修改：期望版本 " + expectedVersion + "，当前版本 " + currentVersion);
+        this.id = id;
+        this.currentVersion = currentVersion;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
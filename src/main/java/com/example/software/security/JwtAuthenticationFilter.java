@@ -9,7 +9,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -22,8 +21,7 @@ import java.util.Collections;
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
-    private final JwtUtil jwtUtil;
-    private final UserDetailsService userDetailsService;
+    private final JwtTokenCache jwtTokenCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -60,15 +58,11 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         log.info("Extracted JWT token: {}", jwt);
 
         try {
-            final String username = jwtUtil.extractUsername(jwt);
-            log.info("Extracted username from token: {}", username);
-
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                log.info("User details loaded for username: {}", username);
-
-                if (jwtUtil.validateToken(jwt, userDetails)) {
-                    log.info("Token is valid for user: {}", username);
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                // 已验证过的令牌直接命中缓存，不再重复校验签名和查找用户
+                UserDetails userDetails = jwtTokenCache.authenticate(jwt);
+                if (userDetails != null) {
+                    log.info("Token is valid for user: {}", userDetails.getUsername());
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
                             null,
@@ -76,9 +70,9 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     );
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                     SecurityContextHolder.getContext().setAuthentication(authToken);
-                    log.info("Authentication set in SecurityContext for user: {}", username);
+                    log.info("Authentication set in SecurityContext for user: {}", userDetails.getUsername());
                 } else {
-                    log.warn("Token is invalid for user: {}", username);
+                    log.warn("Token is invalid");
                 }
             }
         } catch (Exception e) {
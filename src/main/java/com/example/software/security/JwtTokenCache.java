@@ -0,0 +1,163 @@
+package com.example.software.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * 已验证 JWT 的缓存
+ *
+ * 令牌第一次出现时完成签名校验和用户查找，之后在其过期前直接返回缓存的用户，
+ * 重复请求不再做 HMAC 校验和用户文件查询。
+ * 缓存条目在令牌过期时间到达后失效；用户被删除或修改密码时通过
+ * UserCredentialsChangedEvent 清除该用户的全部令牌，清除期间正在校验的令牌不会写回缓存。
+ * 超过容量时先清理过期条目，仍然超出则一次淘汰最早过期的一批条目（容量的十分之一），
+ * 全表扫描的开销分摊到之后的多次写入。
+ */
+@Component
+public class JwtTokenCache {
+
+    private static final Logger logger = Logger.getLogger(JwtTokenCache.class.getName());
+    // 超出容量时淘汰 maxSize / EVICTION_DIVISOR 个条目
+    private static final int EVICTION_DIVISOR = 10;
+
+    private final JwtUtil jwtUtil;
+    private final UserDetailsService userDetailsService;
+    private final int maxSize;
+
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    // 用户名 -> 该用户已缓存的令牌，用于按用户失效
+    private final Map<String, Set<String>> tokensByUser = new ConcurrentHashMap<>();
+    // 用户名 -> 失效次数。校验前读取，写入缓存时已变化说明期间用户被失效，校验结果不再缓存
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    public JwtTokenCache(JwtUtil jwtUtil, UserDetailsService userDetailsService,
+                         @Value("${jwt.cache.max-size:10000}") int maxSize) {
+        this.jwtUtil = jwtUtil;
+        this.userDetailsService = userDetailsService;
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * 校验令牌并返回对应的用户，令牌无效或已过期时返回 null
+     */
+    public UserDetails authenticate(String token) {
+        long now = System.currentTimeMillis();
+        CachedToken cached = tokens.get(token);
+        if (cached != null) {
+            if (cached.expiresAt > now) {
+                return cached.userDetails;
+            }
+            evict(token, cached);
+        }
+
+        try {
+            String username = jwtUtil.extractUsername(token);
+            long generation = generations.getOrDefault(username, 0L);
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            if (!jwtUtil.validateToken(token, userDetails)) {
+                return null;
+            }
+            long expiresAt = jwtUtil.extractExpiration(token).getTime();
+            put(token, new CachedToken(username, userDetails, expiresAt), generation);
+            return userDetails;
+        } catch (Exception e) {
+            logger.warning("Token验证失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 清除某个用户的全部缓存令牌
+     */
+    public void invalidateUser(String username) {
+        // 先增加失效次数：之后写入缓存的校验结果要么被这里一并清除，要么在 put 中被丢弃
+        generations.merge(username, 1L, Long::sum);
+        Set<String> userTokens = tokensByUser.remove(username);
+        if (userTokens != null) {
+            for (String token : userTokens) {
+                tokens.remove(token);
+            }
+        }
+    }
+
+    @EventListener
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        invalidateUser(event.getUsername());
+    }
+
+    private void put(String token, CachedToken cached, long generation) {
+        if (tokens.size() >= maxSize) {
+            evictBatch();
+        }
+        // 与 invalidateUser 的 remove 在同一个键上串行执行
+        tokensByUser.compute(cached.username, (username, userTokens) -> {
+            if (generations.getOrDefault(username, 0L) != generation) {
+                return userTokens;
+            }
+            tokens.put(token, cached);
+            Set<String> result = userTokens == null ? ConcurrentHashMap.newKeySet() : userTokens;
+            result.add(token);
+            return result;
+        });
+    }
+
+    private void evict(String token, CachedToken cached) {
+        if (tokens.remove(token, cached)) {
+            tokensByUser.computeIfPresent(cached.username, (username, userTokens) -> {
+                userTokens.remove(token);
+                return userTokens.isEmpty() ? null : userTokens;
+            });
+        }
+    }
+
+    /**
+     * 清理过期条目，仍然超出时淘汰最早过期的条目，直到比容量少一批。
+     * 用大小为淘汰数的堆选出最早过期的条目，一次扫描完成；同一时间只有一个线程执行。
+     */
+    private synchronized void evictBatch() {
+        if (tokens.size() < maxSize) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int excess = tokens.size() - (maxSize - Math.max(1, maxSize / EVICTION_DIVISOR));
+        // 堆顶为已选条目中最晚过期的
+        PriorityQueue<Map.Entry<String, CachedToken>> earliest = new PriorityQueue<>(
+            Comparator.comparingLong((Map.Entry<String, CachedToken> entry) -> entry.getValue().expiresAt).reversed());
+        for (Map.Entry<String, CachedToken> entry : tokens.entrySet()) {
+            if (entry.getValue().expiresAt <= now) {
+                evict(entry.getKey(), entry.getValue());
+                excess--;
+            } else {
+                earliest.add(entry);
+            }
+            while (earliest.size() > Math.max(0, excess)) {
+                earliest.poll();
+            }
+        }
+        for (Map.Entry<String, CachedToken> entry : earliest) {
+            evict(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static final class CachedToken {
+        private final String username;
+        private final UserDetails userDetails;
+        private final long expiresAt;
+
+        private CachedToken(String username, UserDetails userDetails, long expiresAt) {
+            this.username = username;
+            this.userDetails = userDetails;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
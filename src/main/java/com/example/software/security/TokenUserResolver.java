@@ -0,0 +1,36 @@
+package com.example.software.security;
+
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * 从 Authorization 头解析当前用户
+ *
+ * 校验 JWT（subject 为用户名）并返回对应用户的 userId，账单数据按 userId 分区。
+ * 校验结果由 JwtTokenCache 缓存。
+ */
+@Component
+public class TokenUserResolver {
+
+    private final JwtTokenCache jwtTokenCache;
+
+    public TokenUserResolver(JwtTokenCache jwtTokenCache) {
+        this.jwtTokenCache = jwtTokenCache;
+    }
+
+    /**
+     * @param authorizationHeader 带或不带 "Bearer " 前缀的令牌
+     * @return 令牌有效时返回 userId，否则返回 null
+     */
+    public String resolveUserId(String authorizationHeader) {
+        if (authorizationHeader == null || authorizationHeader.isBlank()) {
+            return null;
+        }
+        String token = authorizationHeader.replace("Bearer ", "").trim();
+        UserDetails userDetails = jwtTokenCache.authenticate(token);
+        if (!(userDetails instanceof UserDetailsImpl details)) {
+            return null;
+        }
+        return details.getUser().getUserId();
+    }
+}
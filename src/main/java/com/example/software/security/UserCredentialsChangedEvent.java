@@ -0,0 +1,16 @@
+package com.example.software.security;
+
+/**
+ * 用户被删除或凭据（用户名、密码）变更时发布，已缓存的令牌需要失效
+ */
+public class UserCredentialsChangedEvent {
+    private final String username;
+
+    public UserCredentialsChangedEvent(String username) {
+        this.username = username;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
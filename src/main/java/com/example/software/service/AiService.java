@@ -5,14 +5,13 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.OllamaChatClient;
 import org.springframework.stereotype.Service;
 import com.example.software.api.BillingEntry;
+import com.example.software.repository.BillingStoreRegistry;
 import com.example.software.util.HolidayUtil;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.springframework.beans.factory.annotation.Value;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.*;
@@ -24,10 +23,16 @@ import java.util.stream.Collectors;
 
 @Service
 public class AiService {
+
     private final OllamaChatClient chatClient;
+    private final BillingStoreRegistry billingStoreRegistry;
+    private final CategoryRuleService categoryRuleService;
 
-    public AiService(OllamaChatClient chatClient) {
+    public AiService(OllamaChatClient chatClient, BillingStoreRegistry billingStoreRegistry,
+                     CategoryRuleService categoryRuleService) {
         this.chatClient = chatClient;
+        this.billingStoreRegistry = billingStoreRegistry;
+        this.categoryRuleService = categoryRuleService;
     }
 
     public String chat(String message) {
@@ -63,33 +68,16 @@ public class AiService {
 
     /**
      * 节日消费分析与建议
-     * @param csvPath 账单CSV文件路径
+     * @param userId 当前用户
      * @return AI生成的节日支出建议
      */
-    public String holidaySpendingAdvice(String csvPath) {
+    public String holidaySpendingAdvice(String userId) {
         try {
-            // 1. 读取账单数据
-            List<BillingEntry> entries = new ArrayList<>();
-            File csvFile = new File(csvPath);
-            if (!csvFile.exists()) return "The bill data file was not found.";
-            try (BufferedReader reader = new BufferedReader(new FileReader(csvFile))) {
-                String line = reader.readLine(); // 跳过头行
-                while ((line = reader.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length >= 5) {
-                        BillingEntry entry = new BillingEntry();
-                        entry.setCategory(values[0].replace("\"", "").trim());
-                        entry.setProduct(values[1].replace("\"", "").trim());
-                        try { entry.setPrice(new BigDecimal(values[2].replace("\"", "").trim())); } catch (Exception e) { entry.setPrice(BigDecimal.ZERO); }
-                        try { entry.setDate(LocalDate.parse(values[3].replace("\"", "").trim())); } catch (Exception e) { entry.setDate(LocalDate.now()); }
-                        entry.setRemark(values.length > 5 ? values[5].replace("\"", "").trim() : entry.getProduct());
-                        entries.add(entry);
-                    }
-                }
-            }
-            // 2. 筛选今天往前7天（含今天）的账单数据
+            // 1. 读取账单数据：只查询当前用户分区的内存存储
             LocalDate today = LocalDate.now();
             LocalDate sevenDaysAgo = today.minusDays(6); // 包含今天共7天
+            List<BillingEntry> entries = billingStoreRegistry.forUser(userId).findByDateRange(sevenDaysAgo, today);
+            // 2. 筛选今天往前7天（含今天）的账单数据
             List<BillingEntry> recentEntries = new ArrayList<>();
             for (BillingEntry e : entries) {
                 if (e.getDate() != null && !e.getDate().isBefore(sevenDaysAgo) && !e.getDate().isAfter(today)) {
@@ -146,37 +134,16 @@ public class AiService {
 
     /**
      * 消费模式分析与预算建议
+     * @param userId 当前用户
      * @return AI生成的消费模式分析和预算建议
      */
-    public String consumeAnalysis() {
+    public String consumeAnalysis(String userId) {
         try {
-            // 1. 读取账单数据
-            List<BillingEntry> entries = new ArrayList<>();
-            String csvPath = "data/billing/billingEntries.csv";
-            File csvFile = new File(csvPath);
-            if (!csvFile.exists()) return "The bill data file was not found.";
-            try (BufferedReader reader = new BufferedReader(new FileReader(csvFile))) {
-                String line = reader.readLine(); // 跳过头行
-                while ((line = reader.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length >= 5) {
-                        BillingEntry entry = new BillingEntry();
-                        entry.setCategory(values[0].replace("\"", "").trim());
-                        entry.setProduct(values[1].replace("\"", "").trim());
-                        try { entry.setPrice(new BigDecimal(values[2].replace("\"", "").trim())); } catch (Exception e) { entry.setPrice(BigDecimal.ZERO); }
-                        try { entry.setDate(LocalDate.parse(values[3].replace("\"", "").trim())); } catch (Exception e) { entry.setDate(LocalDate.now()); }
-                        entry.setRemark(values.length > 5 ? values[5].replace("\"", "").trim() : entry.getProduct());
-                        entries.add(entry);
-                    }
-                }
-            }
-            // 2. 筛选近三个月的数据
+            // 1. 通过日期索引读取近三个月的账单数据
             LocalDate today = LocalDate.now();
             LocalDate threeMonthsAgo = today.minusMonths(3);
-            List<BillingEntry> filteredEntries = entries.stream()
-                .filter(e -> !e.getDate().isBefore(threeMonthsAgo) && !e.getDate().isAfter(today))
-                .collect(Collectors.toList());
-            // 3. 构造AI分析请求（只用filteredEntries）
+            List<BillingEntry> filteredEntries = billingStoreRegistry.forUser(userId).findByDateRange(threeMonthsAgo, today);
+            // 2. 构造AI分析请求（只用filteredEntries）
             String prompt = """
 Please analyze the following bill data and provide a consumption pattern analysis and budget suggestions for next month.
 Requirements:
@@ -206,10 +173,11 @@ The bill data is as follows (each line: category, product, amount, date):
 
     /**
      * 消费记录自动分类并入账
+     * @param userId 当前用户
      * @param record 消费描述
      * @return 结果字符串
      */
-    public String consumeRecordAndAdd(String record) {
+    public String consumeRecordAndAdd(String userId, String record) {
         try {
             // 1. 调用AI模型结构化消费记录
             String prompt = """
@@ -246,7 +214,8 @@ The bill data is as follows (each line: category, product, amount, date):
             
             // 3. 金额字段清洗
             String priceStr = map.getOrDefault("price", "0").toString().replaceAll("[^\\d.]", "");
-            BigDecimal price = new BigDecimal(priceStr.isEmpty() ? "0" : priceStr);
+            // 模型给出的金额不是用户输入的精确值，按分四舍五入，满足存储的精度要求
+            BigDecimal price = new BigDecimal(priceStr.isEmpty() ? "0" : priceStr).setScale(2, RoundingMode.HALF_UP);
             
             // 4. 日期、时间兜底
             String dateStr = (String) map.get("date");
@@ -265,7 +234,6 @@ The bill data is as follows (each line: category, product, amount, date):
             LocalTime time = timeStr.isEmpty() ? LocalTime.now() : LocalTime.parse(timeStr);
             
             BillingEntry entry = new BillingEntry();
-            entry.setEntryId(UUID.randomUUID().toString().substring(0, 8));
             entry.setCategory((String) map.getOrDefault("category", "其他"));
             String product = (String) map.get("product");
             if (product == null || product.trim().isEmpty() || product.matches("^[\\d.]+元?$")) {
@@ -277,11 +245,15 @@ The bill data is as follows (each line: category, product, amount, date):
             entry.setTime(time);
             entry.setFormattedTime(time.toString());
             entry.setRemark((String) map.getOrDefault("remark", record));
+
+            // 用户的分类规则优先于模型给出的类别
+            String ruleCategory = categoryRuleService.rulesFor(userId).categorize(entry);
+            if (ruleCategory != null) {
+                entry.setCategory(ruleCategory);
+            }
             
-            // 3. 写入三种格式的账单文件
-            saveToCSV(entry);
-            saveToJSON(entry);
-            saveToTXT(entry);
+            // 3. 写入账单存储
+            billingStoreRegistry.forUser(userId).add(entry);
             
             return String.format("Automatically classified and recorded: Category:%s，Product: %s, Amount: %s yuan, Date: %s. ",
                     entry.getCategory(), entry.getProduct(), entry.getPrice(), entry.getDate());
@@ -291,91 +263,15 @@ The bill data is as follows (each line: category, product, amount, date):
         }
     }
 
-    /**
-     * 保存到CSV文件
-     */
-    private void saveToCSV(BillingEntry entry) throws Exception {
-        String csvPath = "data/billing/billingEntries.csv";
-        File csvFile = new File(csvPath);
-        boolean fileExists = csvFile.exists();
-        try (java.io.FileWriter fw = new java.io.FileWriter(csvFile, true)) {
-            if (!fileExists) {
-                fw.write("类别,产品,价格,日期,时间,备注\n");
-            }
-            fw.write(String.format("\"%s\",\"%s\",%.2f,\"%s\",\"%s\",\"%s\"\n",
-                    entry.getCategory(), entry.getProduct(), entry.getPrice(), entry.getDate(), 
-                    entry.getFormattedTime(), entry.getRemark()));
-        }
-    }
-
-    /**
-     * 保存到JSON文件
-     */
-    private void saveToJSON(BillingEntry entry) throws Exception {
-        String jsonPath = "data/billing/billingEntries.json";
-        File jsonFile = new File(jsonPath);
-        
-        // 读取现有数据
-        List<BillingEntry> entries = new ArrayList<>();
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.registerModule(new JavaTimeModule());
-        
-        if (jsonFile.exists() && jsonFile.length() > 0) {
-            try {
-                entries = mapper.readValue(jsonFile, 
-                        mapper.getTypeFactory().constructCollectionType(List.class, BillingEntry.class));
-            } catch (Exception e) {
-                System.err.println("JSON文件读取失败，将创建新文件：" + e.getMessage());
-            }
-        }
-        
-        // 添加新条目
-        entries.add(entry);
-        
-        // 写回文件
-        mapper.writerWithDefaultPrettyPrinter().writeValue(jsonFile, entries);
-    }
-
-    /**
-     * 保存到TXT文件
-     */
-    private void saveToTXT(BillingEntry entry) throws Exception {
-        String txtPath = "data/billing/billingEntries.txt";
-        File txtFile = new File(txtPath);
-        try (java.io.FileWriter fw = new java.io.FileWriter(txtFile, true)) {
-            fw.write(String.format("%s, %s,%.2f,%s,%s,%s\n",
-                    entry.getCategory(), entry.getProduct(), entry.getPrice(), entry.getDate(), 
-                    entry.getFormattedTime(), entry.getRemark()));
-        }
-    }
-
     /**
      * 分析周期性交易模式并生成提醒
+     * @param userId 当前用户
      * @return 周期性交易提醒信息
      */
-    public String periodicReminders() {
+    public String periodicReminders(String userId) {
         try {
             // 1. 读取账单数据
-            List<BillingEntry> entries = new ArrayList<>();
-            String csvPath = "data/billing/billingEntries.csv";
-            File csvFile = new File(csvPath);
-            if (!csvFile.exists()) return "未找到账单数据文件。";
-
-            try (BufferedReader reader = new BufferedReader(new FileReader(csvFile))) {
-                String line = reader.readLine(); // 跳过头行
-                while ((line = reader.readLine()) != null) {
-                    String[] values = line.split(",");
-                    if (values.length >= 5) {
-                        BillingEntry entry = new BillingEntry();
-                        entry.setCategory(values[0].replace("\"", "").trim());
-                        entry.setProduct(values[1].replace("\"", "").trim());
-                        try { entry.setPrice(new BigDecimal(values[2].replace("\"", "").trim())); } catch (Exception e) { entry.setPrice(BigDecimal.ZERO); }
-                        try { entry.setDate(LocalDate.parse(values[3].replace("\"", "").trim())); } catch (Exception e) { entry.setDate(LocalDate.now()); }
-                        entry.setRemark(values.length > 5 ? values[5].replace("\"", "").trim() : entry.getProduct());
-                        entries.add(entry);
-                    }
-                }
-            }
+            List<BillingEntry> entries = billingStoreRegistry.forUser(userId).findAll();
 
             // 2. 对交易进行分组并分析周期性
             Map<String, List<BillingEntry>> productGroups = new HashMap<>();
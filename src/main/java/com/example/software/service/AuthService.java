@@ -4,7 +4,7 @@ import com.example.software.dto.AuthResponse;
 import com.example.software.dto.LoginRequest;
 import com.example.software.dto.RegisterRequest;
 import com.example.software.model.User;
-import com.example.software.repository.JsonFileUserRepository;
+import com.example.software.repository.UserRepository;
 import com.example.software.security.JwtUtil;
 import com.example.software.security.UserDetailsImpl;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +24,7 @@ public class AuthService {
     private AuthenticationManager authenticationManager;
 
     @Autowired
-    private JsonFileUserRepository userRepository;
+    private UserRepository userRepository;
 
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -0,0 +1,188 @@
+package com.example.software.service;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.api.BillingEntryPage;
+import com.example.software.repository.BillingEntryStore;
+import com.example.software.repository.BillingStoreRegistry;
+import com.example.software.util.AtomicFileWriter;
+import com.example.software.util.CsvWriter;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * 按需生成账单导出视图（billingEntries.json / .csv / .txt）
+ *
+ * 这些文件不再在每次写入时重写，只在被请求且数据序号变化后重新生成。
+ * 导出文件写在各用户的分区目录下。
+ * streamJson/streamXml 不生成文件，也不在内存中组装完整列表，而是按页从存储读取并直接写到输出流。
+ */
+@Service
+public class BillingExportService {
+
+    private static final Logger logger = Logger.getLogger(BillingExportService.class.getName());
+    private static final String[] CSV_HEADERS = {"类别", "产品", "价格", "日期", "时间", "备注"};
+    // 流式输出时每次从存储读取的条数，只有这一页的账单对象会同时驻留在内存中
+    private static final int STREAM_PAGE_SIZE = 500;
+
+    private final BillingStoreRegistry billingStoreRegistry;
+    private final AtomicFileWriter fileWriter;
+    private final ObjectMapper objectMapper;
+    private final XMLService xmlService;
+    // 每个用户、每种格式最近一次生成时对应的数据序号
+    private final Map<String, Long> exportedSequence = new HashMap<>();
+
+    public BillingExportService(BillingStoreRegistry billingStoreRegistry, AtomicFileWriter fileWriter,
+                                XMLService xmlService) {
+        this.billingStoreRegistry = billingStoreRegistry;
+        this.fileWriter = fileWriter;
+        this.xmlService = xmlService;
+        this.objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    /**
+     * 返回指定格式的导出文件路径，数据有变化时先重新生成
+     *
+     * @param userId 用户分区
+     * @param format json、csv 或 txt
+     */
+    public synchronized Path export(String userId, String format) throws IOException {
+        String normalized = format.toLowerCase();
+        if (!normalized.equals("json") && !normalized.equals("csv") && !normalized.equals("txt")) {
+            throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
+
+        BillingEntryStore billingEntryStore = billingStoreRegistry.forUser(userId);
+        Path target = billingStoreRegistry.directoryOf(userId).resolve("billingEntries." + normalized);
+        String key = userId + "/" + normalized;
+        long sequence = billingEntryStore.getSequence();
+        Long exported = exportedSequence.get(key);
+        if (exported != null && exported == sequence && Files.exists(target)) {
+            return target;
+        }
+
+        List<BillingEntry> entries = billingEntryStore.findAll();
+        byte[] content = normalized.equals("json")
+            ? objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(entries)
+            : formatDelimited(entries, normalized.equals("csv"));
+        fileWriter.write(target, content);
+        exportedSequence.put(key, sequence);
+        logger.info("已生成账单导出文件: " + target + "，共 " + entries.size() + " 条记录");
+        return target;
+    }
+
+    /**
+     * 把用户的全部账单以 JSON 数组写到输出流
+     *
+     * 按 (日期, 时间, entryId) 的分页游标逐页读取，读取时只短暂持有存储的读锁，
+     * 向客户端写数据时不持锁，慢客户端不会阻塞写入。每页写完后 flush 一次。
+     * 调用方负责关闭输出流。
+     *
+     * @return 写出的账单条数
+     */
+    public long streamJson(String userId, OutputStream output) throws IOException {
+        BillingEntryStore billingEntryStore = billingStoreRegistry.forUser(userId);
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            String cursor = null;
+            BillingEntryPage page;
+            do {
+                page = billingEntryStore.queryPage(null, null, null, null, true, cursor, STREAM_PAGE_SIZE);
+                for (BillingEntry entry : page.getEntries()) {
+                    objectMapper.writeValue(generator, entry);
+                }
+                count += page.getEntries().size();
+                cursor = page.getNextCursor();
+                generator.flush();
+            } while (page.isHasMore());
+            generator.writeEndArray();
+        }
+        return count;
+    }
+
+    /**
+     * 把用户的全部账单以 XML（<billingEntries> 下每条一个 <entry>）写到输出流
+     *
+     * 分页方式与 streamJson 相同，每页写完后 flush 一次。调用方负责关闭输出流。
+     *
+     * @return 写出的账单条数
+     */
+    public long streamXml(String userId, OutputStream output) throws IOException {
+        BillingEntryStore billingEntryStore = billingStoreRegistry.forUser(userId);
+        long count = 0;
+        try (XMLService.EntryWriter writer = xmlService.openWriter(output)) {
+            String cursor = null;
+            BillingEntryPage page;
+            do {
+                page = billingEntryStore.queryPage(null, null, null, null, true, cursor, STREAM_PAGE_SIZE);
+                for (BillingEntry entry : page.getEntries()) {
+                    writer.write(entry);
+                }
+                count += page.getEntries().size();
+                cursor = page.getNextCursor();
+                writer.flush();
+            } while (page.isHasMore());
+        }
+        return count;
+    }
+
+    private byte[] formatDelimited(List<BillingEntry> entries, boolean csv) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            if (csv) {
+                writeCsv(entries, new CsvWriter(writer));
+            } else {
+                for (BillingEntry entry : entries) {
+                    writer.write(String.join(",",
+                        text(entry.getCategory()),
+                        text(entry.getProduct()),
+                        entry.getPrice() != null ? entry.getPrice().toString() : "0",
+                        entry.getDate() != null ? entry.getDate().toString() : "",
+                        text(entry.getFormattedTime()),
+                        text(entry.getRemark())));
+                    writer.write("\n");
+                }
+            }
+        }
+        return output.toByteArray();
+    }
+
+    // 含逗号、引号或换行的字段由 CsvWriter 按 RFC 4180 加引号
+    private void writeCsv(List<BillingEntry> entries, CsvWriter csv) throws IOException {
+        csv.writeRecord(CSV_HEADERS);
+        for (BillingEntry entry : entries) {
+            csv.write(entry.getCategory())
+                .write(entry.getProduct())
+                .write(entry.getPrice() != null ? entry.getPrice() : "0")
+                .write(entry.getDate())
+                .write(entry.getFormattedTime())
+                .write(entry.getRemark())
+                .endRecord();
+        }
+        csv.flush();
+    }
+
+    private String text(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.software.service;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.model.ImportResult;
+import com.example.software.repository.BillingEntryStore;
+import com.example.software.repository.BillingLedger;
+import com.example.software.repository.BillingStoreRegistry;
+import com.example.software.repository.DuplicateFilter;
+import com.example.software.util.CsvReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.DateTimeException;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 账单 CSV / XML 批量导入
+ *
+ * 以流的方式逐条解析上传内容（CsvReader，支持引号内的逗号和换行），
+ * 价格、日期和时间直接从字段的字符解析，只为类别、产品和备注创建字符串；
+ * XML 由 XMLService 按 entry 元素逐条读取。
+ * 每积累 batchSize 条提交一次，每批只做一次持久化写入。
+ * 与导入开始前已有账单内容相同的记录（见 DuplicateFilter）不再写入，只计入 entriesDuplicate，
+ * 重复导入同一个文件不会使账单翻倍。
+ * 类别为空（或 CSV 没有类别列）的记录按用户的分类规则（CategoryRuleService）归类，计入 entriesCategorized；
+ * 没有规则匹配时归入“其他”。整个文件共用导入开始时的一份编译好的规则。
+ * 后台导入任务（ImportJobService）通过 Progress 回调获得每批之后的进度，并借此中止导入。
+ */
+@Service
+public class BillingImportService {
+
+    private static final Logger logger = Logger.getLogger(BillingImportService.class.getName());
+    private static final int MAX_ERROR_DETAILS = 100;
+    private static final String DEFAULT_CATEGORY = "其他";
+
+    // 列位置：默认沿用旧导入格式 类别,产品,日期,时间,价格,备注
+    private static final int CATEGORY = 0;
+    private static final int PRODUCT = 1;
+    private static final int DATE = 2;
+    private static final int TIME = 3;
+    private static final int PRICE = 4;
+    private static final int REMARK = 5;
+
+    private final BillingStoreRegistry billingStoreRegistry;
+    private final XMLService xmlService;
+    private final CategoryRuleService categoryRuleService;
+    private final int batchSize;
+
+    /**
+     * 导入进度回调，每提交一批后调用。抛出 CancellationException 可中止导入，已提交的批次保留
+     */
+    @FunctionalInterface
+    public interface Progress {
+        Progress NONE = result -> { };
+
+        void onBatch(ImportResult result);
+    }
+
+    public BillingImportService(BillingStoreRegistry billingStoreRegistry, XMLService xmlService,
+                                CategoryRuleService categoryRuleService,
+                                @Value("${billing.import.batch-size:1000}") int batchSize) {
+        this.billingStoreRegistry = billingStoreRegistry;
+        this.xmlService = xmlService;
+        this.categoryRuleService = categoryRuleService;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * 把 CSV 内容导入指定用户的账单，第一行为表头
+     */
+    public ImportResult importCsv(String userId, InputStream input) throws IOException {
+        return importCsv(userId, input, Progress.NONE);
+    }
+
+    public ImportResult importCsv(String userId, InputStream input, Progress progress) throws IOException {
+        BillingEntryStore billingEntryStore = billingStoreRegistry.forUser(userId);
+        ImportResult result = new ImportResult();
+        List<BillingEntry> batch = new ArrayList<>(batchSize);
+        DuplicateFilter duplicates = billingEntryStore.newDuplicateFilter();
+        CategoryRules rules = categoryRuleService.rulesFor(userId);
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            int[] columns = resolveColumns(reader.next() ? reader : null);
+            int required = Math.max(Math.max(columns[CATEGORY], columns[PRODUCT]),
+                Math.max(Math.max(columns[DATE], columns[TIME]), columns[PRICE])) + 1;
+
+            while (reader.next()) {
+                long line = reader.getLineNumber();
+                if (reader.getFieldCount() == 1 && reader.isBlank(0)) {
+                    continue;
+                }
+                if (reader.getFieldCount() < required) {
+                    reject(result, line, "列数不足，需要至少 " + required + " 列");
+                    continue;
+                }
+                BillingEntry entry;
+                try {
+                    entry = parseRow(reader, columns);
+                } catch (Exception e) {
+                    reject(result, line, e.getMessage());
+                    continue;
+                }
+                if (duplicates.isDuplicate(entry)) {
+                    result.setEntriesDuplicate(result.getEntriesDuplicate() + 1);
+                    continue;
+                }
+                categorize(entry, rules, result);
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    commit(billingEntryStore, batch, result, progress);
+                }
+            }
+            commit(billingEntryStore, batch, result, progress);
+        }
+
+        result.setSuccess(true);
+        logger.info("CSV 导入完成: 成功 " + result.getEntriesImported() + " 条（规则分类 "
+            + result.getEntriesCategorized() + " 条），跳过 " + result.getEntriesSkipped() + " 条，重复 "
+            + result.getEntriesDuplicate() + " 条，共 " + result.getBatches() + " 批");
+        return result;
+    }
+
+    /**
+     * 把 XML 内容（与 XML 导出相同的 <billingEntries><entry>... 格式）导入指定用户的账单。
+     * 缺少必填字段（产品、价格、日期）的 entry 记为跳过，错误详情中的序号为 entry 在文件中的位置（从 1 开始）；
+     * XML 本身格式错误时抛出 IOException，此前已提交的批次保留。
+     */
+    public ImportResult importXml(String userId, InputStream input) throws IOException {
+        return importXml(userId, input, Progress.NONE);
+    }
+
+    public ImportResult importXml(String userId, InputStream input, Progress progress) throws IOException {
+        BillingEntryStore billingEntryStore = billingStoreRegistry.forUser(userId);
+        ImportResult result = new ImportResult();
+        List<BillingEntry> batch = new ArrayList<>(batchSize);
+        DuplicateFilter duplicates = billingEntryStore.newDuplicateFilter();
+        CategoryRules rules = categoryRuleService.rulesFor(userId);
+        long[] position = {0};
+
+        xmlService.readEntries(input, entry -> {
+            position[0]++;
+            String error = validate(entry);
+            if (error != null) {
+                reject(result, position[0], error);
+                return;
+            }
+            normalize(entry);
+            if (duplicates.isDuplicate(entry)) {
+                result.setEntriesDuplicate(result.getEntriesDuplicate() + 1);
+                return;
+            }
+            categorize(entry, rules, result);
+            batch.add(entry);
+            if (batch.size() >= batchSize) {
+                commit(billingEntryStore, batch, result, progress);
+            }
+        });
+        commit(billingEntryStore, batch, result, progress);
+
+        result.setSuccess(true);
+        logger.info("XML 导入完成: 成功 " + result.getEntriesImported() + " 条（规则分类 "
+            + result.getEntriesCategorized() + " 条），跳过 " + result.getEntriesSkipped() + " 条，重复 "
+            + result.getEntriesDuplicate() + " 条，共 " + result.getBatches() + " 批");
+        return result;
+    }
+
+    private static String validate(BillingEntry entry) {
+        if (entry.getProduct() == null || entry.getProduct().isBlank()) {
+            return "缺少产品";
+        }
+        if (entry.getPrice() == null) {
+            return "缺少价格";
+        }
+        if (entry.getDate() == null) {
+            return "缺少日期";
+        }
+        try {
+            BillingLedger.checkDate(entry.getDate());
+            BillingLedger.checkAmount(entry.getPrice());
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    // 文件中的 entryId 和 version 会被存储重新分配；缺少时间按 00:00 处理，备注为空时沿用产品名，与 CSV 导入一致
+    private static void normalize(BillingEntry entry) {
+        entry.setCategory(entry.getCategory() == null ? "" : entry.getCategory().trim());
+        entry.setProduct(entry.getProduct().trim());
+        entry.setTime(entry.getTime() != null ? entry.getTime() : LocalTime.MIDNIGHT);
+        String remark = entry.getRemark() == null ? "" : entry.getRemark().trim();
+        entry.setRemark(remark.isEmpty() ? entry.getProduct() : remark);
+    }
+
+    // 类别为空时按规则归类，都不匹配时使用默认类别
+    private static void categorize(BillingEntry entry, CategoryRules rules, ImportResult result) {
+        if (!entry.getCategory().isEmpty()) {
+            return;
+        }
+        String category = rules.categorize(entry);
+        if (category != null) {
+            result.setEntriesCategorized(result.getEntriesCategorized() + 1);
+        }
+        entry.setCategory(category != null ? category : DEFAULT_CATEGORY);
+    }
+
+    private void commit(BillingEntryStore billingEntryStore, List<BillingEntry> batch, ImportResult result,
+                        Progress progress) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        billingEntryStore.addAll(batch);
+        result.setEntriesImported(result.getEntriesImported() + batch.size());
+        result.setBatches(result.getBatches() + 1);
+        batch.clear();
+        progress.onBatch(result);
+    }
+
+    private void reject(ImportResult result, long line, String message) {
+        result.setEntriesSkipped(result.getEntriesSkipped() + 1);
+        if (result.getErrors().size() < MAX_ERROR_DETAILS) {
+            result.getErrors().add(new ImportResult.RowError(line, message));
+        } else {
+            result.setErrorsTruncated(true);
+        }
+    }
+
+    /**
+     * 根据表头识别列位置，表头无法识别时使用默认顺序。
+     * 这样导出的 CSV（类别,产品,价格,日期,时间,备注）也可以直接导回。
+     * 类别列和备注列可以省略，没有类别列时每条记录都交给分类规则。
+     */
+    private int[] resolveColumns(CsvReader header) {
+        int[] columns = {CATEGORY, PRODUCT, DATE, TIME, PRICE, REMARK};
+        if (header == null) {
+            return columns;
+        }
+        int[] found = {-1, -1, -1, -1, -1, -1};
+        for (int i = 0; i < header.getFieldCount(); i++) {
+            String name = header.getString(i).trim().toLowerCase();
+            switch (name) {
+                case "类别", "category" -> found[CATEGORY] = i;
+                case "产品", "product" -> found[PRODUCT] = i;
+                case "日期", "date" -> found[DATE] = i;
+                case "时间", "time" -> found[TIME] = i;
+                case "价格", "price" -> found[PRICE] = i;
+                case "备注", "remark" -> found[REMARK] = i;
+                default -> { }
+            }
+        }
+        for (int i = PRODUCT; i <= PRICE; i++) {
+            if (found[i] < 0) {
+                return columns;
+            }
+        }
+        return found;
+    }
+
+    private BillingEntry parseRow(CsvReader row, int[] columns) {
+        String product = row.getString(columns[PRODUCT]).trim();
+        String remark = columns[REMARK] >= 0 && columns[REMARK] < row.getFieldCount()
+            ? row.getString(columns[REMARK]).trim() : "";
+
+        BillingEntry entry = new BillingEntry();
+        entry.setCategory(columns[CATEGORY] >= 0 ? row.getString(columns[CATEGORY]).trim() : "");
+        entry.setProduct(product);
+        entry.setPrice(parsePrice(row, columns[PRICE]));
+        entry.setDate(parseDate(row, columns[DATE]));
+        entry.setTime(parseTime(row, columns[TIME]));
+        entry.setRemark(remark.isEmpty() ? product : remark);
+        return entry;
+    }
+
+    // 金额须在 BillingLedger 支持的精度和范围内
+    private BigDecimal parsePrice(CsvReader row, int column) {
+        BigDecimal price;
+        try {
+            price = row.getDecimal(column);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的价格: " + row.getString(column));
+        }
+        BillingLedger.checkAmount(price);
+        return price;
+    }
+
+    // 支持 yyyy-MM-dd 和 yyyy/M/d，日期须在 BillingLedger 支持的范围内
+    private LocalDate parseDate(CsvReader row, int column) {
+        int[] parts = new int[3];
+        if (splitNumbers(row, column, parts, '-') == 3 || splitNumbers(row, column, parts, '/') == 3) {
+            try {
+                LocalDate date = LocalDate.of(parts[0], parts[1], parts[2]);
+                BillingLedger.checkDate(date);
+                return date;
+            } catch (DateTimeException ignored) {
+                // 日期越界，按无效日期处理
+            }
+        }
+        throw new IllegalArgumentException("无效的日期: " + row.getString(column));
+    }
+
+    // 支持 HH:mm、HH:mm:ss 和纯数字的 HHmm，其他不含冒号的值按 00:00 处理
+    private LocalTime parseTime(CsvReader row, int column) {
+        int[] parts = new int[3];
+        try {
+            if (containsChar(row, column, ':')) {
+                if (splitNumbers(row, column, parts, ':') >= 2) {
+                    return LocalTime.of(parts[0], parts[1], parts[2]);
+                }
+            } else if (trimmedLength(row, column) != 4) {
+                return LocalTime.MIDNIGHT;
+            } else if (splitNumbers(row, column, parts, ':') == 1) {
+                return LocalTime.of(parts[0] / 100, parts[0] % 100);
+            }
+        } catch (DateTimeException ignored) {
+            // 时间越界，按无效时间处理
+        }
+        throw new IllegalArgumentException("无效的时间: " + row.getString(column));
+    }
+
+    /**
+     * 把字段（忽略首尾空白）按 separator 拆成若干个非负整数写入 parts，
+     * 返回数字的个数；格式不符（空段、非数字字符、段数超出 parts）时返回 0
+     */
+    private static int splitNumbers(CsvReader row, int column, int[] parts, char separator) {
+        int start = 0;
+        int end = row.length(column);
+        while (start < end && Character.isWhitespace(row.charAt(column, start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(row.charAt(column, end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return 0;
+        }
+        int count = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? row.charAt(column, i) : separator;
+            if (c == separator) {
+                if (digits == 0 || count == parts.length) {
+                    return 0;
+                }
+                parts[count++] = value;
+                value = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9' && digits < 9) {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else {
+                return 0;
+            }
+        }
+        return count;
+    }
+
+    private static int trimmedLength(CsvReader row, int column) {
+        int start = 0;
+        int end = row.length(column);
+        while (start < end && Character.isWhitespace(row.charAt(column, start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(row.charAt(column, end - 1))) {
+            end--;
+        }
+        return end - start;
+    }
+
+    private static boolean containsChar(CsvReader row, int column, char c) {
+        for (int i = 0; i < row.length(column); i++) {
+            if (row.charAt(column, i) == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,9 +1,13 @@
 package com.example.software.service;
-import com.opencsv.CSVWriter;
+import com.example.software.util.CsvReader;
+import com.example.software.util.CsvWriter;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,14 +16,25 @@ public class CSVService {
 
     // 将数据写入CSV文件
     public void writeDataToCSV(List<String[]> data, String filename) throws IOException {
-        try (CSVWriter writer = new CSVWriter(new FileWriter(filename, true))) {
-            writer.writeAll(data);
+        try (CsvWriter writer = new CsvWriter(new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8, true)))) {
+            for (String[] row : data) {
+                writer.writeRecord(row);
+            }
         }
     }
 
     // 从CSV文件读取数据
     public List<String[]> readDataFromCSV(String filename) throws IOException {
-        // 解析 CSV 文件的逻辑
-        return new ArrayList<>();
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new FileReader(filename, StandardCharsets.UTF_8))) {
+            while (reader.next()) {
+                String[] row = new String[reader.getFieldCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = reader.getString(i);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
     }
 }
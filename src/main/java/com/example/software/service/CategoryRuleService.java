@@ -0,0 +1,347 @@
+package com.example.software.service;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.model.CategoryRule;
+import com.example.software.repository.BillingStoreRegistry;
+import com.example.software.util.AtomicFileWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 用户自定义的自动分类规则
+ *
+ * 规则按用户保存在各自账单分区目录下的 category_rules.json 中，列表顺序即优先级。
+ * 每个用户的规则在首次使用时加载并编译成 CategoryRules，修改后重新编译，
+ * 新增账单和批量导入时对类别为空的账单直接在本地分类，不经过模型。
+ */
+@Service
+public class CategoryRuleService {
+
+    private static final Logger logger = Logger.getLogger(CategoryRuleService.class.getName());
+    private static final String RULES_FILE = "category_rules.json";
+    private static final int MAX_CATEGORY_LENGTH = 50;
+    private static final int MAX_KEYWORDS_PER_RULE = 200;
+    private static final int MAX_KEYWORD_LENGTH = 100;
+    private static final int MAX_PATTERN_LENGTH = 200;
+
+    private final BillingStoreRegistry billingStoreRegistry;
+    private final AtomicFileWriter fileWriter;
+    private final ObjectMapper objectMapper;
+    private final int maxRules;
+
+    // userId -> 已加载的规则
+    private final Map<String, RuleSet> ruleSets = new ConcurrentHashMap<>();
+
+    public CategoryRuleService(BillingStoreRegistry billingStoreRegistry, AtomicFileWriter fileWriter,
+                               @Value("${billing.rules.max-per-user:1000}") int maxRules) {
+        this.billingStoreRegistry = billingStoreRegistry;
+        this.fileWriter = fileWriter;
+        this.objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        this.maxRules = Math.max(1, maxRules);
+    }
+
+    public List<CategoryRule> list(String userId) {
+        return ruleSet(userId).rules;
+    }
+
+    /**
+     * 编译后的规则，导入时取一次后对每条账单调用 categorize
+     */
+    public CategoryRules rulesFor(String userId) {
+        return ruleSet(userId).compiled;
+    }
+
+    /**
+     * 类别为空的账单按规则填入类别，返回是否由规则分类
+     */
+    public boolean applyTo(String userId, BillingEntry entry) {
+        if (entry.getCategory() != null && !entry.getCategory().isBlank()) {
+            return false;
+        }
+        String category = rulesFor(userId).categorize(entry);
+        if (category == null) {
+            return false;
+        }
+        entry.setCategory(category);
+        return true;
+    }
+
+    /**
+     * 在列表末尾新增规则
+     * @throws IllegalArgumentException 规则无效
+     * @throws IllegalStateException    规则数已达上限
+     */
+    public synchronized CategoryRule create(String userId, CategoryRule rule) throws IOException {
+        List<CategoryRule> rules = new ArrayList<>(ruleSet(userId).rules);
+        if (rules.size() >= maxRules) {
+            throw new IllegalStateException("每个用户最多 " + maxRules + " 条分类规则");
+        }
+        CategoryRule created = validate(rule);
+        created.setRuleId(UUID.randomUUID().toString());
+        rules.add(created);
+        save(userId, rules);
+        return created;
+    }
+
+    /**
+     * 替换指定规则，位置不变；规则不存在时返回 null
+     */
+    public synchronized CategoryRule update(String userId, String ruleId, CategoryRule rule) throws IOException {
+        List<CategoryRule> rules = new ArrayList<>(ruleSet(userId).rules);
+        for (int i = 0; i < rules.size(); i++) {
+            if (rules.get(i).getRuleId().equals(ruleId)) {
+                CategoryRule updated = validate(rule);
+                updated.setRuleId(ruleId);
+                rules.set(i, updated);
+                save(userId, rules);
+                return updated;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 用新的列表替换全部规则，用于调整顺序或批量编辑；
+     * 沿用已有的 ruleId，缺少或重复的 ruleId 重新分配
+     */
+    public synchronized List<CategoryRule> replaceAll(String userId, List<CategoryRule> rules) throws IOException {
+        if (rules.size() > maxRules) {
+            throw new IllegalStateException("每个用户最多 " + maxRules + " 条分类规则");
+        }
+        List<CategoryRule> replaced = new ArrayList<>(rules.size());
+        Set<String> ids = new LinkedHashSet<>();
+        for (int i = 0; i < rules.size(); i++) {
+            CategoryRule rule = rules.get(i);
+            if (rule == null) {
+                throw new IllegalArgumentException("第 " + (i + 1) + " 条规则为空");
+            }
+            CategoryRule validated;
+            try {
+                validated = validate(rule);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("第 " + (i + 1) + " 条规则: " + e.getMessage());
+            }
+            String ruleId = rule.getRuleId();
+            validated.setRuleId(ruleId != null && !ruleId.isBlank() && ids.add(ruleId)
+                ? ruleId : UUID.randomUUID().toString());
+            replaced.add(validated);
+        }
+        save(userId, replaced);
+        return ruleSet(userId).rules;
+    }
+
+    /**
+     * 删除规则，规则不存在时返回 false
+     */
+    public synchronized boolean delete(String userId, String ruleId) throws IOException {
+        List<CategoryRule> rules = new ArrayList<>(ruleSet(userId).rules);
+        if (!rules.removeIf(rule -> rule.getRuleId().equals(ruleId))) {
+            return false;
+        }
+        save(userId, rules);
+        return true;
+    }
+
+    // 校验并返回规范化后的副本：去掉首尾空白，关键词去重，空的正则表达式视为未设置
+    private static CategoryRule validate(CategoryRule rule) {
+        String category = rule.getCategory() == null ? "" : rule.getCategory().trim();
+        if (category.isEmpty()) {
+            throw new IllegalArgumentException("缺少类别");
+        }
+        if (category.length() > MAX_CATEGORY_LENGTH) {
+            throw new IllegalArgumentException("类别不能超过 " + MAX_CATEGORY_LENGTH + " 个字符");
+        }
+
+        Set<String> keywords = new LinkedHashSet<>();
+        if (rule.getKeywords() != null) {
+            for (String keyword : rule.getKeywords()) {
+                String trimmed = keyword == null ? "" : keyword.trim();
+                if (trimmed.length() > MAX_KEYWORD_LENGTH) {
+                    throw new IllegalArgumentException("关键词不能超过 " + MAX_KEYWORD_LENGTH + " 个字符");
+                }
+                if (!trimmed.isEmpty()) {
+                    keywords.add(trimmed);
+                }
+            }
+        }
+        if (keywords.size() > MAX_KEYWORDS_PER_RULE) {
+            throw new IllegalArgumentException("每条规则最多 " + MAX_KEYWORDS_PER_RULE + " 个关键词");
+        }
+
+        String pattern = rule.getPattern() == null ? null : rule.getPattern().trim();
+        if (pattern != null && pattern.isEmpty()) {
+            pattern = null;
+        }
+        if (pattern != null) {
+            if (pattern.length() > MAX_PATTERN_LENGTH) {
+                throw new IllegalArgumentException("正则表达式不能超过 " + MAX_PATTERN_LENGTH + " 个字符");
+            }
+            try {
+                Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("无效的正则表达式: " + e.getDescription());
+            }
+            String unsafe = unsafeConstruct(pattern);
+            if (unsafe != null) {
+                throw new IllegalArgumentException("不支持的正则表达式: " + unsafe);
+            }
+        }
+
+        if (rule.getMinAmount() != null && rule.getMaxAmount() != null
+                && rule.getMinAmount().compareTo(rule.getMaxAmount()) > 0) {
+            throw new IllegalArgumentException("最小金额不能大于最大金额");
+        }
+        if (keywords.isEmpty() && pattern == null && rule.getMinAmount() == null && rule.getMaxAmount() == null) {
+            throw new IllegalArgumentException("规则至少需要关键词、正则表达式或金额范围中的一项");
+        }
+
+        CategoryRule validated = new CategoryRule();
+        validated.setCategory(category);
+        validated.setKeywords(new ArrayList<>(keywords));
+        validated.setPattern(pattern);
+        validated.setMinAmount(rule.getMinAmount());
+        validated.setMaxAmount(rule.getMaxAmount());
+        return validated;
+    }
+
+    /**
+     * 检查可能导致灾难性回溯的写法：反向引用，以及重复作用在本身含重复的分组上（如 (a+)+、(\w*x)*）。
+     * 没有问题时返回 null。执行时 CategoryRules 另有步数上限兜底。
+     */
+    static String unsafeConstruct(String pattern) {
+        // 每层未闭合的分组内是否出现过重复
+        Deque<Boolean> groups = new ArrayDeque<>();
+        boolean closedGroupRepeats = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            boolean previousGroupRepeats = closedGroupRepeats;
+            closedGroupRepeats = false;
+            switch (c) {
+                case '\\' -> {
+                    char next = i + 1 < pattern.length() ? pattern.charAt(i + 1) : ' ';
+                    if ((next >= '1' && next <= '9') || next == 'k') {
+                        return "不支持反向引用";
+                    }
+                    if (next == 'Q') {
+                        int end = pattern.indexOf("\\E", i + 2);
+                        i = end < 0 ? pattern.length() : end + 1;
+                    } else {
+                        i++;
+                    }
+                }
+                case '[' -> i = skipCharClass(pattern, i);
+                case '(' -> groups.push(false);
+                case ')' -> {
+                    closedGroupRepeats = !groups.isEmpty() && groups.pop();
+                    if (closedGroupRepeats && !groups.isEmpty()) {
+                        groups.pop();
+                        groups.push(true);
+                    }
+                }
+                case '*', '+', '{' -> {
+                    if (previousGroupRepeats) {
+                        return "不支持嵌套的重复（如 (a+)+）";
+                    }
+                    if (!groups.isEmpty()) {
+                        groups.pop();
+                        groups.push(true);
+                    }
+                    if (c == '{') {
+                        int end = pattern.indexOf('}', i);
+                        i = end < 0 ? pattern.length() : end;
+                    }
+                }
+                default -> { }
+            }
+        }
+        return null;
+    }
+
+    // 返回字符类 [...] 结尾 ] 的位置，支持嵌套和转义
+    private static int skipCharClass(String pattern, int start) {
+        int depth = 0;
+        for (int i = start; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && i > start + 1 && --depth == 0) {
+                return i;
+            }
+        }
+        return pattern.length();
+    }
+
+    // 先编译再落盘，落盘成功后才替换内存中的规则
+    private void save(String userId, List<CategoryRule> rules) throws IOException {
+        RuleSet ruleSet = new RuleSet(List.copyOf(rules), CategoryRules.compile(rules));
+        fileWriter.write(rulesFile(userId), objectMapper.writeValueAsBytes(ruleSet.rules));
+        ruleSets.put(userId, ruleSet);
+        logger.info("用户 " + userId + " 的分类规则已更新，共 " + rules.size() + " 条");
+    }
+
+    private RuleSet ruleSet(String userId) {
+        return ruleSets.computeIfAbsent(userId, this::load);
+    }
+
+    private RuleSet load(String userId) {
+        Path file = rulesFile(userId);
+        if (!Files.exists(file)) {
+            return new RuleSet(List.of(), CategoryRules.EMPTY);
+        }
+        try {
+            List<CategoryRule> rules = new ArrayList<>();
+            for (CategoryRule rule : objectMapper.readValue(file.toFile(), new TypeReference<List<CategoryRule>>() {})) {
+                // 校验规则收紧之前保存的规则可能不再合法，只跳过这一条
+                CategoryRule validated;
+                try {
+                    validated = validate(rule);
+                } catch (IllegalArgumentException e) {
+                    logger.warning("跳过用户 " + userId + " 的无效分类规则 " + rule.getRuleId() + ": " + e.getMessage());
+                    continue;
+                }
+                validated.setRuleId(rule.getRuleId() != null ? rule.getRuleId() : UUID.randomUUID().toString());
+                rules.add(validated);
+            }
+            logger.info("已加载用户 " + userId + " 的 " + rules.size() + " 条分类规则");
+            return new RuleSet(List.copyOf(rules), CategoryRules.compile(rules));
+        } catch (IOException e) {
+            logger.severe("加载分类规则失败: " + file + ": " + e.getMessage());
+            return new RuleSet(List.of(), CategoryRules.EMPTY);
+        }
+    }
+
+    private Path rulesFile(String userId) {
+        return billingStoreRegistry.directoryOf(userId).resolve(RULES_FILE);
+    }
+
+    private static final class RuleSet {
+        private final List<CategoryRule> rules;
+        private final CategoryRules compiled;
+
+        RuleSet(List<CategoryRule> rules, CategoryRules compiled) {
+            this.rules = rules;
+            this.compiled = compiled;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.software.service;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.model.CategoryRule;
+import com.example.software.util.AhoCorasick;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * 编译后的分类规则，由 CategoryRuleService 创建，不可变，可被多个线程同时使用
+ *
+ * 所有规则的关键词合并成一个 AhoCorasick 自动机，分类时对产品名和备注各扫描一遍，
+ * 得到关键词条件满足的规则集合（位图）；再按规则顺序只遍历集合中的规则，检查金额区间，最后才执行正则表达式，
+ * 第一条全部条件满足的规则决定类别。没有关键词的规则总是在集合中。
+ *
+ * 正则表达式在 BoundedText 上执行，单次查找读取字符的次数超过 REGEX_STEP_LIMIT（或回溯过深导致栈溢出）时中止，
+ * 该规则在这份编译结果中停用并记录警告，不会因为某个用户的规则拖住导入线程。
+ */
+public final class CategoryRules {
+
+    private static final Logger logger = Logger.getLogger(CategoryRules.class.getName());
+    // 单次正则查找最多读取的字符次数，正常的规则在账单文本上远低于此值
+    static final int REGEX_STEP_LIMIT = 100_000;
+
+    static final CategoryRules EMPTY = compile(List.of());
+
+    private final String[] categories;
+    // 没有关键词条件的规则的位图，作为每次分类的初始候选集合
+    private final long[] withoutKeywords;
+    private final BigDecimal[] minAmounts;
+    private final BigDecimal[] maxAmounts;
+    private final Pattern[] patterns;
+    // 超过步数上限而停用的正则规则，值为 1 表示停用
+    private final AtomicIntegerArray disabledPatterns;
+    private final AhoCorasick keywords;
+    // 关键词编号 -> 包含该关键词的规则下标
+    private final int[][] rulesOfKeyword;
+
+    private CategoryRules(String[] categories, long[] withoutKeywords, BigDecimal[] minAmounts,
+                          BigDecimal[] maxAmounts, Pattern[] patterns, AhoCorasick keywords,
+                          int[][] rulesOfKeyword) {
+        this.categories = categories;
+        this.withoutKeywords = withoutKeywords;
+        this.minAmounts = minAmounts;
+        this.maxAmounts = maxAmounts;
+        this.patterns = patterns;
+        this.disabledPatterns = new AtomicIntegerArray(patterns.length);
+        this.keywords = keywords;
+        this.rulesOfKeyword = rulesOfKeyword;
+    }
+
+    /**
+     * 规则需已通过 CategoryRuleService 的校验：关键词已去掉空白，正则表达式可以编译
+     */
+    static CategoryRules compile(List<CategoryRule> rules) {
+        int count = rules.size();
+        String[] categories = new String[count];
+        long[] withoutKeywords = new long[(count + 63) >>> 6];
+        BigDecimal[] minAmounts = new BigDecimal[count];
+        BigDecimal[] maxAmounts = new BigDecimal[count];
+        Pattern[] patterns = new Pattern[count];
+        // 小写关键词 -> 规则下标，相同关键词在自动机中只出现一次
+        Map<String, List<Integer>> keywordRules = new LinkedHashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            CategoryRule rule = rules.get(i);
+            categories[i] = rule.getCategory();
+            minAmounts[i] = rule.getMinAmount();
+            maxAmounts[i] = rule.getMaxAmount();
+            if (rule.getPattern() != null) {
+                patterns[i] = Pattern.compile(rule.getPattern(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            }
+            for (String keyword : rule.getKeywords()) {
+                List<Integer> owners = keywordRules.computeIfAbsent(keyword.toLowerCase(), k -> new ArrayList<>());
+                if (owners.isEmpty() || owners.get(owners.size() - 1) != i) {
+                    owners.add(i);
+                }
+            }
+            if (rule.getKeywords().isEmpty()) {
+                withoutKeywords[i >>> 6] |= 1L << i;
+            }
+        }
+
+        int[][] rulesOfKeyword = new int[keywordRules.size()][];
+        int id = 0;
+        for (List<Integer> owners : keywordRules.values()) {
+            rulesOfKeyword[id++] = owners.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new CategoryRules(categories, withoutKeywords, minAmounts, maxAmounts, patterns,
+            AhoCorasick.compile(new ArrayList<>(keywordRules.keySet())), rulesOfKeyword);
+    }
+
+    public int size() {
+        return categories.length;
+    }
+
+    /**
+     * 返回第一条匹配规则的类别，没有规则匹配时返回 null。不修改 entry
+     */
+    public String categorize(BillingEntry entry) {
+        if (categories.length == 0) {
+            return null;
+        }
+        String product = entry.getProduct();
+        String remark = entry.getRemark();
+        boolean scanRemark = remark != null && !remark.equals(product);
+
+        long[] candidates = withoutKeywords;
+        if (keywords.getKeywordCount() > 0) {
+            long[] matched = withoutKeywords.clone();
+            IntConsumer mark = keyword -> {
+                for (int rule : rulesOfKeyword[keyword]) {
+                    matched[rule >>> 6] |= 1L << rule;
+                }
+            };
+            keywords.match(product, mark);
+            if (scanRemark) {
+                keywords.match(remark, mark);
+            }
+            candidates = matched;
+        }
+
+        BigDecimal price = entry.getPrice();
+        for (int word = 0; word < candidates.length; word++) {
+            for (long bits = candidates[word]; bits != 0; bits &= bits - 1) {
+                int rule = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (!inRange(price, minAmounts[rule], maxAmounts[rule])) {
+                    continue;
+                }
+                if (patterns[rule] != null && !find(rule, product) && !(scanRemark && find(rule, remark))) {
+                    continue;
+                }
+                return categories[rule];
+            }
+        }
+        return null;
+    }
+
+    private static boolean inRange(BigDecimal price, BigDecimal min, BigDecimal max) {
+        if (min == null && max == null) {
+            return true;
+        }
+        return price != null
+            && (min == null || price.compareTo(min) >= 0)
+            && (max == null || price.compareTo(max) <= 0);
+    }
+
+    /**
+     * 该规则的正则表达式是否因超过步数上限而停用
+     */
+    public boolean isDisabled(int rule) {
+        return disabledPatterns.get(rule) != 0;
+    }
+
+    // 停用的规则视为不匹配
+    private boolean find(int rule, String text) {
+        if (text == null || disabledPatterns.get(rule) != 0) {
+            return false;
+        }
+        try {
+            return patterns[rule].matcher(new BoundedText(text, REGEX_STEP_LIMIT)).find();
+        } catch (BoundedText.LimitExceeded | StackOverflowError e) {
+            if (disabledPatterns.compareAndSet(rule, 0, 1)) {
+                logger.warning("分类规则（类别 " + categories[rule] + "）的正则表达式 " + patterns[rule].pattern()
+                    + " 匹配耗时过长，已停用，修改规则后重新启用");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 计数的 CharSequence：读取字符超过 limit 次时抛出 LimitExceeded，
+     * 用来限制灾难性回溯的正则表达式的执行时间
+     */
+    static final class BoundedText implements CharSequence {
+        private final String text;
+        private int remaining;
+
+        BoundedText(String text, int limit) {
+            this.text = text;
+            this.remaining = limit;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--remaining < 0) {
+                throw LimitExceeded.INSTANCE;
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        // 不带堆栈，只用于中止匹配
+        static final class LimitExceeded extends RuntimeException {
+            static final LimitExceeded INSTANCE = new LimitExceeded();
+
+            private LimitExceeded() {
+                super("regex step limit exceeded", null, false, false);
+            }
+        }
+    }
+}
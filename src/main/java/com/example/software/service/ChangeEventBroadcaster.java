@@ -0,0 +1,144 @@
+package com.example.software.service;
+
+import com.example.software.repository.DataChangedEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 按用户推送数据变更的 SSE 通道
+ *
+ * 每个客户端连接对应一个 SseEmitter。存储提交变更后发布 DataChangedEvent，
+ * 这里只把 (用户, 主题) 的最新序号放进待发送表，由单独的推送线程发送，
+ * 因此写操作不会等待网络；推送前到达的多次变更合并为一条事件。
+ * 账单变更同时推送 summary 事件，通知客户端收支汇总已过期。
+ * 空闲时只按 heartbeatInterval 发送注释行，用于发现已断开的连接。
+ */
+@Service
+public class ChangeEventBroadcaster {
+
+    private static final Logger logger = Logger.getLogger(ChangeEventBroadcaster.class.getName());
+    public static final String SUMMARY = "summary";
+    public static final String READY = "ready";
+
+    private final long timeout;
+    // userId -> 该用户的连接
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    // "userId/主题" -> 待推送的最新序号
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sender;
+
+    public ChangeEventBroadcaster(@Value("${events.timeout-ms:1800000}") long timeout,
+                                  @Value("${events.heartbeat-interval-ms:25000}") long heartbeatInterval) {
+        this.timeout = timeout;
+        this.sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-event-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 为用户打开一个推送连接，连接建立后先发送 ready 事件
+     */
+    public SseEmitter subscribe(String userId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        List<SseEmitter> userEmitters = emitters.compute(userId, (id, list) -> {
+            List<SseEmitter> result = list != null ? list : new CopyOnWriteArrayList<>();
+            result.add(emitter);
+            return result;
+        });
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+        try {
+            emitter.send(SseEmitter.event().name(READY).data(Map.of(), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            remove(userId, emitter);
+        }
+        logger.fine("用户 " + userId + " 建立推送连接，当前 " + userEmitters.size() + " 个");
+        return emitter;
+    }
+
+    @EventListener
+    public void onDataChanged(DataChangedEvent event) {
+        if (!emitters.containsKey(event.getUserId())) {
+            return;
+        }
+        enqueue(event.getUserId(), event.getTopic(), event.getSequence());
+        if (DataChangedEvent.BILLING.equals(event.getTopic())) {
+            enqueue(event.getUserId(), SUMMARY, event.getSequence());
+        }
+    }
+
+    private void enqueue(String userId, String topic, long sequence) {
+        String key = userId + "/" + topic;
+        if (pending.put(key, sequence) == null) {
+            sender.execute(() -> deliver(userId, topic, key));
+        }
+    }
+
+    private void deliver(String userId, String topic, String key) {
+        Long sequence = pending.remove(key);
+        if (sequence == null) {
+            return;
+        }
+        SseEmitter.SseEventBuilder event = SseEmitter.event()
+            .name(topic)
+            .id(Long.toString(sequence))
+            .data(Map.of("sequence", sequence), MediaType.APPLICATION_JSON);
+        send(userId, event);
+    }
+
+    private void heartbeat() {
+        for (String userId : emitters.keySet()) {
+            send(userId, SseEmitter.event().comment("ping"));
+        }
+    }
+
+    private void send(String userId, SseEmitter.SseEventBuilder event) {
+        List<SseEmitter> userEmitters = emitters.get(userId);
+        if (userEmitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : userEmitters) {
+            try {
+                emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开
+                remove(userId, emitter);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void remove(String userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (id, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        sender.shutdownNow();
+        for (List<SseEmitter> userEmitters : emitters.values()) {
+            userEmitters.forEach(SseEmitter::complete);
+        }
+        emitters.clear();
+    }
+}
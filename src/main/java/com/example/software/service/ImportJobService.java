@@ -0,0 +1,520 @@
+package com.example.software.service;
+
+import com.example.software.model.ImportJobStatus;
+import com.example.software.model.ImportJobStatus.State;
+import com.example.software.model.ImportResult;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 后台账单导入任务
+ *
+ * 客户端先创建任务，再把文件按分块上传（每块带起始偏移量）追加到暂存文件中，
+ * 分块大小不受 multipart 上传限制；上传中断后可以按任务状态中的 bytesReceived 继续。
+ * 上传完成后任务进入有界的工作线程池排队，由 BillingImportService 流式解析并分批提交，
+ * 每批之后更新进度（已处理字节、导入/跳过条数、每秒行数），取消请求在下一批之后生效。
+ *
+ * 任务只保存在内存中：结束的任务保留 retention 毫秒供查询，长时间没有新分块的上传视为放弃。
+ * 服务重启后未完成的任务丢失，启动时清理遗留的暂存文件。
+ */
+@Service
+public class ImportJobService {
+
+    private static final Logger logger = Logger.getLogger(ImportJobService.class.getName());
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ACTIVE_JOBS_PER_USER = 4;
+    private static final long CLEANUP_INTERVAL_MS = 60_000;
+
+    private final BillingImportService billingImportService;
+    private final Path spoolDirectory;
+    private final long maxChunkBytes;
+    private final long maxFileBytes;
+    private final long retention;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // 用户 ID -> 创建任务时的锁，让未结束任务的计数和新任务的登记对同一用户串行执行
+    private final Map<String, Object> createLocks = new ConcurrentHashMap<>();
+
+    public ImportJobService(BillingImportService billingImportService,
+                            @Value("${billing.import.spool-dir:data/billing/import-spool}") String spoolDirectory,
+                            @Value("${billing.import.workers:2}") int workerCount,
+                            @Value("${billing.import.queue-capacity:16}") int queueCapacity,
+                            @Value("${billing.import.max-chunk-bytes:8388608}") long maxChunkBytes,
+                            @Value("${billing.import.max-file-bytes:1073741824}") long maxFileBytes,
+                            @Value("${billing.import.job-retention-ms:3600000}") long retention) throws IOException {
+        this.billingImportService = billingImportService;
+        this.spoolDirectory = Paths.get(spoolDirectory);
+        this.maxChunkBytes = maxChunkBytes;
+        this.maxFileBytes = maxFileBytes;
+        this.retention = retention;
+
+        Files.createDirectories(this.spoolDirectory);
+        clearSpool();
+
+        int threads = Math.max(1, workerCount);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                Thread thread = new Thread(runnable, "billing-import-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "billing-import-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::cleanup, CLEANUP_INTERVAL_MS, CLEANUP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 创建导入任务，之后通过 append 上传文件内容
+     *
+     * @param format     csv 或 xml，为空时按文件扩展名判断
+     * @param totalBytes 文件大小，未知时传 -1（此时 start 不检查是否上传完整）
+     * @throws IllegalArgumentException 格式不支持或文件过大时
+     * @throws IllegalStateException    用户未结束的任务过多时
+     */
+    public ImportJobStatus create(String userId, String fileName, String format, long totalBytes) throws IOException {
+        String normalized = format != null && !format.isBlank() ? format.trim().toLowerCase() : extensionOf(fileName);
+        if (!normalized.equals("csv") && !normalized.equals("xml")) {
+            throw new IllegalArgumentException("不支持的导入格式: " + (format != null ? format : fileName));
+        }
+        if (totalBytes > maxFileBytes) {
+            throw new IllegalArgumentException("文件过大，最大 " + maxFileBytes + " 字节");
+        }
+
+        String jobId = UUID.randomUUID().toString();
+        Path spool = spoolDirectory.resolve(jobId + ".part");
+        Job job;
+        // 任务只会从未结束变为结束，锁内计数之后不会有其他新任务被同时计入
+        synchronized (createLocks.computeIfAbsent(userId, id -> new Object())) {
+            long active = jobs.values().stream()
+                .filter(existing -> existing.userId.equals(userId) && !existing.snapshotState().isFinished())
+                .count();
+            if (active >= MAX_ACTIVE_JOBS_PER_USER) {
+                throw new IllegalStateException("未完成的导入任务过多，请等待已有任务结束");
+            }
+            Files.createFile(spool);
+            job = new Job(jobId, userId, normalized, fileName, totalBytes < 0 ? -1 : totalBytes, spool);
+            jobs.put(jobId, job);
+        }
+        logger.info("创建导入任务 " + jobId + "（" + normalized + "，" + fileName + "）");
+        return job.snapshot();
+    }
+
+    /**
+     * 返回用户的任务状态，任务不存在或不属于该用户时返回 null
+     */
+    public ImportJobStatus find(String userId, String jobId) {
+        Job job = jobOf(userId, jobId);
+        return job == null ? null : job.snapshot();
+    }
+
+    /**
+     * 用户的全部任务，最新创建的在前
+     */
+    public List<ImportJobStatus> list(String userId) {
+        List<ImportJobStatus> result = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.userId.equals(userId)) {
+                result.add(job.snapshot());
+            }
+        }
+        result.sort(Comparator.comparingLong(ImportJobStatus::getCreatedAt).reversed());
+        return result;
+    }
+
+    /**
+     * 把一个分块追加到任务的暂存文件
+     *
+     * offset 必须等于已接收的字节数；分块传输中断时，已写入的部分仍然计入 bytesReceived，
+     * 客户端按返回（或查询到）的 bytesReceived 重新发送剩余内容即可。
+     *
+     * @return 任务不存在时返回 null
+     * @throws IllegalStateException    任务不在上传状态、偏移量不符或另一个分块正在上传时
+     * @throws IllegalArgumentException 分块或文件超过大小限制时
+     */
+    public ImportJobStatus append(String userId, String jobId, long offset, InputStream content) throws IOException {
+        Job job = jobOf(userId, jobId);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            if (job.state != State.UPLOADING) {
+                throw new IllegalStateException("任务当前状态为 " + job.state + "，不能继续上传");
+            }
+            if (job.writing) {
+                throw new IllegalStateException("另一个分块正在上传");
+            }
+            if (offset != job.bytesReceived) {
+                throw new IllegalStateException("偏移量 " + offset + " 与已接收的 " + job.bytesReceived + " 字节不符");
+            }
+            job.writing = true;
+        }
+
+        long limit = job.totalBytes >= 0 ? Math.min(job.totalBytes, maxFileBytes) : maxFileBytes;
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(job.spool, StandardOpenOption.WRITE)) {
+            channel.position(offset);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                if (written + read > maxChunkBytes) {
+                    throw new IllegalArgumentException("分块过大，最大 " + maxChunkBytes + " 字节");
+                }
+                if (offset + written + read > limit) {
+                    throw new IllegalArgumentException("上传内容超过文件大小 " + limit + " 字节");
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                written += read;
+                synchronized (job) {
+                    if (job.state != State.UPLOADING) {
+                        // 上传过程中任务被取消
+                        break;
+                    }
+                    job.bytesReceived = offset + written;
+                    job.lastActivity = System.currentTimeMillis();
+                }
+            }
+        } finally {
+            boolean finished;
+            synchronized (job) {
+                job.writing = false;
+                job.lastActivity = System.currentTimeMillis();
+                finished = job.state.isFinished();
+            }
+            if (finished) {
+                deleteSpool(job);
+            }
+        }
+        return job.snapshot();
+    }
+
+    /**
+     * 上传完成，任务进入工作线程池排队
+     *
+     * @return 任务不存在时返回 null
+     * @throws IllegalStateException      任务不在上传状态或内容未上传完整时
+     * @throws RejectedExecutionException 排队的任务已满时，任务保持上传完成的状态，可稍后重试
+     */
+    public ImportJobStatus start(String userId, String jobId) {
+        Job job = jobOf(userId, jobId);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            if (job.state != State.UPLOADING || job.writing) {
+                throw new IllegalStateException("任务当前状态为 " + job.state + "，不能开始导入");
+            }
+            if (job.totalBytes >= 0 && job.bytesReceived != job.totalBytes) {
+                throw new IllegalStateException("上传未完成：已接收 " + job.bytesReceived + " / " + job.totalBytes + " 字节");
+            }
+            job.state = State.QUEUED;
+        }
+        try {
+            workers.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            synchronized (job) {
+                job.state = State.UPLOADING;
+            }
+            throw e;
+        }
+        logger.info("导入任务 " + jobId + " 已排队，共 " + job.bytesReceived + " 字节");
+        return job.snapshot();
+    }
+
+    /**
+     * 取消任务。上传中或排队中的任务立即结束；正在导入的任务在当前批次提交后停止，已提交的批次保留。
+     * 已结束的任务不受影响。
+     *
+     * @return 任务不存在时返回 null
+     */
+    public ImportJobStatus cancel(String userId, String jobId) {
+        Job job = jobOf(userId, jobId);
+        if (job == null) {
+            return null;
+        }
+        boolean deleteNow = false;
+        synchronized (job) {
+            if (job.state == State.UPLOADING || job.state == State.QUEUED) {
+                job.state = State.CANCELLED;
+                job.message = "已取消";
+                job.finishedAt = System.currentTimeMillis();
+                deleteNow = !job.writing;
+            } else if (job.state == State.RUNNING) {
+                job.cancelRequested = true;
+            }
+        }
+        if (deleteNow) {
+            deleteSpool(job);
+        }
+        return job.snapshot();
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.state != State.QUEUED) {
+                // 排队期间已被取消
+                return;
+            }
+            job.state = State.RUNNING;
+            job.startedAt = System.currentTimeMillis();
+        }
+        try (InputStream input = new CountingInputStream(
+                new BufferedInputStream(Files.newInputStream(job.spool), COPY_BUFFER_SIZE), job)) {
+            ImportResult result = job.format.equals("xml")
+                ? billingImportService.importXml(job.userId, input, job::progress)
+                : billingImportService.importCsv(job.userId, input, job::progress);
+            job.progress(result);
+            job.finish(State.COMPLETED, null);
+            logger.info("导入任务 " + job.id + " 完成: 成功 " + result.getEntriesImported() + " 条，跳过 "
+                + result.getEntriesSkipped() + " 条，重复 " + result.getEntriesDuplicate() + " 条");
+        } catch (CancellationException e) {
+            job.finish(State.CANCELLED, "已取消，取消前提交的批次已保留");
+            logger.info("导入任务 " + job.id + " 已取消");
+        } catch (Exception e) {
+            job.finish(State.FAILED, e.getMessage());
+            logger.warning("导入任务 " + job.id + " 失败: " + e.getMessage());
+        } finally {
+            deleteSpool(job);
+        }
+    }
+
+    // 清理过期的已结束任务，以及长时间没有新分块的上传
+    private void cleanup() {
+        long now = System.currentTimeMillis();
+        for (Job job : jobs.values()) {
+            boolean abandoned = false;
+            boolean expired;
+            synchronized (job) {
+                if (job.state == State.UPLOADING && !job.writing && now - job.lastActivity > retention) {
+                    job.state = State.CANCELLED;
+                    job.message = "上传超时";
+                    job.finishedAt = now;
+                    abandoned = true;
+                }
+                expired = job.state.isFinished() && now - job.finishedAt > retention;
+            }
+            if (abandoned) {
+                deleteSpool(job);
+                logger.info("导入任务 " + job.id + " 上传超时，已取消");
+            }
+            if (expired) {
+                jobs.remove(job.id);
+            }
+        }
+    }
+
+    private Job jobOf(String userId, String jobId) {
+        Job job = jobId == null ? null : jobs.get(jobId);
+        return job != null && job.userId.equals(userId) ? job : null;
+    }
+
+    private void deleteSpool(Job job) {
+        try {
+            Files.deleteIfExists(job.spool);
+        } catch (IOException e) {
+            logger.warning("删除导入暂存文件失败: " + job.spool + ", " + e.getMessage());
+        }
+    }
+
+    private void clearSpool() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDirectory, "*.part")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static String extensionOf(String fileName) {
+        if (fileName == null) {
+            return "";
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase();
+    }
+
+    @PreDestroy
+    public void close() {
+        cleaner.shutdownNow();
+        // 正在导入的任务在当前批次之后停止
+        for (Job job : jobs.values()) {
+            job.cancelRequested = true;
+        }
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 任务的可变状态，除 bytesProcessed 和 cancelRequested 外都在 synchronized (job) 下读写
+     */
+    private static final class Job {
+        final String id;
+        final String userId;
+        final String format;
+        final String fileName;
+        final long totalBytes;
+        final Path spool;
+        final long createdAt = System.currentTimeMillis();
+
+        State state = State.UPLOADING;
+        boolean writing;
+        long bytesReceived;
+        long lastActivity = createdAt;
+        long startedAt;
+        long finishedAt;
+        int entriesImported;
+        int entriesSkipped;
+        int entriesDuplicate;
+        int entriesCategorized;
+        int batches;
+        List<ImportResult.RowError> errors = List.of();
+        boolean errorsTruncated;
+        String message;
+        volatile long bytesProcessed;
+        volatile boolean cancelRequested;
+
+        Job(String id, String userId, String format, String fileName, long totalBytes, Path spool) {
+            this.id = id;
+            this.userId = userId;
+            this.format = format;
+            this.fileName = fileName;
+            this.totalBytes = totalBytes;
+            this.spool = spool;
+        }
+
+        // 导入线程每提交一批调用一次
+        void progress(ImportResult result) {
+            synchronized (this) {
+                entriesImported = result.getEntriesImported();
+                entriesSkipped = result.getEntriesSkipped();
+                entriesDuplicate = result.getEntriesDuplicate();
+                entriesCategorized = result.getEntriesCategorized();
+                batches = result.getBatches();
+                if (errors.size() != result.getErrors().size()) {
+                    errors = List.copyOf(result.getErrors());
+                }
+                errorsTruncated = result.isErrorsTruncated();
+            }
+            if (cancelRequested) {
+                throw new CancellationException();
+            }
+        }
+
+        synchronized void finish(State finalState, String finalMessage) {
+            state = finalState;
+            message = finalMessage;
+            finishedAt = System.currentTimeMillis();
+        }
+
+        synchronized State snapshotState() {
+            return state;
+        }
+
+        synchronized ImportJobStatus snapshot() {
+            ImportJobStatus status = new ImportJobStatus();
+            status.setJobId(id);
+            status.setState(state);
+            status.setFormat(format);
+            status.setFileName(fileName);
+            status.setTotalBytes(totalBytes);
+            status.setBytesReceived(bytesReceived);
+            status.setBytesProcessed(bytesProcessed);
+            status.setEntriesImported(entriesImported);
+            status.setEntriesSkipped(entriesSkipped);
+            status.setEntriesDuplicate(entriesDuplicate);
+            status.setEntriesCategorized(entriesCategorized);
+            status.setBatches(batches);
+            status.setErrors(new ArrayList<>(errors));
+            status.setErrorsTruncated(errorsTruncated);
+            status.setMessage(message);
+            status.setCreatedAt(createdAt);
+            status.setStartedAt(startedAt);
+            status.setFinishedAt(finishedAt);
+            if (startedAt > 0) {
+                long elapsed = (finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+                if (elapsed > 0) {
+                    status.setRowsPerSecond((entriesImported + entriesSkipped + entriesDuplicate) * 1000.0 / elapsed);
+                }
+            }
+            return status;
+        }
+    }
+
+    /**
+     * 统计导入线程已读取的暂存文件字节数
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final Job job;
+        private long count;
+
+        CountingInputStream(InputStream input, Job job) {
+            super(input);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                job.bytesProcessed = ++count;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+                job.bytesProcessed = count;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            job.bytesProcessed = count;
+            return skipped;
+        }
+    }
+}
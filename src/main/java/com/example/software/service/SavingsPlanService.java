@@ -4,6 +4,7 @@ import com.example.software.dto.SavingsPlanRequest;
 import com.example.software.dto.SavingsPlanResponse;
 import com.example.software.model.SavingsPlan;
 import com.example.software.model.User;
+import com.example.software.repository.ChangeLog;
 import com.example.software.repository.SavingsPlanRepository;
 import com.example.software.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +13,10 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -69,6 +73,26 @@ public class SavingsPlanService {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * 返回用户计划在 (epoch, since) 之后的变更，reset 为 true 时客户端需全量加载
+     */
+    public Map<String, Object> getPlanChanges(String userId, long epoch, long since) {
+        ChangeLog.Delta delta = savingsPlanRepository.changesSince(userId, epoch, since);
+        List<SavingsPlanResponse> plans = new ArrayList<>();
+        for (String planId : delta.getUpdated()) {
+            savingsPlanRepository.findById(planId).ifPresent(plan -> plans.add(createResponse(plan, false)));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("epoch", delta.getEpoch());
+        response.put("sequence", delta.getSequence());
+        response.put("reset", delta.isReset());
+        response.put("plans", plans);
+        response.put("deleted", delta.getDeleted());
+        return response;
+    }
+    
     public SavingsPlanResponse getPlan(String planId, String userId) {
         // 获取用户
         User user = userRepository.findById(userId)
@@ -84,7 +108,11 @@ public class SavingsPlanService {
         return createResponse(planOpt.get(), false);
     }
     
-    public SavingsPlanResponse updatePlan(String planId, SavingsPlanRequest request, String userId) {
+    /**
+     * 更新计划。expectedVersion 为 null 时以读取到的版本为准，
+     * 读取之后计划被其他请求修改或删除时抛出 VersionConflictException，而不是覆盖对方的修改
+     */
+    public SavingsPlanResponse updatePlan(String planId, SavingsPlanRequest request, String userId, Long expectedVersion) {
         // 获取用户
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -96,7 +124,9 @@ public class SavingsPlanService {
             throw new RuntimeException("Plan not found or not owned by user");
         }
         
-        SavingsPlan plan = planOpt.get();
+        // 在副本上修改，缓存中的计划在保存成功前保持不变
+        SavingsPlan current = planOpt.get();
+        SavingsPlan plan = copyOf(current);
         
         // 更新计划属性
         plan.setName(request.getName());
@@ -109,12 +139,16 @@ public class SavingsPlanService {
         plan.setTotalAmount(request.getAmount().multiply(BigDecimal.valueOf(request.getCycleTimes())));
         plan.setEndDate(calculateEndDate(plan.getStartDate(), plan.getCycle(), plan.getCycleTimes()));
         
-        // 保存并返回响应
-        SavingsPlan updatedPlan = savingsPlanRepository.save(plan);
+        // 比较版本后保存并返回响应
+        SavingsPlan updatedPlan = savingsPlanRepository.saveIfVersion(plan,
+                expectedVersion != null ? expectedVersion : versionOf(current));
         return createResponse(updatedPlan, true);
     }
     
-    public void deletePlan(String planId, String userId) {
+    /**
+     * 删除计划，expectedVersion 为 null 时以读取到的版本为准
+     */
+    public void deletePlan(String planId, String userId, Long expectedVersion) {
         // 获取用户
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("User not found"));
@@ -126,8 +160,30 @@ public class SavingsPlanService {
             throw new RuntimeException("Plan not found or not owned by user");
         }
         
-        // 删除计划
-        savingsPlanRepository.deleteById(planId);
+        // 比较版本后删除计划
+        savingsPlanRepository.deleteIfVersion(planId,
+                expectedVersion != null ? expectedVersion : versionOf(planOpt.get()));
+    }
+
+    private static long versionOf(SavingsPlan plan) {
+        return plan.getVersion() == null ? 0 : plan.getVersion();
+    }
+
+    private static SavingsPlan copyOf(SavingsPlan plan) {
+        SavingsPlan copy = new SavingsPlan();
+        copy.setPlanId(plan.getPlanId());
+        copy.setName(plan.getName());
+        copy.setStartDate(plan.getStartDate());
+        copy.setEndDate(plan.getEndDate());
+        copy.setCycle(plan.getCycle());
+        copy.setCycleTimes(plan.getCycleTimes());
+        copy.setAmount(plan.getAmount());
+        copy.setTotalAmount(plan.getTotalAmount());
+        copy.setSavedAmount(plan.getSavedAmount());
+        copy.setCurrency(plan.getCurrency());
+        copy.setUser(plan.getUser());
+        copy.setVersion(plan.getVersion());
+        return copy;
     }
 
     private Instant calculateEndDate(Instant startDate, SavingsPlan.CycleType cycle, int cycleTimes) {
@@ -161,6 +217,7 @@ public class SavingsPlanService {
         response.setTotalAmount(plan.getTotalAmount());
         response.setCurrency(plan.getCurrency());
         response.setSavedAmount(plan.getSavedAmount());
+        response.setVersion(plan.getVersion());
         
         return response;
     }
@@ -2,52 +2,21 @@ package com.example.software.service;
 
 import com.example.software.model.CategorySummary;
 import com.example.software.model.SummaryResponse;
-import com.example.software.model.Record;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.software.repository.BillingStoreRegistry;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.IOException;
 import java.time.LocalDate;
 import java.time.temporal.TemporalAdjusters;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class SummaryService {
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String BILLING_JSON_PATH = "data/billing/billingEntries.json";
-    private List<Record> records;
+    private final BillingStoreRegistry billingStoreRegistry;
 
-    public SummaryService() {
-        loadRecords();
-    }
-
-    private void loadRecords() {
-        try {
-            File jsonFile = new File(BILLING_JSON_PATH);
-            if (!jsonFile.exists()) {
-                throw new RuntimeException("Billing JSON file not found at: " + BILLING_JSON_PATH);
-            }
-            
-            // 读取 JSON 文件并转换为 Record 对象列表
-            List<Map<String, Object>> jsonRecords = objectMapper.readValue(jsonFile, List.class);
-            records = jsonRecords.stream()
-                .map(record -> new Record(
-                    "default_user",// userId
-                    (String) record.get("category"), // category
-                    (String) record.get("product"), // product
-                    ((Number) record.get("price")).doubleValue(), // amount
-                    parseDate((String) record.get("date")), // date
-                    (String) record.get("time"), // time
-                    (String) record.get("remark") // remark
-                ))
-                .collect(Collectors.toList());
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load billing records", e);
-        }
+    public SummaryService(BillingStoreRegistry billingStoreRegistry) {
+        this.billingStoreRegistry = billingStoreRegistry;
     }
 
     private LocalDate getStartDate(String periodInput, String customStartDate) {
@@ -72,7 +41,7 @@ public class SummaryService {
         return LocalDate.now();
     }
 
-    private SummaryResponse generateSummary(List<Record> records, String period, String startDate, String endDate) {
+    private SummaryResponse generateSummary(String userId, boolean income, String period, String startDate, String endDate) {
         LocalDate start = getStartDate(period, startDate);
         LocalDate end = getEndDate(endDate);
 
@@ -80,14 +49,8 @@ public class SummaryService {
             throw new IllegalArgumentException("Start date cannot be after end date");
         }
 
-        List<Record> filtered = records.stream()
-                .filter(r -> !r.getDate().isBefore(start) && !r.getDate().isAfter(end))
-                .toList();
-
-        Map<String, Double> categoryTotals = new HashMap<>();
-        for (Record r : filtered) {
-            categoryTotals.merge(r.getCategory(), Math.abs(r.getAmount()), Double::sum);
-        }
+        // 直接读取按日、按类别预先汇总的金额，不再扫描原始记录
+        Map<String, Double> categoryTotals = billingStoreRegistry.forUser(userId).sumByCategory(start, end, income);
 
         double total = categoryTotals.values().stream().mapToDouble(Double::doubleValue).sum();
 
@@ -105,43 +68,18 @@ public class SummaryService {
         return new SummaryResponse(true, capitalize(period), total, summaries, debugInfo);
     }
 
-    public SummaryResponse getExpenditureSummary(String period, String startDate, String endDate) {
-        loadRecords();
-        // 根据金额为负数筛选支出记录
-        List<Record> expenditureRecords = records.stream()
-                .filter(r -> r.getAmount() < 0)  // 支出为负数
-                .collect(Collectors.toList());
-        return generateSummary(expenditureRecords, period, startDate, endDate);
+    public SummaryResponse getExpenditureSummary(String userId, String period, String startDate, String endDate) {
+        // 支出为负数
+        return generateSummary(userId, false, period, startDate, endDate);
     }
 
-    public SummaryResponse getIncomeSummary(String period, String startDate, String endDate) {
-        loadRecords();
-        // 根据金额为正数筛选收入记录
-        List<Record> incomeRecords = records.stream()
-                .filter(r -> r.getAmount() > 0)  // 收入为正数
-                .collect(Collectors.toList());
-        return generateSummary(incomeRecords, period, startDate, endDate);
+    public SummaryResponse getIncomeSummary(String userId, String period, String startDate, String endDate) {
+        // 收入为正数
+        return generateSummary(userId, true, period, startDate, endDate);
     }
 
     private String capitalize(String s) {
         if (s == null || s.isEmpty()) return s;
         return s.substring(0, 1).toUpperCase() + s.substring(1).toLowerCase();
     }
-
-    private LocalDate parseDate(String dateStr) {
-        LocalDate today = LocalDate.now();
-        if (dateStr == null || dateStr.trim().isEmpty() || "今天".equals(dateStr.trim()) || "today".equalsIgnoreCase(dateStr.trim())) {
-            return today;
-        } else if ("昨天".equals(dateStr.trim()) || "yesterday".equalsIgnoreCase(dateStr.trim())) {
-            return today.minusDays(1);
-        } else if ("前天".equals(dateStr.trim())) {
-            return today.minusDays(2);
-        } else {
-            try {
-                return LocalDate.parse(dateStr.trim());
-            } catch (Exception e) {
-                return today;
-            }
-        }
-    }
 }
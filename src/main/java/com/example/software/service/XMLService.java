@@ -5,39 +5,186 @@ import com.example.software.model.BillingEntryList;
 import org.springframework.stereotype.Service;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 账单 XML 读写
+ *
+ * JAXBContext 创建代价很高，整个服务只创建一次（首次使用时），之后所有调用共用；
+ * 上下文是线程安全的，Marshaller/Unmarshaller 不是，每次调用各自创建。
+ * 除了整份文档的 writeDataToXML/readDataFromXML，还提供流式读写：
+ * 用 StAX 写出或读取 <billingEntries> 根元素，其中的每个 <entry> 单独交给 JAXB 处理，
+ * 同一时间只有一条账单在内存中。
+ */
 @Service
 public class XMLService {
 
+    private static final String ROOT_ELEMENT = "billingEntries";
+    private static final QName ENTRY = new QName("entry");
+
+    private final XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+    private final XMLInputFactory inputFactory;
+    private volatile JAXBContext context;
+
+    public XMLService() {
+        inputFactory = XMLInputFactory.newFactory();
+        // 上传的文件不可信，不解析 DTD 和外部实体
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * 逐条处理读到的账单
+     */
+    @FunctionalInterface
+    public interface EntryHandler {
+        void accept(BillingEntry entry) throws IOException;
+    }
+
     // 将数据写入XML文件
     public void writeDataToXML(List<BillingEntry> entries, String filename) throws JAXBException {
         BillingEntryList entryList = new BillingEntryList();
         entryList.setEntries(entries);
-        
-        JAXBContext context = JAXBContext.newInstance(BillingEntryList.class);
-        Marshaller marshaller = context.createMarshaller();
+
+        Marshaller marshaller = context().createMarshaller();
         marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
         marshaller.marshal(entryList, new File(filename));
     }
-    
+
     // 从XML文件读取数据
     public List<BillingEntry> readDataFromXML(String filename) throws JAXBException {
         File file = new File(filename);
         if (!file.exists()) {
             return new ArrayList<>();
         }
-        
-        JAXBContext context = JAXBContext.newInstance(BillingEntryList.class);
-        Unmarshaller unmarshaller = context.createUnmarshaller();
+
+        Unmarshaller unmarshaller = context().createUnmarshaller();
         BillingEntryList entryList = (BillingEntryList) unmarshaller.unmarshal(file);
-        
+
         return entryList.getEntries();
     }
-}
 
+    /**
+     * 开始向输出流写一份账单 XML，文档格式与 writeDataToXML 相同。
+     * 关闭返回的 EntryWriter 时写出结束标签，但不关闭输出流。
+     */
+    public EntryWriter openWriter(OutputStream output) throws IOException {
+        try {
+            XMLStreamWriter writer = outputFactory.createXMLStreamWriter(output, "UTF-8");
+            Marshaller marshaller = context().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement(ROOT_ELEMENT);
+            return new EntryWriter(writer, marshaller);
+        } catch (XMLStreamException | JAXBException e) {
+            throw new IOException("创建 XML 输出失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 流式读取账单 XML，每读到一个 entry 元素就交给 handler，不保留已处理的账单
+     *
+     * @return 读取的账单条数
+     * @throws IOException 读取失败或 XML 格式错误时
+     */
+    public long readEntries(InputStream input, EntryHandler handler) throws IOException {
+        XMLStreamReader reader = null;
+        long count = 0;
+        try {
+            reader = inputFactory.createXMLStreamReader(input);
+            Unmarshaller unmarshaller = context().createUnmarshaller();
+            while (reader.hasNext()) {
+                if (reader.getEventType() == XMLStreamConstants.START_ELEMENT
+                        && ENTRY.getLocalPart().equals(reader.getLocalName())) {
+                    // unmarshal 读完整个 entry 元素，停在它之后的事件上
+                    handler.accept(unmarshaller.unmarshal(reader, BillingEntry.class).getValue());
+                    count++;
+                } else {
+                    reader.next();
+                }
+            }
+            return count;
+        } catch (XMLStreamException | JAXBException e) {
+            throw new IOException("XML 格式错误（已读取 " + count + " 条）: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // 输入流由调用方关闭
+                }
+            }
+        }
+    }
+
+    private JAXBContext context() throws JAXBException {
+        JAXBContext current = context;
+        if (current == null) {
+            synchronized (this) {
+                current = context;
+                if (current == null) {
+                    current = JAXBContext.newInstance(BillingEntryList.class);
+                    context = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 逐条写出账单的 XML 写入器，非线程安全
+     */
+    public static final class EntryWriter implements Closeable {
+        private final XMLStreamWriter writer;
+        private final Marshaller marshaller;
+
+        private EntryWriter(XMLStreamWriter writer, Marshaller marshaller) {
+            this.writer = writer;
+            this.marshaller = marshaller;
+        }
+
+        public void write(BillingEntry entry) throws IOException {
+            try {
+                marshaller.marshal(new JAXBElement<>(ENTRY, BillingEntry.class, entry), writer);
+            } catch (JAXBException e) {
+                throw new IOException("写出账单 XML 失败: " + e.getMessage(), e);
+            }
+        }
+
+        public void flush() throws IOException {
+            try {
+                writer.flush();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IOException("结束账单 XML 失败: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.software.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 多关键词匹配的 Aho-Corasick 自动机，构建后不可变，可被多个线程同时使用
+ *
+ * 关键词和文本都按字符转小写后比较。一次 match 只顺序扫描文本一遍，
+ * 耗时与文本长度和命中数成正比，与关键词个数无关。
+ * 状态转移存放在以 (状态, 字符) 为键的开放寻址哈希表中，中文等大字符集也不必为每个状态分配数组；
+ * 每个状态的输出在构建时已合并其失败链上的输出，匹配时不必再沿失败链查找。
+ */
+public final class AhoCorasick {
+
+    private static final long EMPTY = -1L;
+
+    // goto 表：键为 (state << 16) | char，值为下一状态
+    private final long[] keys;
+    private final int[] targets;
+    private final int mask;
+    private final int[] failure;
+    // 状态 s 的输出为 outputs[outputStart[s] .. outputStart[s + 1])
+    private final int[] outputStart;
+    private final int[] outputs;
+    private final int keywordCount;
+
+    private AhoCorasick(long[] keys, int[] targets, int[] failure, int[] outputStart, int[] outputs,
+                        int keywordCount) {
+        this.keys = keys;
+        this.targets = targets;
+        this.mask = keys.length - 1;
+        this.failure = failure;
+        this.outputStart = outputStart;
+        this.outputs = outputs;
+        this.keywordCount = keywordCount;
+    }
+
+    /**
+     * 编译关键词，关键词的编号为其在列表中的下标；空关键词永远不会命中
+     */
+    public static AhoCorasick compile(List<String> keywords) {
+        // 1. 建 trie，转移先放在按状态分组的列表中
+        List<int[]> edges = new ArrayList<>();
+        List<int[]> terminal = new ArrayList<>();
+        edges.add(new int[0]);
+        terminal.add(new int[0]);
+        Trie trie = new Trie(edges, terminal);
+        for (int id = 0; id < keywords.size(); id++) {
+            String keyword = keywords.get(id);
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                state = trie.child(state, Character.toLowerCase(keyword.charAt(i)));
+            }
+            trie.addOutput(state, id);
+        }
+        int states = edges.size();
+
+        // 2. 转移写入开放寻址哈希表，负载因子不超过 0.5
+        int capacity = 2;
+        while (capacity < states * 2) {
+            capacity <<= 1;
+        }
+        long[] keys = new long[capacity];
+        int[] targets = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int state = 0; state < states; state++) {
+            int[] stateEdges = edges.get(state);
+            for (int i = 0; i < stateEdges.length; i += 2) {
+                long key = key(state, (char) stateEdges[i]);
+                int slot = slot(key, capacity - 1);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = key;
+                targets[slot] = stateEdges[i + 1];
+            }
+        }
+
+        // 3. 按广度优先计算失败链接，并把失败状态的输出并入当前状态
+        int[] failure = new int[states];
+        int[][] merged = new int[states][];
+        merged[0] = terminal.get(0);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < edges.get(0).length; i += 2) {
+            int child = edges.get(0)[i + 1];
+            merged[child] = terminal.get(child);
+            queue.add(child);
+        }
+        AhoCorasick partial = new AhoCorasick(keys, targets, failure, null, null, keywords.size());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] stateEdges = edges.get(state);
+            for (int i = 0; i < stateEdges.length; i += 2) {
+                char c = (char) stateEdges[i];
+                int child = stateEdges[i + 1];
+                int fallback = failure[state];
+                int next;
+                while ((next = partial.next(fallback, c)) < 0 && fallback != 0) {
+                    fallback = failure[fallback];
+                }
+                failure[child] = next < 0 ? 0 : next;
+                merged[child] = concat(terminal.get(child), merged[failure[child]]);
+                queue.add(child);
+            }
+        }
+
+        // 4. 输出压平成一个数组
+        int[] outputStart = new int[states + 1];
+        for (int state = 0; state < states; state++) {
+            outputStart[state + 1] = outputStart[state] + merged[state].length;
+        }
+        int[] outputs = new int[outputStart[states]];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(merged[state], 0, outputs, outputStart[state], merged[state].length);
+        }
+        return new AhoCorasick(keys, targets, failure, outputStart, outputs, keywords.size());
+    }
+
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+
+    /**
+     * 扫描文本，对每次命中调用 matches（参数为关键词编号）。
+     * 同一关键词出现多次时会多次回调；text 为 null 时不做任何事
+     */
+    public void match(CharSequence text, IntConsumer matches) {
+        if (text == null) {
+            return;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = next(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = next < 0 ? 0 : next;
+            for (int k = outputStart[state]; k < outputStart[state + 1]; k++) {
+                matches.accept(outputs[k]);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        long key = key(state, c);
+        int slot = slot(key, mask);
+        long found;
+        while ((found = keys[slot]) != EMPTY) {
+            if (found == key) {
+                return targets[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static long key(int state, char c) {
+        return ((long) state << 16) | c;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * 构建期间使用的 trie，每个状态的转移以 {字符, 子状态, ...} 存放
+     */
+    private static final class Trie {
+        private final List<int[]> edges;
+        private final List<int[]> terminal;
+
+        Trie(List<int[]> edges, List<int[]> terminal) {
+            this.edges = edges;
+            this.terminal = terminal;
+        }
+
+        int child(int state, char c) {
+            int[] stateEdges = edges.get(state);
+            for (int i = 0; i < stateEdges.length; i += 2) {
+                if (stateEdges[i] == c) {
+                    return stateEdges[i + 1];
+                }
+            }
+            int child = edges.size();
+            edges.add(new int[0]);
+            terminal.add(new int[0]);
+            int[] grown = Arrays.copyOf(stateEdges, stateEdges.length + 2);
+            grown[stateEdges.length] = c;
+            grown[stateEdges.length + 1] = child;
+            edges.set(state, grown);
+            return child;
+        }
+
+        void addOutput(int state, int id) {
+            int[] ids = terminal.get(state);
+            int[] grown = Arrays.copyOf(ids, ids.length + 1);
+            grown[ids.length] = id;
+            terminal.set(state, grown);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.software.util;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 所有存储共用的原子文件写入
+ *
+ * 写入先落到同目录下的临时文件并 fsync，再原子重命名覆盖目标文件，最后 fsync 所在目录
+ * 使重命名本身持久化，写到一半崩溃时原文件保持完整。每个文件只有一个写入者：写入进行中到达的请求合并为一批，
+ * 当前写入结束后只按最新内容再写一次，批内的调用方一起返回。
+ * 每个文件的请求数、实际写入次数和写入耗时可通过 getStats 查看（GET /v1/admin/storage/writes）。
+ */
+@Component
+public class AtomicFileWriter {
+
+    private static final Logger logger = Logger.getLogger(AtomicFileWriter.class.getName());
+    private static final long SLOW_WRITE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 文件内容，在真正写入时才生成，因此合并后的写入总是使用最新状态
+     */
+    @FunctionalInterface
+    public interface ContentSupplier {
+        byte[] get() throws IOException;
+    }
+
+    private final Map<Path, FileQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * 原子写入文件，返回时内容（或其后更新的内容）已经持久化
+     */
+    public void write(Path target, ContentSupplier content) throws IOException {
+        Path normalized = target.toAbsolutePath().normalize();
+        queues.computeIfAbsent(normalized, FileQueue::new).submit(content);
+    }
+
+    public void write(Path target, byte[] content) throws IOException {
+        write(target, () -> content);
+    }
+
+    /**
+     * 各文件的写入统计快照，按路径排序
+     */
+    public Map<String, WriteStats> getStats() {
+        Map<String, WriteStats> stats = new TreeMap<>();
+        for (FileQueue queue : queues.values()) {
+            stats.put(queue.target.toString(), queue.statsSnapshot());
+        }
+        return stats;
+    }
+
+    private static void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tempPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            logger.warning("文件系统不支持原子重命名，" + target + " 改为普通覆盖，崩溃时可能丢失或损坏: " + e.getMessage());
+            Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (parent != null) {
+            syncDirectory(parent);
+        }
+    }
+
+    // 目录项的变更（重命名）要 fsync 目录才会持久化；部分平台（如 Windows）不能打开目录，此时跳过
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("无法 fsync 目录 " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 单个文件的写入队列。同一时刻最多一个线程在写；其他线程把内容放进待写批次后等待，
+     * 由写完上一批的线程（或批次中第一个发现空闲的线程）负责写入。
+     */
+    private static final class FileQueue {
+        private final Path target;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition batchDone = lock.newCondition();
+        private final WriteStats stats = new WriteStats();
+        private Batch pending;
+        private boolean writing;
+
+        private FileQueue(Path target) {
+            this.target = target;
+        }
+
+        void submit(ContentSupplier content) throws IOException {
+            lock.lock();
+            try {
+                if (pending == null) {
+                    pending = new Batch();
+                }
+                Batch batch = pending;
+                batch.content = content;
+                stats.requests++;
+
+                while (!batch.done) {
+                    if (writing) {
+                        batchDone.awaitUninterruptibly();
+                        continue;
+                    }
+                    writing = true;
+                    Batch current = pending;
+                    pending = null;
+                    lock.unlock();
+                    long start = System.nanoTime();
+                    int size = 0;
+                    IOException error = null;
+                    try {
+                        byte[] bytes = current.content.get();
+                        size = bytes.length;
+                        writeAtomically(target, bytes);
+                    } catch (IOException e) {
+                        error = e;
+                    } catch (RuntimeException e) {
+                        error = new IOException(e);
+                    } finally {
+                        lock.lock();
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    writing = false;
+                    current.done = true;
+                    current.error = error;
+                    stats.record(elapsed, size);
+                    batchDone.signalAll();
+
+                    if (elapsed > SLOW_WRITE_NANOS) {
+                        logger.warning("写入 " + target + " 耗时 " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+                    } else if (logger.isLoggable(Level.FINE)) {
+                        logger.fine(String.format("写入 %s: %d 字节, %.2f ms (请求 %d 次, 实际写入 %d 次)",
+                            target, size, elapsed / 1_000_000.0, stats.requests, stats.writes));
+                    }
+                }
+                if (batch.error != null) {
+                    throw new IOException("Failed to write " + target, batch.error);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        WriteStats statsSnapshot() {
+            lock.lock();
+            try {
+                return stats.copy();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Batch {
+        private ContentSupplier content;
+        private boolean done;
+        private IOException error;
+    }
+
+    /**
+     * 单个文件的写入统计
+     */
+    public static final class WriteStats {
+        private long requests;
+        private long writes;
+        private long bytes;
+        private long totalNanos;
+        private long maxNanos;
+        private long lastNanos;
+
+        private void record(long nanos, int size) {
+            writes++;
+            bytes += size;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            lastNanos = nanos;
+        }
+
+        private WriteStats copy() {
+            WriteStats copy = new WriteStats();
+            copy.requests = requests;
+            copy.writes = writes;
+            copy.bytes = bytes;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.lastNanos = lastNanos;
+            return copy;
+        }
+
+        // 写入请求数，大于 writes 的部分是被合并掉的写入
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public double getAverageMillis() {
+            return writes == 0 ? 0 : totalNanos / (double) writes / 1_000_000;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1_000_000.0;
+        }
+
+        public double getLastMillis() {
+            return lastNanos / 1_000_000.0;
+        }
+    }
+}
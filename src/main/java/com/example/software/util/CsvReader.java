@@ -0,0 +1,234 @@
+package com.example.software.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * 按 RFC 4180 逐字符解析的 CSV 读取器
+ *
+ * 字段以逗号分隔，记录以 LF、CRLF 或单独的 CR 结束；引号内的逗号、换行和成对的 "" 按字面处理。
+ * 输入按块读入复用的缓冲区，当前记录各字段去掉引号后依次存放在另一块复用的字符数组中，
+ * 只记录每个字段的结束位置，读取过程本身不创建 String 或 String[]。
+ * 调用方按列取值：需要字符串时用 getString，数值和逐字符解析用 getDecimal、length、charAt，
+ * 只有用到的列才会分配对象。引号未闭合时抛出 IOException。非线程安全。
+ */
+public class CsvReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // 解析状态
+    private static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    // 引号字段中遇到 "，需要看下一个字符才能确定是转义还是字段结束
+    private static final int QUOTE_IN_QUOTED = 3;
+
+    private final Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+    private boolean started;
+
+    private char[] values = new char[256];
+    private int valueLength;
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+
+    // 下一条记录开始的行号，以及当前记录开始的行号（从 1 开始）
+    private long line = 1;
+    private long recordLine;
+
+    public CsvReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvReader(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(16, bufferSize)];
+    }
+
+    /**
+     * 读取下一条记录
+     *
+     * @return 没有更多记录时返回 false
+     */
+    public boolean next() throws IOException {
+        valueLength = 0;
+        fieldCount = 0;
+        recordLine = line;
+        int state = FIELD_START;
+        boolean any = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (state == QUOTED) {
+                    throw new IOException("第 " + recordLine + " 行开始的字段缺少结束引号");
+                }
+                if (!any) {
+                    return false;
+                }
+                endField();
+                return true;
+            }
+            char c = buffer[position++];
+            any = true;
+            switch (state) {
+                case FIELD_START:
+                    if (c == '"') {
+                        state = QUOTED;
+                        break;
+                    }
+                    state = UNQUOTED;
+                    // 按未加引号的字段处理当前字符
+                case UNQUOTED:
+                    if (c == ',') {
+                        endField();
+                        state = FIELD_START;
+                    } else if (c == '\n' || c == '\r') {
+                        endRecord(c);
+                        return true;
+                    } else {
+                        append(c);
+                    }
+                    break;
+                case QUOTED:
+                    if (c == '"') {
+                        state = QUOTE_IN_QUOTED;
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        append(c);
+                    }
+                    break;
+                default:
+                    if (c == '"') {
+                        append('"');
+                        state = QUOTED;
+                    } else if (c == ',') {
+                        endField();
+                        state = FIELD_START;
+                    } else if (c == '\n' || c == '\r') {
+                        endRecord(c);
+                        return true;
+                    } else {
+                        // 结束引号后还有字符（不规范的输入），原样接在字段后面
+                        append(c);
+                        state = UNQUOTED;
+                    }
+                    break;
+            }
+        }
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 当前记录开始的行号，从 1 开始；引号内的换行也计入行数
+     */
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    public String getString(int field) {
+        int start = start(field);
+        return new String(values, start, fieldEnds[field] - start);
+    }
+
+    public int length(int field) {
+        return fieldEnds[field] - start(field);
+    }
+
+    public char charAt(int field, int index) {
+        return values[start(field) + index];
+    }
+
+    /**
+     * 字段是否为空或只含空白
+     */
+    public boolean isBlank(int field) {
+        for (int i = start(field); i < fieldEnds[field]; i++) {
+            if (!Character.isWhitespace(values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把字段（去掉首尾空白）直接按数字解析，不经过中间字符串
+     *
+     * @throws NumberFormatException 不是合法数字时
+     */
+    public BigDecimal getDecimal(int field) {
+        int start = start(field);
+        int end = fieldEnds[field];
+        while (start < end && Character.isWhitespace(values[start])) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(values[end - 1])) {
+            end--;
+        }
+        return new BigDecimal(values, start, end - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int start(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("字段 " + field + " 不存在，当前记录共 " + fieldCount + " 列");
+        }
+        return field == 0 ? 0 : fieldEnds[field - 1];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        if (!started) {
+            started = true;
+            // 跳过 UTF-8 BOM
+            if (buffer[0] == '\uFEFF') {
+                position = 1;
+            }
+        }
+        return true;
+    }
+
+    private void append(char c) {
+        if (valueLength == values.length) {
+            values = Arrays.copyOf(values, valueLength * 2);
+        }
+        values[valueLength++] = c;
+    }
+
+    private void endField() {
+        if (fieldCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+        }
+        fieldEnds[fieldCount++] = valueLength;
+    }
+
+    // CR 后紧跟的 LF 属于同一个换行
+    private void endRecord(char c) throws IOException {
+        endField();
+        line++;
+        if (c == '\r' && (position < limit || fill()) && buffer[position] == '\n') {
+            position++;
+        }
+    }
+}
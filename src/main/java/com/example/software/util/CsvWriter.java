@@ -0,0 +1,94 @@
+package com.example.software.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * 与 CsvReader 对应的 CSV 写入器
+ *
+ * 字段直接写入底层 Writer，不拼接整行字符串；含逗号、引号或换行的字段按 RFC 4180
+ * 加引号并把 " 写成 ""。记录以 \n 结束。底层 Writer 应自带缓冲（如 BufferedWriter）。
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+    private final Writer writer;
+    private boolean firstField = true;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * 写一个字段，null 写为空字段
+     */
+    public CsvWriter write(CharSequence value) throws IOException {
+        if (!firstField) {
+            writer.write(',');
+        }
+        firstField = false;
+        if (value == null) {
+            return this;
+        }
+        if (!needsQuotes(value)) {
+            writer.append(value);
+            return this;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+        return this;
+    }
+
+    /**
+     * 写一个字段，非 null 时取 toString()
+     */
+    public CsvWriter write(Object value) throws IOException {
+        return write(value == null ? null : value.toString());
+    }
+
+    /**
+     * 结束当前记录
+     */
+    public void endRecord() throws IOException {
+        writer.write('\n');
+        firstField = true;
+    }
+
+    /**
+     * 写一整条记录
+     */
+    public void writeRecord(String... values) throws IOException {
+        for (String value : values) {
+            write(value);
+        }
+        endRecord();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static boolean needsQuotes(CharSequence value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
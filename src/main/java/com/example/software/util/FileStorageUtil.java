@@ -16,10 +16,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class FileStorageUtil {
     private static final String DATA_DIR = "data";
     private final ObjectMapper objectMapper;
+    private final AtomicFileWriter fileWriter;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
-    public FileStorageUtil() {
+    public FileStorageUtil(AtomicFileWriter fileWriter) {
         this.objectMapper = new ObjectMapper();
+        this.fileWriter = fileWriter;
         createDataDirectory();
     }
 
@@ -35,7 +37,7 @@ public class FileStorageUtil {
         lock.writeLock().lock();
         try {
             Path filePath = Paths.get(DATA_DIR, filename);
-            objectMapper.writeValue(filePath.toFile(), data);
+            fileWriter.write(filePath, objectMapper.writeValueAsBytes(data));
         } catch (IOException e) {
             throw new RuntimeException("Error saving to file: " + filename, e);
         } finally {
@@ -47,7 +49,7 @@ public class FileStorageUtil {
         lock.writeLock().lock();
         try {
             Path filePath = Paths.get(DATA_DIR, filename);
-            objectMapper.writeValue(filePath.toFile(), dataList);
+            fileWriter.write(filePath, objectMapper.writeValueAsBytes(dataList));
         } catch (IOException e) {
             throw new RuntimeException("Error saving list to file: " + filename, e);
         } finally {
@@ -383,9 +383,7 @@ public class AIViewController {
     private void getHolidayAdvice() {
         try {
             AIService aiService = apiServiceFactory.getAIService();
-            // 默认账单路径，可根据实际情况调整
-            String csvPath = "data/billing/billingEntries.csv";
-            AIAdviceResponse response = aiService.getHolidayAdvice(csvPath);
+            AIAdviceResponse response = aiService.getHolidayAdvice();
             Platform.runLater(() -> displayAIResponse(response.getMessage()));
         } catch (ApiException e) {
             Platform.runLater(() -> displayAIResponse("节日消费分析失败：" + e.getMessage()));
@@ -1,6 +1,9 @@
 package com.example.software.view;
 
 import com.example.software.api.*;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
@@ -12,11 +15,10 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.GridPane;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.math.BigDecimal;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
@@ -46,6 +48,7 @@ public class BillingViewController {
     @FXML private Button inquireButton; // 查询按钮
     @FXML private Button deleteButton; // 删除按钮
     @FXML private Button modifyButton; // 修改按钮
+    @FXML private Button loadMoreButton; // 加载更多按钮
 
     @FXML private TableView<BillingEntry> billingTable;// 表格
     @FXML private TableColumn<BillingEntry, String> categoryColumn; // 分类列
@@ -55,6 +58,17 @@ public class BillingViewController {
     @FXML private TableColumn<BillingEntry, String> remarkColumn;// 备注列
 
     private final ObservableList<BillingEntry> billingData = FXCollections.observableArrayList(); // 账单数据
+    private static final int PAGE_SIZE = 200; // 每页加载的账单条数
+    private String nextCursor; // 下一页的游标，没有更多数据时为 null
+    private volatile long syncEpoch; // 上次同步到的服务端变更位置
+    private volatile long syncSequence = -1;
+
+    private static final int IMPORT_POLL_MAX_FAILURES = 5; // 连续查询失败多少次后放弃跟踪导入任务
+    private String importJobId; // 正在跟踪的后台导入任务，没有时为 null
+    private Timeline importPoller; // 每秒查询一次导入进度
+    private boolean importPolling; // 上一次查询尚未返回
+    private int importPollFailures;
+    private String addCsvButtonText;
 
     private BillingService billingService; // 账单服务
     private String token; // API token
@@ -108,6 +122,8 @@ public class BillingViewController {
         inquireButton.setOnAction(event -> handleFuzzySearch());
         deleteButton.setOnAction(event -> handleDeleteRecord());
         modifyButton.setOnAction(event -> handleModifyRecord());
+        loadMoreButton.setOnAction(event -> loadMoreBillingData());
+        loadMoreButton.setDisable(true);
 
         // Allow multiple selection in table
         billingTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
@@ -147,6 +163,8 @@ public class BillingViewController {
         }
         //从后端加载加载数据
         loadBillingData();
+        // 其他客户端或导入产生的变更由服务端推送，收到后只拉取增量
+        LiveUpdates.subscribe(billingTable, this::syncBillingData, ChangeEventClient.BILLING);
     }
 
     private void addSampleData() {
@@ -201,6 +219,8 @@ public class BillingViewController {
                     billingService.createEntry(
                             category, product, BigDecimal.valueOf(price), date, LocalTime.now(), remark
                     );
+                    // 只拉取增量，用服务端分配了 entryId 的记录替换本地临时记录
+                    syncBillingData();
                 } catch (ApiException e) {
                     e.printStackTrace();
                 }
@@ -214,48 +234,209 @@ public class BillingViewController {
     }
     // 查询功能
     private void handleFuzzySearch() {
-        String searchTerm = productField.getText().trim().toLowerCase();
+        String searchTerm = productField.getText().trim();
         if (searchTerm.isEmpty()) {
             showAlert("Search Error", "Please enter a search term");
             return;
         }
 
-        // Create a filtered list for the search results
-        ObservableList<BillingEntry> searchResults = FXCollections.observableArrayList();
+        // 表格只加载了部分分页数据，搜索交给后端在全部账单中查找
+        setLoading(true);
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return billingService.getEntries(null, null, null, searchTerm);
+            } catch (ApiException e) {
+                throw new CompletionException(e);
+            }
+        }).thenAccept(entries -> Platform.runLater(() -> {
+            setLoading(false);
+            ObservableList<BillingEntry> searchResults = FXCollections.observableArrayList();
+            for (com.example.software.api.BillingEntry billingEntry : entries) {
+                searchResults.add(toViewEntry(billingEntry));
+            }
+
+            // Update the table with search results
+            if (searchResults.isEmpty()) {
+                showInfo("Search Results", "No matching records found");
+            } else {
+                billingTable.setItems(searchResults);
+                showInfo("Search Results", searchResults.size() + " matching records found");
+            }
+        })).exceptionally(ex -> {
+            Platform.runLater(() -> {
+                setLoading(false);
+                showErrorAlert("搜索账单失败: " + ex.getMessage());
+            });
+            return null;
+        });
+    }
+    // 选择并添加CSV文件
 
-        // Perform fuzzy search on product and remark fields
-        for (BillingEntry entry : billingData) {
-            if (entry.productProperty().get().toLowerCase().contains(searchTerm) ||
-                entry.remarkProperty().get().toLowerCase().contains(searchTerm)) {
-                searchResults.add(entry);
+    private void pollImportJob() {
+        if (importJobId == null || importPolling) {
+            return;
+        }
+        if (billingTable.getScene() == null) {
+            // 已切换到其他页面，导入在服务端继续，结果由变更推送同步
+            stopImportTracking();
+            return;
+        }
+        String jobId = importJobId;
+        importPolling = true;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return billingService.getImportJob(jobId);
+            } catch (ApiException e) {
+                throw new CompletionException(e);
             }
+        }).thenAccept(job -> Platform.runLater(() -> {
+            importPolling = false;
+            importPollFailures = 0;
+            if (jobId.equals(importJobId)) {
+                showImportProgress(job);
+            }
+        })).exceptionally(ex -> {
+            System.out.println("查询导入进度失败: " + ex.getMessage());
+            Platform.runLater(() -> {
+                importPolling = false;
+                if (jobId.equals(importJobId) && ++importPollFailures >= IMPORT_POLL_MAX_FAILURES) {
+                    stopImportTracking();
+                    loadBillingData();
+                    showErrorAlert("无法获取导入进度: " + ex.getMessage());
+                }
+            });
+            return null;
+        });
+    }
+
+    private void showImportProgress(ImportJob job) {
+        if (job.isFinished()) {
+            finishImport(job);
+            return;
+        }
+        if ("QUEUED".equals(job.getState())) {
+            addCsvButton.setText("排队中...");
+            return;
         }
+        double progress = job.getProgress();
+        addCsvButton.setText(String.format("导入中%s · %.0f 行/秒",
+                progress >= 0 ? " " + Math.round(progress * 100) + "%" : "", job.getRowsPerSecond()));
+    }
 
-        // Update the table with search results
-        if (searchResults.isEmpty()) {
-            showInfo("Search Results", "No matching records found");
-        } else {
-            billingTable.setItems(searchResults);
-            showInfo("Search Results", searchResults.size() + " matching records found");
+    private void finishImport(ImportJob job) {
+        stopImportTracking();
+        // 重新加载数据以确保与服务器同步
+        loadBillingData();
+        switch (job.getState()) {
+            case "COMPLETED" -> {
+                StringBuilder content = new StringBuilder(String.format("成功导入 %d 条，跳过 %d 条",
+                        job.getEntriesImported(), job.getEntriesSkipped()));
+                if (job.getEntriesDuplicate() > 0) {
+                    content.append(String.format("，%d 条与已有账单重复未导入", job.getEntriesDuplicate()));
+                }
+                if (job.getEntriesCategorized() > 0) {
+                    content.append(String.format("，%d 条按分类规则自动归类", job.getEntriesCategorized()));
+                }
+                List<ImportJob.RowError> errors = job.getErrors();
+                for (int i = 0; i < Math.min(5, errors.size()); i++) {
+                    content.append("\n第 ").append(errors.get(i).getLine()).append(" 行: ").append(errors.get(i).getMessage());
+                }
+                if (errors.size() > 5 || job.isErrorsTruncated()) {
+                    content.append("\n...");
+                }
+                showInfo("导入完成", content.toString());
+            }
+            case "CANCELLED" -> showInfo("导入已取消", "取消前已导入 " + job.getEntriesImported() + " 条");
+            default -> showErrorAlert("导入失败: " + job.getMessage());
         }
     }
-    // 选择并添加CSV文件
+
+    private void confirmCancelImport() {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("取消导入");
+        alert.setHeaderText(null);
+        alert.setContentText("确定取消当前导入吗？已导入的记录会保留。");
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isEmpty() || result.get() != ButtonType.OK || importJobId == null) {
+            return;
+        }
+        String jobId = importJobId;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return billingService.cancelImportJob(jobId);
+            } catch (ApiException e) {
+                throw new CompletionException(e);
+            }
+        }).thenAccept(job -> Platform.runLater(() -> {
+            if (jobId.equals(importJobId)) {
+                showImportProgress(job);
+            }
+        })).exceptionally(ex -> {
+            Platform.runLater(() -> showErrorAlert("取消导入失败: " + ex.getMessage()));
+            return null;
+        });
+    }
+
+    private void stopImportTracking() {
+        if (importPoller != null) {
+            importPoller.stop();
+            importPoller = null;
+        }
+        importJobId = null;
+        importPolling = false;
+        resetImportButton();
+    }
+
+    private void resetImportButton() {
+        if (addCsvButtonText != null) {
+            addCsvButton.setText(addCsvButtonText);
+        }
+        addCsvButton.setTooltip(null);
+        addCsvButton.setDisable(false);
+    }
+    // 文件作为后台导入任务上传，之后按秒查询进度并显示在按钮上；导入过程中再次点击按钮可取消
     private void handleAddCsv() {
+        if (importJobId != null) {
+            confirmCancelImport();
+            return;
+        }
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("选择CSV文件");
-        fileChooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("CSV Files", "*.csv")
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
+                new FileChooser.ExtensionFilter("XML Files", "*.xml")
         );
         File selectedFile = fileChooser.showOpenDialog(billingTable.getScene().getWindow());
-        if(selectedFile != null){
+        if (selectedFile == null) {
+            return;
+        }
+        addCsvButtonText = addCsvButton.getText();
+        addCsvButton.setText("上传中...");
+        addCsvButton.setDisable(true);
+        CompletableFuture.supplyAsync(() -> {
             try {
-                billingService.importFromCsv(selectedFile);
-                // 重新加载数据以确保与服务器同步
-                loadBillingData();
+                return billingService.startImportJob(selectedFile);
             } catch (ApiException e) {
-                throw new RuntimeException(e);
+                throw new CompletionException(e);
             }
-        }
+        }).thenAccept(job -> Platform.runLater(() -> {
+            addCsvButton.setDisable(false);
+            addCsvButton.setTooltip(new Tooltip("点击取消导入"));
+            importJobId = job.getJobId();
+            importPollFailures = 0;
+            showImportProgress(job);
+            if (importJobId != null) {
+                importPoller = new Timeline(new KeyFrame(Duration.seconds(1), event -> pollImportJob()));
+                importPoller.setCycleCount(Animation.INDEFINITE);
+                importPoller.play();
+            }
+        })).exceptionally(ex -> {
+            Platform.runLater(() -> {
+                resetImportButton();
+                showErrorAlert("导入文件失败: " + ex.getMessage());
+            });
+            return null;
+        });
 //        if (selectedFile != null) {
 //            try {
 //                List<String> lines = java.nio.file.Files.readAllLines(selectedFile.toPath(), java.nio.charset.StandardCharsets.UTF_8);
@@ -434,8 +615,8 @@ public class BillingViewController {
                 BillingEntry billingEntry = result.get();
                 billingService.updateEntry(billingEntry.getEntryId(), billingEntry.category.getValue(),billingEntry.productProperty().getValue(), BigDecimal.valueOf(billingEntry.priceProperty().getValue()),
                         billingEntry.timeProperty().getValue(),LocalTime.parse(billingEntry.timeHour.getValue()),billingEntry.remarkProperty().getValue());
-                // 重新加载数据以确保与服务器同步
-                loadBillingData();
+                // 拉取增量以确保与服务器同步
+                syncBillingData();
             } catch (ApiException e) {
                 throw new RuntimeException(e);
             }
@@ -484,8 +665,8 @@ public class BillingViewController {
                     if (response.isSuccess()) {
                         // 从本地列表移除记录
                         billingData.remove(selectedEntry);
-                        // 重新加载数据以确保与服务器同步
-                        loadBillingData();
+                        // 拉取增量以确保与服务器同步
+                        syncBillingData();
 
                         // 提示用户
                         showSuccessAlert("记录已成功删除");
@@ -512,28 +693,50 @@ public class BillingViewController {
 //        deleteSelectedEntries(selectedEntries);
     }
     /**
-     * 加载账单数据
+     * 加载账单数据（第一页，按时间从新到旧）
      */
     public void loadBillingData() {
+        loadPage(null);
+    }
+
+    /**
+     * 追加加载下一页账单
+     */
+    private void loadMoreBillingData() {
+        if (nextCursor != null) {
+            loadPage(nextCursor);
+        }
+    }
+
+    private void loadPage(String cursor) {
+        setLoading(true);
         // 异步加载账单数据
         CompletableFuture.supplyAsync(() -> {
             try {
                 System.out.println("开始从后端加载账单数据");
-                return billingService.getEntries(null, null, null, null);
+                if (cursor == null) {
+                    // 先取得当前的同步位置，之后只拉取增量
+                    BillingChanges position = billingService.getChanges(0, -1);
+                    syncEpoch = position.getEpoch();
+                    syncSequence = position.getSequence();
+                }
+                return billingService.getEntriesPage(null, null, null, null, cursor, PAGE_SIZE, false);
             } catch (ApiException e) {
                 System.out.println("加载账单数据失败: " + e.getMessage());
                 e.printStackTrace();
                 throw new CompletionException(e);
             }
-        }).thenAccept(entries -> {
+        }).thenAccept(page -> {
             Platform.runLater(() -> {
-                System.out.println("加载到 " + entries.size() + " 条账单记录");
-                billingData.clear();
-                for (com.example.software.api.BillingEntry billingEntry : entries) {
-                    BillingEntry bill = new BillingEntry(billingEntry.getCategory(),billingEntry.getProduct(),billingEntry.getPrice().doubleValue(),billingEntry.getDate(),
-                            billingEntry.getTime(),billingEntry.getRemark());
-                    billingData.add(bill);
+                System.out.println("加载到 " + page.getEntries().size() + " 条账单记录");
+                if (cursor == null) {
+                    billingData.clear();
+                    billingTable.setItems(billingData);
+                }
+                for (com.example.software.api.BillingEntry billingEntry : page.getEntries()) {
+                    billingData.add(toViewEntry(billingEntry));
                 }
+                nextCursor = page.isHasMore() ? page.getNextCursor() : null;
                 setLoading(false);
             });
         }).exceptionally(ex -> {
@@ -548,6 +751,60 @@ public class BillingViewController {
             return null;
         });
     }
+
+    /**
+     * 拉取上次同步之后的变更并应用到表格：新增和修改按 entryId 替换或插入，删除的移除。
+     * 服务端要求重置（落后太多或已重启）时重新加载第一页。
+     */
+    private void syncBillingData() {
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return billingService.getChanges(syncEpoch, syncSequence);
+            } catch (ApiException e) {
+                throw new CompletionException(e);
+            }
+        }).thenAccept(changes -> Platform.runLater(() -> {
+            if (changes.isReset()) {
+                loadBillingData();
+                return;
+            }
+            // 本地新增的临时记录还没有 entryId，由服务端返回的记录取代
+            billingData.removeIf(entry -> entry.getEntryId() == null);
+            for (String entryId : changes.getDeleted()) {
+                billingData.removeIf(entry -> entryId.equals(entry.getEntryId()));
+            }
+            for (com.example.software.api.BillingEntry billingEntry : changes.getEntries()) {
+                BillingEntry bill = toViewEntry(billingEntry);
+                int index = indexOfEntry(billingEntry.getEntryId());
+                if (index >= 0) {
+                    billingData.set(index, bill);
+                } else {
+                    billingData.add(0, bill);
+                }
+            }
+            syncSequence = changes.getSequence();
+        })).exceptionally(ex -> {
+            System.out.println("同步账单变更失败: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    private int indexOfEntry(String entryId) {
+        for (int i = 0; i < billingData.size(); i++) {
+            if (entryId.equals(billingData.get(i).getEntryId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private BillingEntry toViewEntry(com.example.software.api.BillingEntry billingEntry) {
+        BillingEntry bill = new BillingEntry(billingEntry.getCategory(),billingEntry.getProduct(),billingEntry.getPrice().doubleValue(),billingEntry.getDate(),
+                billingEntry.getTime(),billingEntry.getRemark());
+        // 使用服务端分配的 entryId，更新和删除都按它定位
+        bill.setEntryId(billingEntry.getEntryId());
+        return bill;
+    }
     private void showSuccessAlert(String message) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("成功");
@@ -570,6 +827,7 @@ public class BillingViewController {
         buildButton.setDisable(loading);
         inquireButton.setDisable(loading);
         deleteButton.setDisable(loading);
+        loadMoreButton.setDisable(loading || nextCursor == null);
     }
     private void deleteSelectedEntries(ObservableList<BillingEntry> selectedEntries) {
         List<BillingEntry> entriesToDelete = new ArrayList<>(selectedEntries);
@@ -703,11 +961,6 @@ public class BillingViewController {
             this.formattedTime.set(formattedDateTime);
 
             this.remark.set(remark);
-            //可能为: date_category_product
-            String entryId = date.getYear() + "-" +
-                    String.format("%02d", date.getMonthValue()) + "-" +
-                    String.format("%02d", date.getDayOfMonth()) + "_" +  category  + "_" + product;
-            this.entryId = URLEncoder.encode(entryId, StandardCharsets.UTF_8);
         }
 
         // getter 和 setter 方法
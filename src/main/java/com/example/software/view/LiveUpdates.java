@@ -0,0 +1,37 @@
+package com.example.software.view;
+
+import com.example.software.api.ApiServiceFactory;
+import com.example.software.api.ChangeEventClient;
+import javafx.application.Platform;
+import javafx.scene.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 视图订阅服务端变更推送的辅助方法
+ *
+ * 收到指定事件（以及重连后的 ready 事件）时在 JavaFX 线程上执行刷新；
+ * 视图节点离开场景（切换到其他页面）后自动取消订阅，不再需要定时轮询。
+ */
+final class LiveUpdates {
+
+    private LiveUpdates() {
+    }
+
+    static void subscribe(Node owner, Runnable refresh, String... events) {
+        ChangeEventClient client = ApiServiceFactory.getInstance().getChangeEventClient();
+        List<Runnable> subscriptions = new ArrayList<>();
+        for (String event : events) {
+            subscriptions.add(client.addListener(event, sequence -> Platform.runLater(refresh)));
+        }
+        subscriptions.add(client.addListener(ChangeEventClient.READY, sequence -> Platform.runLater(refresh)));
+
+        owner.sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (oldScene != null && newScene == null) {
+                subscriptions.forEach(Runnable::run);
+                subscriptions.clear();
+            }
+        });
+    }
+}
@@ -2,11 +2,13 @@ package com.example.software.view;
 
 import com.example.software.api.*;
 import com.example.software.model.SavingPlanModel;
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.math.BigDecimal;
 import java.text.NumberFormat;
@@ -60,15 +62,9 @@ public class SavingViewController {
                     if (Math.abs(newValue.doubleValue() - oldValue.doubleValue()) > 500) {
                         amountLabel.setStyle("-fx-text-fill: #ffe100; -fx-font-weight: bold;");
                         // Reset the style after a short delay
-                        new java.util.Timer().schedule(
-                                new java.util.TimerTask() {
-                                    @Override
-                                    public void run() {
-                                        javafx.application.Platform.runLater(() ->
-                                                amountLabel.setStyle("-fx-text-fill: #5e3c1c; -fx-font-weight: bold;"));
-                                    }
-                                }, 300
-                        );
+                        PauseTransition reset = new PauseTransition(Duration.millis(300));
+                        reset.setOnFinished(e -> amountLabel.setStyle("-fx-text-fill: #5e3c1c; -fx-font-weight: bold;"));
+                        reset.play();
                     }
                 });
 
@@ -84,14 +80,9 @@ public class SavingViewController {
 
             // 每次进入页面时自动显示AI储蓄计划提示
             // 稍微延迟加载，确保UI先渲染完成
-            new java.util.Timer().schedule(
-                    new java.util.TimerTask() {
-                        @Override
-                        public void run() {
-                            javafx.application.Platform.runLater(() -> showSavingPlansAIPrompt());
-                        }
-                    }, 500
-            );
+            PauseTransition promptDelay = new PauseTransition(Duration.millis(500));
+            promptDelay.setOnFinished(e -> showSavingPlansAIPrompt());
+            promptDelay.play();
         } catch (Exception e) {
             System.err.println("Error initializing SavingViewController: " + e.getMessage());
             e.printStackTrace();
@@ -2,7 +2,9 @@ package com.example.software.view;
 
 import com.example.software.api.ApiException;
 import com.example.software.api.ApiServiceFactory;
+import com.example.software.api.ChangeEventClient;
 import com.example.software.api.MockSavingsService;
+import com.example.software.api.SavingPlanChanges;
 import com.example.software.api.SavingsService;
 import com.example.software.model.SavingPlanModel;
 import javafx.beans.property.SimpleStringProperty;
@@ -50,6 +52,10 @@ public class SetViewController {
     // Savings service for API operations
     private SavingsService savingsService;
 
+    // 上次同步到的服务端变更位置
+    private long planSyncEpoch;
+    private long planSyncSequence = -1;
+
     @FXML
     public void initialize() {
         try {
@@ -76,28 +82,12 @@ public class SetViewController {
             // Initialize chart
             initializeChart();
 
-            // 设置自动刷新计划数据的定时器
-            java.util.Timer refreshTimer = new java.util.Timer(true);
-            refreshTimer.schedule(new java.util.TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        // 在JavaFX线程上执行UI更新
-                        javafx.application.Platform.runLater(() -> {
-                            try {
-                                System.out.println("执行定时刷新...");
-                                loadPlansFromService();
-                                planTable.refresh();
-                                initializeChart();
-                            } catch (Exception e) {
-                                System.err.println("定时刷新失败: " + e.getMessage());
-                            }
-                        });
-                    } catch (Exception e) {
-                        System.err.println("刷新计划数据失败: " + e.getMessage());
-                    }
-                }
-            }, 5000, 30000); // 5秒后开始，每30秒刷新一次
+            // 服务端推送计划变更时拉取增量，不再定时轮询
+            LiveUpdates.subscribe(planTable, () -> {
+                syncPlansFromService();
+                planTable.refresh();
+                initializeChart();
+            }, ChangeEventClient.SAVINGS);
 
             // Set up button handlers
             if (addPlanButton != null) {
@@ -127,6 +117,11 @@ public class SetViewController {
      */
     private void loadPlansFromService() {
         try {
+            // 先取得当前的同步位置，之后的定时刷新只拉取增量
+            SavingPlanChanges position = savingsService.getPlanChanges(0, -1);
+            planSyncEpoch = position.getEpoch();
+            planSyncSequence = position.getSequence();
+
             // 清空现有的计划列表
             planItems.clear();
             SavingPlanModel.getInstance().getPlans().clear();
@@ -149,17 +144,7 @@ public class SetViewController {
                         ", 日期=" + apiPlan.getStartDateConverted() +
                         ", 已存金额=" + apiPlan.getSavedAmount());
 
-                SavingPlanModel.SavingPlan uiPlan = new SavingPlanModel.SavingPlan(
-                        apiPlan.getName(),
-                        apiPlan.getStartDateConverted(),
-                        apiPlan.getCycle(),
-                        apiPlan.getCycleTimes(),
-                        apiPlan.getAmount().doubleValue(),
-                        apiPlan.getCurrency() // 使用API中的货币，如需格式化可以加上
-                );
-                // 设置planId和已保存金额
-                uiPlan.setPlanId(apiPlan.getPlanId());
-                uiPlan.setSavedAmount(apiPlan.getSavedAmount().doubleValue());
+                SavingPlanModel.SavingPlan uiPlan = toUiPlan(apiPlan);
 
                 // 添加到模型中
                 SavingPlanModel.getInstance().addPlan(uiPlan);
@@ -182,6 +167,62 @@ public class SetViewController {
         }
     }
 
+    /**
+     * 只拉取上次同步之后新增、修改和删除的计划并应用到列表，服务端要求重置时全量加载
+     */
+    private void syncPlansFromService() {
+        try {
+            SavingPlanChanges changes = savingsService.getPlanChanges(planSyncEpoch, planSyncSequence);
+            if (changes.isReset()) {
+                loadPlansFromService();
+                return;
+            }
+            for (String planId : changes.getDeleted()) {
+                planItems.removeIf(plan -> planId.equals(plan.getPlanId()));
+            }
+            for (com.example.software.api.SavingPlan apiPlan : changes.getPlans()) {
+                SavingPlanModel.SavingPlan uiPlan = toUiPlan(apiPlan);
+                int index = indexOfPlan(apiPlan.getPlanId());
+                if (index >= 0) {
+                    planItems.set(index, uiPlan);
+                } else {
+                    planItems.add(uiPlan);
+                }
+            }
+            planSyncSequence = changes.getSequence();
+            if (!changes.getPlans().isEmpty() || !changes.getDeleted().isEmpty()) {
+                System.out.println("同步了 " + changes.getPlans().size() + " 个计划变更, "
+                        + changes.getDeleted().size() + " 个删除");
+            }
+        } catch (ApiException e) {
+            System.err.println("同步计划变更失败: " + e.getMessage());
+        }
+    }
+
+    private int indexOfPlan(String planId) {
+        for (int i = 0; i < planItems.size(); i++) {
+            if (planId.equals(planItems.get(i).getPlanId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private SavingPlanModel.SavingPlan toUiPlan(com.example.software.api.SavingPlan apiPlan) {
+        SavingPlanModel.SavingPlan uiPlan = new SavingPlanModel.SavingPlan(
+                apiPlan.getName(),
+                apiPlan.getStartDateConverted(),
+                apiPlan.getCycle(),
+                apiPlan.getCycleTimes(),
+                apiPlan.getAmount().doubleValue(),
+                apiPlan.getCurrency() // 使用API中的货币，如需格式化可以加上
+        );
+        // 设置planId和已保存金额
+        uiPlan.setPlanId(apiPlan.getPlanId());
+        uiPlan.setSavedAmount(apiPlan.getSavedAmount().doubleValue());
+        return uiPlan;
+    }
+
     /**
      * Initialize the plan table
      */
@@ -1,6 +1,7 @@
 package com.example.software.view;
 
 import com.example.software.api.ApiServiceFactory;
+import com.example.software.api.ChangeEventClient;
 import com.example.software.model.CategorySummary;
 import com.example.software.model.SummaryResponse;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -99,6 +100,14 @@ public class SummaryViewController {
             // Initialize month selectors
             initializeMonthSelectors();
 
+            // 账单变更后服务端推送 summary 事件，重新获取汇总
+            if (expendPieChart != null) {
+                LiveUpdates.subscribe(expendPieChart, () -> {
+                    updateExpenditureData();
+                    updateIncomeData();
+                }, ChangeEventClient.SUMMARY);
+            }
+
             // Set up initial charts
 //            if (expendPieChart != null && incomePieChart != null) {
 //                updateExpendChart("Custom");
@@ -0,0 +1,149 @@
+package com.example.software.controller;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.repository.BillingEntryStore;
+import com.example.software.repository.BillingJournal;
+import com.example.software.repository.BillingStoreRegistry;
+import com.example.software.security.TokenUserResolver;
+import com.example.software.util.AtomicFileWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 带 If-Match 的更新和删除：版本过期时返回 409，ETag 头和 currentVersion 给出当前版本，
+ * 账单保持不变；客户端用返回的 ETag 重试即可成功
+ */
+class BillingControllerTest {
+
+    private static final String TOKEN = "Bearer test-token";
+
+    @TempDir
+    Path directory;
+
+    private BillingController controller;
+    private BillingEntryStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new BillingEntryStore(new BillingJournal(directory, new AtomicFileWriter(), 1000, false));
+        BillingStoreRegistry registry = mock(BillingStoreRegistry.class);
+        when(registry.forUser("u1")).thenReturn(store);
+        TokenUserResolver resolver = mock(TokenUserResolver.class);
+        when(resolver.resolveUserId(TOKEN)).thenReturn("u1");
+
+        controller = new BillingController();
+        ReflectionTestUtils.setField(controller, "billingStoreRegistry", registry);
+        ReflectionTestUtils.setField(controller, "tokenUserResolver", resolver);
+    }
+
+    @Test
+    void staleIfMatchOnUpdateReturnsConflictWithCurrentETag() throws IOException {
+        BillingEntry entry = addEntry();
+        String original = ETags.of(entry.getVersion());
+        ResponseEntity<?> first = controller.update(TOKEN, original, changes(entry.getEntryId(), "拿铁"));
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        String current = first.getHeaders().getETag();
+        assertNotNull(current);
+
+        for (String stale : new String[] {original, "W/" + original}) {
+            ResponseEntity<?> conflict = controller.update(TOKEN, stale, changes(entry.getEntryId(), "摩卡"));
+            assertEquals(HttpStatus.CONFLICT, conflict.getStatusCode());
+            assertEquals(current, conflict.getHeaders().getETag());
+            assertEquals(ETags.of(version(conflict)), current);
+        }
+        assertEquals("拿铁", store.findById(entry.getEntryId()).getProduct());
+
+        ResponseEntity<?> retry = controller.update(TOKEN, current, changes(entry.getEntryId(), "摩卡"));
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals("摩卡", store.findById(entry.getEntryId()).getProduct());
+    }
+
+    @Test
+    void staleIfMatchOnDeleteReturnsConflictWithCurrentETag() throws IOException {
+        BillingEntry entry = addEntry();
+        String original = ETags.of(entry.getVersion());
+        String current = controller.update(TOKEN, original, changes(entry.getEntryId(), "拿铁"))
+            .getHeaders().getETag();
+
+        ResponseEntity<?> conflict = controller.deleteBillingEntry(TOKEN, original, entry.getEntryId(), null);
+        assertEquals(HttpStatus.CONFLICT, conflict.getStatusCode());
+        assertEquals(current, conflict.getHeaders().getETag());
+        assertNotNull(store.findById(entry.getEntryId()));
+
+        // If-Match 优先于 expectedVersion 参数
+        ResponseEntity<?> deleted = controller.deleteBillingEntry(TOKEN, current, entry.getEntryId(),
+            entry.getVersion());
+        assertEquals(HttpStatus.OK, deleted.getStatusCode());
+        assertNull(store.findById(entry.getEntryId()));
+    }
+
+    @Test
+    void staleExpectedVersionWithoutIfMatchAlsoConflicts() throws IOException {
+        BillingEntry entry = addEntry();
+        Map<String, String> body = changes(entry.getEntryId(), "拿铁");
+        body.put("expectedVersion", Long.toString(entry.getVersion() + 1));
+
+        ResponseEntity<?> conflict = controller.update(TOKEN, null, body);
+        assertEquals(HttpStatus.CONFLICT, conflict.getStatusCode());
+        assertEquals(ETags.of(entry.getVersion()), conflict.getHeaders().getETag());
+    }
+
+    @Test
+    void wildcardIfMatchSkipsVersionCheck() throws IOException {
+        BillingEntry entry = addEntry();
+        controller.update(TOKEN, null, changes(entry.getEntryId(), "拿铁"));
+
+        ResponseEntity<?> response = controller.update(TOKEN, "*", changes(entry.getEntryId(), "摩卡"));
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    @Test
+    void malformedIfMatchIsBadRequest() throws IOException {
+        BillingEntry entry = addEntry();
+
+        ResponseEntity<?> response = controller.update(TOKEN, "\"v1\"", changes(entry.getEntryId(), "拿铁"));
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("咖啡", store.findById(entry.getEntryId()).getProduct());
+    }
+
+    private BillingEntry addEntry() throws IOException {
+        BillingEntry entry = new BillingEntry(null, "餐饮", "咖啡", new BigDecimal("-12.50"),
+            LocalDate.of(2024, 3, 1), LocalTime.of(9, 15), "");
+        store.add(entry);
+        return store.findById(entry.getEntryId());
+    }
+
+    private static Map<String, String> changes(String entryId, String product) {
+        Map<String, String> body = new HashMap<>();
+        body.put("entryId", entryId);
+        body.put("category", "餐饮");
+        body.put("product", product);
+        body.put("price", "-15.00");
+        body.put("date", "2024-03-01");
+        body.put("time", "09:15");
+        body.put("remark", "");
+        return body;
+    }
+
+    private static long version(ResponseEntity<?> conflict) {
+        return (Long) ((Map<?, ?>) conflict.getBody()).get("currentVersion");
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.api.BillingEntryPage;
+import com.example.software.util.AtomicFileWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 键集分页：大量 (日期, 时间) 相同的账单按 entryId 区分先后，逐页读取时不重不漏，
+ * 页边界落在相同时间的账单中间也一样；游标就是 Base64 编码的 "epochDay:分钟:entryId"，无效游标被拒绝
+ */
+class BillingEntryStoreTest {
+
+    private static final int PAGE_SIZE = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void walksEveryEntryOnceInBothDirections() throws IOException {
+        BillingEntryStore store = openWithEntries();
+        List<String> expected = sortedIds(store);
+
+        assertEquals(expected, walk(store, true, null));
+        List<String> descending = new ArrayList<>(expected);
+        Collections.reverse(descending);
+        assertEquals(descending, walk(store, false, null));
+        store.close();
+    }
+
+    @Test
+    void keywordSearchPagesInTheSameOrder() throws IOException {
+        BillingEntryStore store = openWithEntries();
+        List<String> expected = new ArrayList<>();
+        for (String entryId : sortedIds(store)) {
+            if (store.findById(entryId).getProduct().equals("咖啡")) {
+                expected.add(entryId);
+            }
+        }
+
+        assertEquals(expected, walk(store, true, "咖啡"));
+        Collections.reverse(expected);
+        assertEquals(expected, walk(store, false, "咖啡"));
+        store.close();
+    }
+
+    @Test
+    void cursorIsTheLastSortKeyOfThePage() throws IOException {
+        BillingEntryStore store = openWithEntries();
+        BillingEntryPage first = store.queryPage(null, null, null, null, true, null, PAGE_SIZE);
+        BillingEntry last = first.getEntries().get(PAGE_SIZE - 1);
+
+        String cursor = cursor(last.getDate().toEpochDay(), 12 * 60 + 30, last.getEntryId());
+        assertEquals(cursor, first.getNextCursor());
+        BillingEntryPage second = store.queryPage(null, null, null, null, true, cursor, PAGE_SIZE);
+        assertEquals(ids(second.getEntries()),
+            ids(store.queryPage(null, null, null, null, true, first.getNextCursor(), PAGE_SIZE).getEntries()));
+        store.close();
+    }
+
+    @Test
+    void rejectsInvalidCursor() throws IOException {
+        BillingEntryStore store = openWithEntries();
+        long day = LocalDate.of(2024, 3, 1).toEpochDay();
+        for (String cursor : List.of("不是游标", encode("abc"), encode(day + ":720"), cursor(day, 720, ""),
+                cursor(day, 24 * 60, "1"), cursor(day, -2, "1"),
+                cursor(BillingLedger.MAX_DAY + 1L, 720, "1"), cursor(BillingLedger.MIN_DAY - 1L, 720, "1"))) {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> store.queryPage(null, null, null, null, true, cursor, PAGE_SIZE));
+            assertTrue(error.getMessage().startsWith("无效的分页游标"), error.getMessage());
+        }
+        // 没有日期的账单游标也合法
+        store.queryPage(null, null, null, null, true, cursor(BillingLedger.NO_DATE, -1, "1"), PAGE_SIZE);
+        store.close();
+    }
+
+    @Test
+    void lastPageHasNoCursor() throws IOException {
+        BillingEntryStore store = openWithEntries();
+        BillingEntryPage all = store.queryPage(null, null, null, null, true, null, 1000);
+        assertEquals(sortedIds(store), ids(all.getEntries()));
+        assertFalse(all.isHasMore());
+        assertNull(all.getNextCursor());
+        store.close();
+    }
+
+    // 三天的账单时间全都相同，按写入顺序交错日期；另有两条没有日期的
+    private BillingEntryStore openWithEntries() throws IOException {
+        BillingEntryStore store = new BillingEntryStore(
+            new BillingJournal(directory, new AtomicFileWriter(), 1000, false));
+        List<BillingEntry> batch = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            batch.add(new BillingEntry(null, "餐饮", i % 3 == 0 ? "咖啡" : "午饭", new BigDecimal("-12.50"),
+                LocalDate.of(2024, 3, 1).plusDays(i % 3 * 20), LocalTime.of(12, 30), ""));
+        }
+        store.addAll(batch.subList(0, 15));
+        for (int i = 0; i < 2; i++) {
+            BillingEntry undated = new BillingEntry();
+            undated.setProduct("咖啡");
+            store.add(undated);
+        }
+        store.addAll(batch.subList(15, 30));
+        return store;
+    }
+
+    private static List<String> walk(BillingEntryStore store, boolean ascending, String keyword) {
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        do {
+            BillingEntryPage page = store.queryPage(null, null, null, keyword, ascending, cursor, PAGE_SIZE);
+            assertTrue(page.getEntries().size() <= PAGE_SIZE);
+            assertEquals(page.isHasMore(), page.getNextCursor() != null);
+            seen.addAll(ids(page.getEntries()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return seen;
+    }
+
+    // 与存储相同的排序：没有日期、时间的在前，entryId 都是等长数字
+    private static List<String> sortedIds(BillingEntryStore store) {
+        List<BillingEntry> entries = new ArrayList<>(store.findAll());
+        entries.sort(Comparator.comparing(BillingEntry::getDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(BillingEntry::getTime, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(BillingEntry::getEntryId));
+        return ids(entries);
+    }
+
+    private static List<String> ids(List<BillingEntry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (BillingEntry entry : entries) {
+            ids.add(entry.getEntryId());
+        }
+        return ids;
+    }
+
+    private static String cursor(long day, int minute, String entryId) {
+        return encode(day + ":" + minute + ":" + entryId);
+    }
+
+    private static String encode(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
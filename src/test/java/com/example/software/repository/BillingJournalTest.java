@@ -0,0 +1,107 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.util.AtomicFileWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 写入中途崩溃后重新打开日志：尾部不完整或校验失败的记录被丢弃并截断，之前的完整记录全部重放，
+ * 之后的写入接在截断位置之后
+ */
+class BillingJournalTest {
+
+    // [int 数据长度][int CRC32][byte 操作类型]
+    private static final int HEADER_SIZE = 9;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void dropsRecordWithTornBody() throws IOException {
+        long complete = writeThenTearLastRecord();
+        truncate(complete + HEADER_SIZE + 3);
+        assertRecovered(complete);
+    }
+
+    @Test
+    void dropsRecordWithTornHeader() throws IOException {
+        long complete = writeThenTearLastRecord();
+        truncate(complete + 5);
+        assertRecovered(complete);
+    }
+
+    @Test
+    void dropsRecordWithBadChecksum() throws IOException {
+        long complete = writeThenTearLastRecord();
+        long size = Files.size(journalFile());
+        try (FileChannel channel = FileChannel.open(journalFile(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'#'}), size - 2);
+        }
+        assertRecovered(complete);
+    }
+
+    // 写入三条完整记录和最后一条待破坏的记录，返回完整记录的总字节数
+    private long writeThenTearLastRecord() throws IOException {
+        BillingJournal journal = open();
+        journal.putAll(List.of(entry("1", "咖啡"), entry("2", "地铁")));
+        journal.delete("1");
+        long complete = Files.size(journalFile());
+        journal.put(entry("3", "午饭"));
+        journal.close();
+        return complete;
+    }
+
+    private void assertRecovered(long complete) throws IOException {
+        BillingJournal journal = open();
+        assertEquals(List.of("put 1 咖啡", "put 2 地铁", "delete 1"), replay(journal));
+        assertEquals(complete, Files.size(journalFile()));
+
+        journal.put(entry("4", "电影票"));
+        journal.close();
+
+        journal = open();
+        assertEquals(List.of("put 1 咖啡", "put 2 地铁", "delete 1", "put 4 电影票"), replay(journal));
+        journal.close();
+    }
+
+    private BillingJournal open() {
+        return new BillingJournal(directory, new AtomicFileWriter(), 1000, false);
+    }
+
+    private static List<String> replay(BillingJournal journal) throws IOException {
+        List<String> records = new ArrayList<>();
+        journal.replay(entry -> records.add("put " + entry.getEntryId() + " " + entry.getProduct()),
+            entryId -> records.add("delete " + entryId));
+        return records;
+    }
+
+    private void truncate(long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile(), StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private Path journalFile() {
+        return directory.resolve("billing.journal");
+    }
+
+    private static BillingEntry entry(String entryId, String product) {
+        return new BillingEntry(entryId, "餐饮", product, new BigDecimal("12.50"),
+            LocalDate.of(2024, 3, 1), LocalTime.of(12, 30), "");
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 列式账单表：行内容原样还原（含非数字 ID 和空字段），金额按分精确保存，
+ * compact 之后行号重排、字典只保留仍被引用的值，appendAll 按本表字典重新编码
+ */
+class BillingLedgerTest {
+
+    @Test
+    void materializesWhatWasAppended() {
+        BillingLedger ledger = new BillingLedger();
+        BillingEntry full = entry("1718000000000", "餐饮", "咖啡", "12.50", "备注");
+        BillingEntry irregular = entry("legacy-7", "交通", "地铁", "-3.00", "");
+        BillingEntry sparse = new BillingEntry();
+        sparse.setEntryId("0042");
+
+        int first = ledger.append(full);
+        int second = ledger.append(irregular);
+        int third = ledger.append(sparse);
+        ledger.setVersion(second, 5);
+
+        assertEquals(describe(full), describe(ledger.materialize(first)));
+        assertEquals(describe(irregular), describe(ledger.materialize(second)));
+        assertEquals(Long.valueOf(5), ledger.materialize(second).getVersion());
+        // 前导零的数字 ID 不能按 long 保存，否则读回时会丢掉零
+        assertEquals("0042", ledger.entryId(third));
+        assertEquals(describe(sparse), describe(ledger.materialize(third)));
+        assertEquals(BillingLedger.NO_AMOUNT, ledger.amount(third));
+        assertEquals(BillingLedger.NO_DATE, ledger.epochDay(third));
+    }
+
+    @Test
+    void setOverwritesRowAndReplacesIrregularId() {
+        BillingLedger ledger = new BillingLedger();
+        int row = ledger.append(entry("legacy-1", "餐饮", "午饭", "20", ""));
+        BillingEntry replacement = entry("99", "购物", "雨伞", "-45.90", "");
+
+        ledger.set(row, replacement);
+        assertEquals(describe(replacement), describe(ledger.materialize(row)));
+    }
+
+    @Test
+    void storesAmountsExactlyInCents() {
+        assertEquals(150L, BillingLedger.toCents(new BigDecimal("1.500")));
+        assertEquals(-1L, BillingLedger.toCents(new BigDecimal("-0.01")));
+        assertEquals(1200L, BillingLedger.toCents(new BigDecimal("1.2E+1")));
+        assertThrows(ArithmeticException.class, () -> BillingLedger.toCents(new BigDecimal("1.005")));
+        assertThrows(ArithmeticException.class, () -> BillingLedger.toCents(new BigDecimal("1E+17")));
+        // 正好等于 NO_AMOUNT 的金额会被读成“没有金额”
+        assertThrows(ArithmeticException.class,
+            () -> BillingLedger.toCents(BigDecimal.valueOf(Long.MIN_VALUE, 2)));
+    }
+
+    @Test
+    void checkAmountRejectsWhatCannotBeStored() {
+        BillingLedger.checkAmount(null);
+        BillingLedger.checkAmount(new BigDecimal("99999999999.99"));
+        IllegalArgumentException precision = assertThrows(IllegalArgumentException.class,
+            () -> BillingLedger.checkAmount(new BigDecimal("1.005")));
+        assertTrue(precision.getMessage().startsWith("金额最多两位小数"), precision.getMessage());
+        IllegalArgumentException range = assertThrows(IllegalArgumentException.class,
+            () -> BillingLedger.checkAmount(new BigDecimal("1E+17")));
+        assertTrue(range.getMessage().startsWith("金额超出范围"), range.getMessage());
+    }
+
+    @Test
+    void storedCentsRoundsAndSaturatesLegacyAmounts() {
+        assertEquals(101L, BillingLedger.storedCents(new BigDecimal("1.005")));
+        assertEquals(Long.MAX_VALUE, BillingLedger.storedCents(new BigDecimal("1E+30")));
+        assertEquals(-Long.MAX_VALUE, BillingLedger.storedCents(new BigDecimal("-1E+30")));
+        assertEquals(-Long.MAX_VALUE, BillingLedger.storedCents(BigDecimal.valueOf(Long.MIN_VALUE, 2)));
+    }
+
+    @Test
+    void compactRemapsRowsAndRebuildsDictionaries() {
+        BillingLedger ledger = new BillingLedger();
+        List<BillingEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            BillingEntry entry = entry(i % 2 == 0 ? Integer.toString(i) : "legacy-" + i,
+                "类别" + i, "产品" + i, i + ".25", "备注" + i);
+            entries.add(entry);
+            ledger.append(entry);
+        }
+        ledger.delete(0);
+        ledger.delete(3);
+        ledger.delete(4);
+        assertEquals(12, ledger.textCount());
+
+        int[] remap = ledger.compact();
+        assertArrayEquals(new int[] {-1, 0, 1, -1, -1, 2}, remap);
+        assertEquals(3, ledger.rowCount());
+        assertEquals(3, ledger.liveCount());
+        for (int old = 0; old < remap.length; old++) {
+            if (remap[old] >= 0) {
+                assertEquals(describe(entries.get(old)), describe(ledger.materialize(remap[old])));
+            }
+        }
+        // 已删除行的产品和备注不再占用字典
+        assertEquals(6, ledger.textCount());
+        assertEquals(-1, ledger.findCategoryCode("类别0"));
+        assertTrue(ledger.findCategoryCode("类别5") >= 0);
+    }
+
+    @Test
+    void appendAllCopiesLiveRowsWithLocalCodes() {
+        BillingLedger target = new BillingLedger();
+        target.append(entry("1", "餐饮", "咖啡", "10", ""));
+        BillingLedger source = new BillingLedger();
+        source.append(entry("2", "交通", "地铁", "3", ""));
+        int deleted = source.append(entry("3", "餐饮", "午饭", "20", ""));
+        source.append(entry("legacy-4", "餐饮", "咖啡", "12", "续杯"));
+        source.delete(deleted);
+
+        target.appendAll(source);
+        assertEquals(3, target.liveCount());
+        assertEquals(describe(entry("2", "交通", "地铁", "3", "")), describe(target.materialize(1)));
+        assertEquals(describe(entry("legacy-4", "餐饮", "咖啡", "12", "续杯")), describe(target.materialize(2)));
+        assertEquals(target.categoryCode(0), target.categoryCode(2));
+        assertEquals(target.productCode(0), target.productCode(2));
+        assertFalse(target.isLive(3));
+    }
+
+    @Test
+    void groupsRowsByMonth() {
+        BillingLedger ledger = new BillingLedger();
+        ledger.append(entry("1", "餐饮", "咖啡", "10", ""));
+        BillingEntry undated = new BillingEntry();
+        undated.setEntryId("2");
+        ledger.append(undated);
+        BillingEntry april = entry("3", "餐饮", "午饭", "20", "");
+        april.setDate(LocalDate.of(2024, 4, 30));
+        ledger.append(april);
+
+        assertEquals(List.of("2024-03", "2024-04", "undated"), new ArrayList<>(ledger.rowsBySegment().keySet()));
+        assertArrayEquals(new int[] {1}, ledger.rowsBySegment().get("undated"));
+    }
+
+    static BillingEntry entry(String entryId, String category, String product, String price, String remark) {
+        return new BillingEntry(entryId, category, product, new BigDecimal(price),
+            LocalDate.of(2024, 3, 1), LocalTime.of(12, 30), remark);
+    }
+
+    // BillingEntry 没有 equals，按字段比较；金额按数值比较，不区分 12.5 和 12.50
+    static String describe(BillingEntry entry) {
+        return entry.getEntryId() + "|" + entry.getCategory() + "|" + entry.getProduct() + "|"
+            + (entry.getPrice() == null ? null : entry.getPrice().stripTrailingZeros().toPlainString()) + "|"
+            + entry.getDate() + "|" + entry.getTime() + "|" + entry.getRemark();
+    }
+}
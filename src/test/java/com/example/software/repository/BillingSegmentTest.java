@@ -0,0 +1,123 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static com.example.software.repository.BillingLedgerTest.describe;
+import static com.example.software.repository.BillingLedgerTest.entry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 账单段文件：写出的行原样读回，文件被截断、改写或头部不符时读取失败，
+ * 尾部（footer）被改动时由 CRC 拒绝，CRC 同步更新后由行数核对拒绝
+ */
+class BillingSegmentTest {
+
+    // [int 魔数][int 版本][int 数据长度][int 尾部长度][int CRC32]
+    private static final int HEADER_SIZE = 20;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackSelectedRows() throws IOException {
+        BillingLedger ledger = ledger();
+        Path file = write(ledger, new int[] {0, 2, 3});
+
+        BillingLedger read = BillingSegment.read(file);
+        assertEquals(3, read.liveCount());
+        assertEquals(describe(ledger.materialize(0)), describe(read.materialize(0)));
+        assertEquals(describe(ledger.materialize(2)), describe(read.materialize(1)));
+        assertEquals(describe(ledger.materialize(3)), describe(read.materialize(2)));
+        // 段内字典只包含写出的行用到的值
+        assertEquals(-1, read.findCategoryCode("交通"));
+    }
+
+    @Test
+    void readsEmptySegment() throws IOException {
+        assertEquals(0, BillingSegment.read(write(ledger(), new int[0])).liveCount());
+    }
+
+    @Test
+    void rejectsChangedFooter() throws IOException {
+        Path file = write(ledger(), new int[] {0, 2, 3});
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertFailure(file, "账单段校验失败");
+    }
+
+    @Test
+    void rejectsFooterRowCountThatDisagreesWithData() throws IOException {
+        Path file = write(ledger(), new int[] {0, 2, 3});
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        int dataLength = bytes.getInt(8);
+        // 尾部依次为最早日期、最晚日期、行数；改写行数后重新计算 CRC，只剩行数核对能发现
+        bytes.putInt(HEADER_SIZE + dataLength + 8, 2);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.array(), HEADER_SIZE, bytes.capacity() - HEADER_SIZE);
+        bytes.putInt(16, (int) crc.getValue());
+        Files.write(file, bytes.array());
+
+        assertFailure(file, "账单段行数与尾部记录不符");
+    }
+
+    @Test
+    void rejectsChangedData() throws IOException {
+        Path file = write(ledger(), new int[] {0, 1});
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[HEADER_SIZE + 4] ^= 1;
+        Files.write(file, bytes);
+
+        assertFailure(file, "账单段校验失败");
+    }
+
+    @Test
+    void rejectsWrongHeaderOrLength() throws IOException {
+        byte[] valid = Files.readAllBytes(write(ledger(), new int[] {0, 1}));
+
+        byte[] magic = valid.clone();
+        magic[0] = 'X';
+        assertFailure(Files.write(directory.resolve("magic.seg"), magic), "不是账单段文件");
+
+        byte[] version = valid.clone();
+        version[7] = 9;
+        assertFailure(Files.write(directory.resolve("version.seg"), version), "不支持的账单段版本");
+
+        assertFailure(Files.write(directory.resolve("torn.seg"), Arrays.copyOf(valid, valid.length - 1)),
+            "账单段长度不符");
+        assertFailure(Files.write(directory.resolve("header.seg"), Arrays.copyOf(valid, HEADER_SIZE - 1)),
+            "账单段文件不完整");
+    }
+
+    private static BillingLedger ledger() {
+        BillingLedger ledger = new BillingLedger();
+        ledger.append(entry("1", "餐饮", "咖啡", "-12.50", ""));
+        ledger.append(entry("legacy-2", "交通", "地铁", "-3", "早高峰"));
+        ledger.append(entry("3", "工资", "三月工资", "8000", ""));
+        BillingEntry sparse = new BillingEntry();
+        sparse.setEntryId("4");
+        ledger.append(sparse);
+        return ledger;
+    }
+
+    private Path write(BillingLedger ledger, int[] rows) throws IOException {
+        return Files.write(directory.resolve("2024-03" + BillingSegment.EXTENSION), BillingSegment.encode(ledger, rows));
+    }
+
+    private static void assertFailure(Path file, String message) {
+        IOException error = assertThrows(IOException.class, () -> BillingSegment.read(file));
+        assertTrue(error.getMessage().startsWith(message), error.getMessage());
+    }
+}
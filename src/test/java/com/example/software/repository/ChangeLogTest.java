@@ -0,0 +1,112 @@
+package com.example.software.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 增量同步的变更表：每个 ID 只返回最近一次变更，删除以墓碑返回；
+ * 落后于下限、epoch 不一致或序号超前的客户端得到 reset
+ */
+class ChangeLogTest {
+
+    @Test
+    void returnsChangesAfterSinceInOrder() {
+        ChangeLog log = new ChangeLog(10);
+        log.record("a", false);
+        long since = log.record("b", false);
+        log.record("c", false);
+        log.record("d", false);
+
+        ChangeLog.Delta delta = log.since(log.getEpoch(), since);
+        assertFalse(delta.isReset());
+        assertEquals(4, delta.getSequence());
+        assertEquals(List.of("c", "d"), delta.getUpdated());
+        assertEquals(List.of(), delta.getDeleted());
+
+        ChangeLog.Delta upToDate = log.since(log.getEpoch(), 4);
+        assertFalse(upToDate.isReset());
+        assertEquals(List.of(), upToDate.getUpdated());
+    }
+
+    @Test
+    void keepsOnlyLatestChangePerId() {
+        ChangeLog log = new ChangeLog(10);
+        log.record("a", false);
+        log.record("b", false);
+        log.record("a", false);
+
+        // 再次修改的 ID 移到末尾，只出现一次
+        assertEquals(List.of("b", "a"), log.since(log.getEpoch(), 0).getUpdated());
+    }
+
+    @Test
+    void returnsDeletedIdsAsTombstones() {
+        ChangeLog log = new ChangeLog(10);
+        log.record("a", false);
+        log.record("b", false);
+        long since = log.getSequence();
+        log.record("a", true);
+        log.record("c", false);
+        log.record("c", true);
+
+        ChangeLog.Delta delta = log.since(log.getEpoch(), since);
+        assertEquals(List.of(), delta.getUpdated());
+        assertEquals(List.of("a", "c"), delta.getDeleted());
+
+        // 删除后重新出现的 ID 不再是墓碑
+        log.record("a", false);
+        delta = log.since(log.getEpoch(), since);
+        assertEquals(List.of("a"), delta.getUpdated());
+        assertEquals(List.of("c"), delta.getDeleted());
+    }
+
+    @Test
+    void resetsClientsBehindTheFloor() {
+        ChangeLog log = new ChangeLog(3);
+        for (String id : List.of("a", "b", "c", "d", "e")) {
+            log.record(id, false);
+        }
+
+        // 序号 1、2 已被丢弃，下限为 2：since 为 2 的客户端仍能拿到完整的增量
+        ChangeLog.Delta atFloor = log.since(log.getEpoch(), 2);
+        assertFalse(atFloor.isReset());
+        assertEquals(List.of("c", "d", "e"), atFloor.getUpdated());
+
+        ChangeLog.Delta belowFloor = log.since(log.getEpoch(), 1);
+        assertTrue(belowFloor.isReset());
+        assertEquals(5, belowFloor.getSequence());
+        assertEquals(List.of(), belowFloor.getUpdated());
+        assertEquals(List.of(), belowFloor.getDeleted());
+    }
+
+    @Test
+    void evictedTombstonesRaiseTheFloor() {
+        ChangeLog log = new ChangeLog(2);
+        log.record("a", false);
+        log.record("a", true);
+        log.record("b", false);
+        log.record("c", false);
+
+        // 墓碑 a（序号 2）被挤出后，since 为 1 的客户端会漏掉这次删除，必须全量重新加载
+        assertTrue(log.since(log.getEpoch(), 1).isReset());
+        assertFalse(log.since(log.getEpoch(), 2).isReset());
+    }
+
+    @Test
+    void resetsOnEpochMismatchOrFutureSequence() {
+        ChangeLog log = new ChangeLog(10);
+        log.record("a", false);
+
+        ChangeLog.Delta otherEpoch = log.since(log.getEpoch() - 1, 0);
+        assertTrue(otherEpoch.isReset());
+        assertEquals(log.getEpoch(), otherEpoch.getEpoch());
+        assertEquals(1, otherEpoch.getSequence());
+
+        assertTrue(log.since(log.getEpoch(), 2).isReset());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.software.repository;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.util.AtomicFileWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 导入去重：已有 n 条相同账单时文件中前 n 条判为重复；同一文件内本来相同的交易第一次导入时都保留；
+ * 创建之后新增的账单不算重复来源；比较前文本按规则规范化，不比较类别
+ */
+class DuplicateFilterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keepsIdenticalRowsWithinFirstImport() throws IOException {
+        BillingEntryStore store = open();
+        DuplicateFilter filter = store.newDuplicateFilter();
+
+        assertEquals(List.of(false, false), check(filter, entry("咖啡", "12.50"), entry("咖啡", "12.50")));
+        store.close();
+    }
+
+    @Test
+    void countsMatchesAgainstStoredRows() throws IOException {
+        BillingEntryStore store = open();
+        store.addAll(List.of(entry("咖啡", "12.50"), entry("咖啡", "12.50"), entry("地铁", "3")));
+
+        // 重新导入同一个文件时全部重复
+        assertEquals(List.of(true, true, true),
+            check(store.newDuplicateFilter(), entry("咖啡", "12.50"), entry("地铁", "3"), entry("咖啡", "12.50")));
+        // 文件中多出来的相同记录照常导入
+        assertEquals(List.of(true, true, false, true, false, false),
+            check(store.newDuplicateFilter(), entry("咖啡", "12.50"), entry("咖啡", "12.50"),
+                entry("咖啡", "12.50"), entry("地铁", "3"), entry("地铁", "3"), entry("午饭", "25")));
+        store.close();
+    }
+
+    @Test
+    void ignoresRowsAddedAfterCreation() throws IOException {
+        BillingEntryStore store = open();
+        store.add(entry("咖啡", "12.50"));
+        DuplicateFilter filter = store.newDuplicateFilter();
+
+        // 导入按批提交：前一批写入的账单不能让后一批中相同的记录变成重复
+        assertTrue(filter.isDuplicate(entry("咖啡", "12.50")));
+        store.addAll(List.of(entry("咖啡", "12.50"), entry("地铁", "3")));
+        assertEquals(List.of(false, false), check(filter, entry("咖啡", "12.50"), entry("地铁", "3")));
+        store.close();
+    }
+
+    @Test
+    void ignoresDeletedRows() throws IOException {
+        BillingEntryStore store = open();
+        BillingEntry stored = entry("咖啡", "12.50");
+        store.add(stored);
+        store.remove(stored.getEntryId());
+
+        assertFalse(store.newDuplicateFilter().isDuplicate(entry("咖啡", "12.50")));
+        store.close();
+    }
+
+    @Test
+    void comparesNormalizedContentWithoutCategory() throws IOException {
+        BillingEntryStore store = open();
+        BillingEntry stored = entry("Coffee  Shop", "12.5");
+        stored.setRemark("Coffee Shop");
+        store.add(stored);
+
+        BillingEntry same = entry("  coffee\tSHOP ", "12.50");
+        same.setCategory("购物");
+        same.setRemark("");
+        assertTrue(store.newDuplicateFilter().isDuplicate(same));
+
+        BillingEntry otherRemark = entry("Coffee Shop", "12.50");
+        otherRemark.setRemark("续杯");
+        BillingEntry otherMinute = entry("Coffee Shop", "12.50");
+        otherMinute.setTime(LocalTime.of(9, 16));
+        BillingEntry otherDay = entry("Coffee Shop", "12.50");
+        otherDay.setDate(LocalDate.of(2024, 3, 2));
+        assertEquals(List.of(false, false, false, false),
+            check(store.newDuplicateFilter(), otherRemark, otherMinute, otherDay, entry("Coffee Shop", "12.51")));
+        store.close();
+    }
+
+    private BillingEntryStore open() {
+        return new BillingEntryStore(new BillingJournal(directory, new AtomicFileWriter(), 1000, false));
+    }
+
+    private static List<Boolean> check(DuplicateFilter filter, BillingEntry... entries) {
+        List<Boolean> duplicates = new ArrayList<>();
+        for (BillingEntry entry : entries) {
+            duplicates.add(filter.isDuplicate(entry));
+        }
+        return duplicates;
+    }
+
+    private static BillingEntry entry(String product, String price) {
+        return new BillingEntry(null, "餐饮", product, new BigDecimal(price),
+            LocalDate.of(2024, 3, 1), LocalTime.of(9, 15), "");
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.software.repository;
+
+import com.example.software.model.SavingsPlan;
+import com.example.software.model.User;
+import com.example.software.util.AtomicFileWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 组提交的落盘时机与 DataChangedEvent 的发布：sync 写入返回时已落盘，关闭时写出剩余变更，
+ * 事件在包含对应变更的写入完成后才发布，并发写入下不丢失
+ */
+class FileBasedSavingsPlanRepositoryTest {
+
+    // 足够长，测试期间后台线程不会自行 flush
+    private static final long FLUSH_INTERVAL = 60_000;
+
+    @TempDir
+    Path directory;
+
+    private final Queue<DataChangedEvent> events = new ConcurrentLinkedQueue<>();
+
+    @Test
+    void syncSaveIsOnDiskWhenItReturns() {
+        FileBasedSavingsPlanRepository repository = open(new AtomicFileWriter());
+        repository.save(plan("p1", "u1"), true);
+
+        assertTrue(reopenAndFind("p1"));
+        repository.close();
+    }
+
+    @Test
+    void closeFlushesPendingChanges() {
+        FileBasedSavingsPlanRepository repository = open(new AtomicFileWriter());
+        repository.save(plan("p1", "u1"));
+        assertFalse(reopenAndFind("p1"));
+
+        repository.close();
+        assertTrue(reopenAndFind("p1"));
+    }
+
+    @Test
+    void flushWaitsForWriteInProgress() throws Exception {
+        BlockingWriter writer = new BlockingWriter();
+        FileBasedSavingsPlanRepository repository = open(writer);
+        repository.save(plan("p1", "u1"));
+
+        // 后台 flush 已清零计数、正在写文件时，sync 调用方的 flush 必须等这次写入结束
+        writer.blockNextWrite();
+        CompletableFuture<Void> background = CompletableFuture.runAsync(repository::flush);
+        CompletableFuture<Void> sync;
+        try {
+            writer.awaitBlocked();
+            sync = CompletableFuture.runAsync(repository::flush);
+            Thread.sleep(200);
+            assertFalse(sync.isDone());
+        } finally {
+            writer.release();
+        }
+        background.get(5, TimeUnit.SECONDS);
+        sync.get(5, TimeUnit.SECONDS);
+        assertTrue(reopenAndFind("p1"));
+        repository.close();
+    }
+
+    @Test
+    void publishesEventOnlyAfterWrite() {
+        FileBasedSavingsPlanRepository repository = open(new AtomicFileWriter());
+        repository.save(plan("p1", "u1"));
+        repository.save(plan("p2", "u1"));
+        assertTrue(events.isEmpty());
+
+        repository.flush();
+        assertEquals(List.of("u1:2"), published());
+        repository.close();
+    }
+
+    @Test
+    void saveDuringFlushIsPublishedByNextFlush() throws Exception {
+        BlockingWriter writer = new BlockingWriter();
+        FileBasedSavingsPlanRepository repository = open(writer);
+        repository.save(plan("p1", "u1"));
+
+        writer.blockNextWrite();
+        CompletableFuture<Void> background = CompletableFuture.runAsync(repository::flush);
+        try {
+            writer.awaitBlocked();
+            repository.save(plan("p2", "u1"));
+        } finally {
+            writer.release();
+        }
+        background.get(5, TimeUnit.SECONDS);
+
+        repository.flush();
+        assertEquals(List.of("u1:1", "u1:2"), published());
+        repository.close();
+    }
+
+    @Test
+    void noEventLostWhenSavesInterleaveWithFlushes() throws Exception {
+        FileBasedSavingsPlanRepository repository = open(new AtomicFileWriter());
+        int users = 4;
+        int savesPerUser = 300;
+        AtomicBoolean saving = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread flusher = new Thread(() -> {
+            while (saving.get()) {
+                repository.flush();
+            }
+        });
+        flusher.start();
+        List<Thread> writers = new ArrayList<>();
+        for (int u = 0; u < users; u++) {
+            String userId = "u" + u;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < savesPerUser; i++) {
+                    repository.save(plan(userId + "-" + (i % 10), userId));
+                }
+            });
+            thread.setUncaughtExceptionHandler((t, e) -> failure.set(e));
+            writers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        saving.set(false);
+        flusher.join();
+        assertNull(failure.get());
+
+        // 之后的一次定时 flush 必须发布每个用户的最新序号
+        repository.flush();
+        Map<String, Long> latest = new HashMap<>();
+        for (DataChangedEvent event : events) {
+            latest.merge(event.getUserId(), event.getSequence(), Math::max);
+        }
+        for (int u = 0; u < users; u++) {
+            assertEquals(Long.valueOf(savesPerUser), latest.get("u" + u));
+        }
+        repository.close();
+    }
+
+    private FileBasedSavingsPlanRepository open(AtomicFileWriter writer) {
+        return new FileBasedSavingsPlanRepository(directory, writer, event -> events.add((DataChangedEvent) event),
+            FLUSH_INTERVAL, 50);
+    }
+
+    private boolean reopenAndFind(String planId) {
+        FileBasedSavingsPlanRepository reopened = new FileBasedSavingsPlanRepository(directory,
+            new AtomicFileWriter(), event -> { }, FLUSH_INTERVAL, 50);
+        boolean found = reopened.findById(planId).isPresent();
+        reopened.close();
+        return found;
+    }
+
+    private List<String> published() {
+        List<String> published = new ArrayList<>();
+        for (DataChangedEvent event : events) {
+            published.add(event.getUserId() + ":" + event.getSequence());
+        }
+        return published;
+    }
+
+    // planId 事先给定，避免 save 打印新建计划的详情
+    private static SavingsPlan plan(String planId, String userId) {
+        SavingsPlan plan = new SavingsPlan();
+        plan.setPlanId(planId);
+        plan.setName(planId);
+        User user = new User();
+        user.setUserId(userId);
+        plan.setUser(user);
+        return plan;
+    }
+
+    /**
+     * 可以让下一次写入停在真正写文件之前，模拟进行中的写入
+     */
+    private static final class BlockingWriter extends AtomicFileWriter {
+        private volatile CountDownLatch gate;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+
+        void blockNextWrite() {
+            gate = new CountDownLatch(1);
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        public void write(Path target, ContentSupplier content) throws IOException {
+            CountDownLatch current = gate;
+            if (current != null && blocked.getCount() > 0) {
+                blocked.countDown();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.write(target, content);
+        }
+    }
+}
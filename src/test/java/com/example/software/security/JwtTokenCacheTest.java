@@ -0,0 +1,130 @@
+package com.example.software.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * 令牌缓存：命中时不再加载用户，按用户失效后重新加载，加载期间发生的失效不会被缓存覆盖；
+ * 超过容量时先清理过期条目，再成批淘汰最早过期的条目
+ */
+class JwtTokenCacheTest {
+
+    private static final long HOUR = 3_600_000;
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private Runnable onLoad = () -> { };
+
+    @Test
+    void cachesUntilUserIsInvalidated() {
+        JwtTokenCache cache = cache(10);
+        String token = token("alice", HOUR);
+
+        assertNotNull(cache.authenticate(token));
+        assertNotNull(cache.authenticate(token));
+        assertEquals(1, loads.get());
+
+        cache.invalidateUser("alice");
+        assertNotNull(cache.authenticate(token));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationDuringLoadIsNotCached() {
+        JwtTokenCache cache = cache(10);
+        String token = token("alice", HOUR);
+        String other = token("bob", HOUR);
+        // 加载用户之后、写入缓存之前，用户修改了密码
+        onLoad = () -> {
+            onLoad = () -> { };
+            cache.invalidateUser("alice");
+        };
+
+        assertNotNull(cache.authenticate(token));
+        assertNotNull(cache.authenticate(other));
+        assertNotNull(cache.authenticate(token));
+        assertEquals(3, loads.get());
+
+        // 失效之后开始的校验照常缓存
+        assertNotNull(cache.authenticate(token));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void evictsEarliestExpiringBatchWhenFull() {
+        JwtTokenCache cache = cache(20);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i <= 20; i++) {
+            tokens.add(token("user" + i, (i + 1) * HOUR));
+            cache.authenticate(tokens.get(i));
+        }
+        assertEquals(21, loads.get());
+
+        // 第 21 个令牌写入前淘汰了容量的十分之一，即最早过期的两个
+        for (String token : tokens.subList(2, 21)) {
+            cache.authenticate(token);
+        }
+        assertEquals(21, loads.get());
+        cache.authenticate(tokens.get(1));
+        assertEquals(22, loads.get());
+    }
+
+    @Test
+    void evictsExpiredEntriesBeforeLiveOnes() {
+        JwtTokenCache cache = cache(4);
+        cache.authenticate(token("old1", -HOUR));
+        cache.authenticate(token("old2", -HOUR));
+        List<String> live = List.of(token("a", HOUR), token("b", 2 * HOUR), token("c", 3 * HOUR));
+        for (String token : live) {
+            cache.authenticate(token);
+        }
+        assertEquals(5, loads.get());
+
+        for (String token : live) {
+            cache.authenticate(token);
+        }
+        assertEquals(5, loads.get());
+    }
+
+    private JwtTokenCache cache(int maxSize) {
+        return new JwtTokenCache(new FakeJwtUtil(), username -> {
+            loads.incrementAndGet();
+            UserDetails user = new User(username, "", List.of());
+            onLoad.run();
+            return user;
+        }, maxSize);
+    }
+
+    // 测试用令牌："用户名|过期时间（毫秒）"
+    private static String token(String username, long expiresIn) {
+        return username + "|" + (System.currentTimeMillis() + expiresIn);
+    }
+
+    /**
+     * 不做签名校验，直接从测试令牌中取出用户名和过期时间
+     */
+    private static final class FakeJwtUtil extends JwtUtil {
+        @Override
+        public String extractUsername(String token) {
+            return token.substring(0, token.indexOf('|'));
+        }
+
+        @Override
+        public Date extractExpiration(String token) {
+            return new Date(Long.parseLong(token.substring(token.indexOf('|') + 1)));
+        }
+
+        @Override
+        public Boolean validateToken(String token, UserDetails userDetails) {
+            return extractUsername(token).equals(userDetails.getUsername());
+        }
+    }
+}
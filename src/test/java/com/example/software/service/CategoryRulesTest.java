@@ -0,0 +1,150 @@
+package com.example.software.service;
+
+import com.example.software.api.BillingEntry;
+import com.example.software.model.CategoryRule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CategoryRules 与按规则顺序逐条检查的朴素实现对比，以及用户正则表达式的限制
+ */
+class CategoryRulesTest {
+
+    private static final String ALPHABET = "abc咖啡";
+
+    @Test
+    void categorizesSameAsCheckingRulesInOrder() {
+        Random random = new Random(1);
+        for (int round = 0; round < 1000; round++) {
+            List<CategoryRule> rules = randomRules(random);
+            CategoryRules compiled = CategoryRules.compile(rules);
+            for (int i = 0; i < 20; i++) {
+                BillingEntry entry = new BillingEntry();
+                String product = randomText(random, 8);
+                entry.setProduct(product);
+                entry.setRemark(random.nextBoolean() ? product : "x" + randomText(random, 4));
+                entry.setPrice(random.nextInt(5) == 0 ? null : new BigDecimal(random.nextInt(120)));
+
+                assertEquals(categorizeNaively(rules, entry), compiled.categorize(entry));
+            }
+        }
+    }
+
+    @Test
+    void disablesPatternThatExceedsStepLimit() {
+        // 没有嵌套重复，能通过校验，但在 Java 的正则引擎上仍是指数级回溯
+        CategoryRule slow = rule("慢", null, "(x|x){1,40}y");
+        CategoryRule fallback = rule("其他", "x", null);
+        CategoryRules compiled = CategoryRules.compile(List.of(slow, fallback));
+        BillingEntry entry = new BillingEntry();
+        entry.setProduct("x".repeat(40));
+
+        assertEquals("其他", compiled.categorize(entry));
+        assertTrue(compiled.isDisabled(0));
+        assertFalse(compiled.isDisabled(1));
+        assertEquals("其他", compiled.categorize(entry));
+    }
+
+    @Test
+    void rejectsBackreferencesAndNestedQuantifiers() {
+        for (String pattern : List.of("(a+)+$", "(a*)*", "((ab)+c)*", "(\\w*x)*", "(.*x){15}y", "((x+)*)+y",
+                "(a)\\1", "(?<n>a)\\k<n>")) {
+            assertNotNull(CategoryRuleService.unsafeConstruct(pattern), pattern);
+        }
+        for (String pattern : List.of("(a|b)+", "^\\d{2,4}元$", "[(+]+", "\\Q(a+)+\\E", "咖啡|奶茶", "\\(a+\\)+")) {
+            assertNull(CategoryRuleService.unsafeConstruct(pattern), pattern);
+        }
+    }
+
+    private static String categorizeNaively(List<CategoryRule> rules, BillingEntry entry) {
+        String[] texts = {entry.getProduct(), entry.getRemark()};
+        for (CategoryRule rule : rules) {
+            boolean keywordMatched = rule.getKeywords().isEmpty();
+            for (String keyword : rule.getKeywords()) {
+                for (String text : texts) {
+                    keywordMatched |= text != null && text.toLowerCase().contains(keyword.toLowerCase());
+                }
+            }
+            if (!keywordMatched) {
+                continue;
+            }
+            BigDecimal price = entry.getPrice();
+            if ((rule.getMinAmount() != null || rule.getMaxAmount() != null)
+                    && (price == null
+                        || (rule.getMinAmount() != null && price.compareTo(rule.getMinAmount()) < 0)
+                        || (rule.getMaxAmount() != null && price.compareTo(rule.getMaxAmount()) > 0))) {
+                continue;
+            }
+            if (rule.getPattern() != null) {
+                Pattern pattern = Pattern.compile(rule.getPattern(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+                boolean found = false;
+                for (String text : texts) {
+                    found |= text != null && pattern.matcher(text).find();
+                }
+                if (!found) {
+                    continue;
+                }
+            }
+            return rule.getCategory();
+        }
+        return null;
+    }
+
+    // 规则数跨过 64，覆盖位图的多个 long
+    private static List<CategoryRule> randomRules(Random random) {
+        List<CategoryRule> rules = new ArrayList<>();
+        int count = 1 + random.nextInt(80);
+        for (int i = 0; i < count; i++) {
+            CategoryRule rule = rule("c" + i, null, random.nextInt(4) == 0 ? "^a.c" : null);
+            int keywordCount = random.nextInt(3);
+            for (int k = 0; k < keywordCount; k++) {
+                String keyword = ALPHABET.charAt(random.nextInt(ALPHABET.length())) + randomText(random, 3);
+                if (!rule.getKeywords().contains(keyword)) {
+                    rule.getKeywords().add(keyword);
+                }
+            }
+            if (random.nextInt(3) == 0) {
+                rule.setMinAmount(new BigDecimal(random.nextInt(50)));
+            }
+            if (random.nextInt(3) == 0) {
+                rule.setMaxAmount(new BigDecimal(50 + random.nextInt(50)));
+            }
+            if (rule.getKeywords().isEmpty() && rule.getPattern() == null
+                    && rule.getMinAmount() == null && rule.getMaxAmount() == null) {
+                rule.getKeywords().add("a");
+            }
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static CategoryRule rule(String category, String keyword, String pattern) {
+        CategoryRule rule = new CategoryRule();
+        rule.setCategory(category);
+        if (keyword != null) {
+            rule.getKeywords().add(keyword);
+        }
+        rule.setPattern(pattern);
+        return rule;
+    }
+
+    private static String randomText(Random random, int maxLength) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(maxLength);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
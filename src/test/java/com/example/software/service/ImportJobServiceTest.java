@@ -0,0 +1,88 @@
+package com.example.software.service;
+
+import com.example.software.model.ImportJobStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 每个用户未结束的导入任务数有上限：同一用户并发创建时也只有上限数量的请求成功，
+ * 任务结束后名额释放，不同用户互不影响
+ */
+class ImportJobServiceTest {
+
+    private static final int MAX_ACTIVE_JOBS = 4;
+
+    @TempDir
+    Path directory;
+
+    private ImportJobService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 这些测试不运行导入，不需要 BillingImportService
+        service = new ImportJobService(null, directory.toString(), 1, 1, 1024, 4096, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void limitsActiveJobsPerUser() throws IOException {
+        List<ImportJobStatus> created = new ArrayList<>();
+        for (int i = 0; i < MAX_ACTIVE_JOBS; i++) {
+            created.add(service.create("u1", "bills.csv", null, -1));
+        }
+        assertThrows(IllegalStateException.class, () -> service.create("u1", "bills.csv", null, -1));
+        service.create("u2", "bills.csv", null, -1);
+
+        service.cancel("u1", created.get(0).getJobId());
+        service.create("u1", "bills.csv", null, -1);
+        assertThrows(IllegalStateException.class, () -> service.create("u1", "bills.csv", null, -1));
+    }
+
+    @Test
+    void concurrentCreatesDoNotExceedLimit() throws Exception {
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    service.create("u1", "bills.csv", null, -1);
+                    accepted.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            workers.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        assertEquals(MAX_ACTIVE_JOBS, accepted.get());
+        assertEquals(threads - MAX_ACTIVE_JOBS, rejected.get());
+        assertEquals(MAX_ACTIVE_JOBS, service.list("u1").size());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.software.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 与逐个关键词 indexOf 计数的朴素实现对比：随机关键词（含中文、大写、空串、互为前后缀）和随机文本上，
+ * 每个关键词的命中次数必须一致
+ */
+class AhoCorasickTest {
+
+    private static final String ALPHABET = "abc咖啡";
+
+    @Test
+    void matchesSameCountsAsNaiveSearch() {
+        Random random = new Random(1);
+        for (int round = 0; round < 2000; round++) {
+            List<String> keywords = new ArrayList<>();
+            int keywordCount = 1 + random.nextInt(8);
+            for (int i = 0; i < keywordCount; i++) {
+                String keyword = randomText(random, 4);
+                keywords.add(random.nextBoolean() ? keyword : keyword.toUpperCase());
+            }
+            String text = randomText(random, 20);
+
+            int[] counts = new int[keywordCount];
+            AhoCorasick.compile(keywords).match(text, id -> counts[id]++);
+
+            assertArrayEquals(naiveCounts(keywords, text), counts, () -> keywords + " in \"" + text + "\"");
+        }
+    }
+
+    @Test
+    void ignoresCaseOfText() {
+        int[] counts = new int[2];
+        AhoCorasick.compile(List.of("coffee", "咖啡")).match("COFFEE 咖啡 Coffee", id -> counts[id]++);
+        assertArrayEquals(new int[]{2, 1}, counts);
+    }
+
+    @Test
+    void nullTextAndEmptyKeywordNeverMatch() {
+        int[] counts = new int[2];
+        AhoCorasick automaton = AhoCorasick.compile(List.of("", "a"));
+        automaton.match(null, id -> counts[id]++);
+        automaton.match("aa", id -> counts[id]++);
+        assertEquals(2, automaton.getKeywordCount());
+        assertArrayEquals(new int[]{0, 2}, counts);
+    }
+
+    private static int[] naiveCounts(List<String> keywords, String text) {
+        String lower = text.toLowerCase();
+        int[] counts = new int[keywords.size()];
+        for (int i = 0; i < keywords.size(); i++) {
+            String keyword = keywords.get(i).toLowerCase();
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            for (int at = lower.indexOf(keyword); at >= 0; at = lower.indexOf(keyword, at + 1)) {
+                counts[i]++;
+            }
+        }
+        return counts;
+    }
+
+    private static String randomText(Random random, int maxLength) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(maxLength);
+        for (int i = 0; i < length; i++) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
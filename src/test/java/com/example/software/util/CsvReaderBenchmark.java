@@ -0,0 +1,103 @@
+package com.example.software.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * CsvReader 吞吐量基准：生成一个一百万行的账单 CSV，分别用 CsvReader 和旧的
+ * split(",") + replace("\"", "") 方式解析，输出每秒行数。
+ *
+ * 不是单元测试，不随 mvn test 运行。运行方式：
+ * mvn test-compile exec:java -Dexec.mainClass=com.example.software.util.CsvReaderBenchmark
+ *     -Dexec.classpathScope=test [-Dexec.args="行数 轮数"]
+ */
+public class CsvReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Path file = Files.createTempFile("billing-benchmark", ".csv");
+        try {
+            generate(file, rows);
+            System.out.printf("%d 行，%.1f MB%n", rows, Files.size(file) / 1024.0 / 1024.0);
+            for (int round = 1; round <= rounds; round++) {
+                long checksum = 0;
+                long start = System.nanoTime();
+                checksum += readWithCsvReader(file);
+                long csvReaderNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                checksum += readWithSplit(file);
+                long splitNanos = System.nanoTime() - start;
+
+                System.out.printf("第 %d 轮  CsvReader: %,.0f 行/秒   split: %,.0f 行/秒   (校验 %d)%n",
+                    round, rows / (csvReaderNanos / 1e9), rows / (splitNanos / 1e9), checksum);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // 类别,产品,日期,时间,价格,备注；部分产品和备注带引号、逗号和转义的引号
+    private static void generate(Path file, int rows) throws IOException {
+        String[] categories = {"餐饮", "交通", "购物", "娱乐", "工资"};
+        String[] products = {"咖啡", "地铁", "午饭, 套餐", "电影票", "\"特价\"商品", "Coffee Bean"};
+        Random random = new Random(42);
+        try (CsvWriter csv = new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            csv.writeRecord("类别", "产品", "日期", "时间", "价格", "备注");
+            for (int i = 0; i < rows; i++) {
+                String product = products[random.nextInt(products.length)];
+                csv.write(categories[random.nextInt(categories.length)])
+                    .write(product)
+                    .write(String.format("2024-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)))
+                    .write(String.format("%02d:%02d", random.nextInt(24), random.nextInt(60)))
+                    .write(BigDecimal.valueOf(random.nextInt(100_000), 2))
+                    .write(random.nextInt(4) == 0 ? product + " 备注" : "")
+                    .endRecord();
+            }
+        }
+    }
+
+    // 按列解码：价格直接从字符解析，只为文本列创建字符串
+    private static long readWithCsvReader(Path file) throws IOException {
+        long checksum = 0;
+        try (CsvReader reader = new CsvReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.next();
+            while (reader.next()) {
+                String category = reader.getString(0);
+                String product = reader.getString(1);
+                BigDecimal price = reader.getDecimal(4);
+                checksum += category.length() + product.length() + price.unscaledValue().longValue()
+                    + reader.length(2) + reader.length(3) + reader.length(5);
+            }
+        }
+        return checksum;
+    }
+
+    // 旧实现的写法，遇到引号内的逗号会切错列
+    private static long readWithSplit(Path file) throws IOException {
+        long checksum = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = values[i].replace("\"", "");
+                }
+                checksum += values.length;
+                try {
+                    checksum += new BigDecimal(values[4].trim()).unscaledValue().longValue();
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    checksum--;
+                }
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.software.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CsvReader 的 RFC 4180 解析：引号、转义、各种换行（含跨缓冲区边界的 CRLF）、BOM、行号，
+ * 以及 CsvWriter 写出的内容能原样读回
+ */
+class CsvReaderTest {
+
+    // CsvReader 允许的最小缓冲区，让记录跨越多次读取
+    private static final int SMALL_BUFFER = 16;
+
+    @Test
+    void readsQuotedCommasEscapedQuotesAndNewlines() throws IOException {
+        String csv = "类别,产品,备注\n"
+            + "餐饮,\"午饭, 套餐\",\"他说 \"\"好吃\"\"\"\n"
+            + "购物,\"两行\n备注\",\n"
+            + "交通,地铁,\"\"\n";
+
+        assertEquals(List.of(
+            List.of("类别", "产品", "备注"),
+            List.of("餐饮", "午饭, 套餐", "他说 \"好吃\""),
+            List.of("购物", "两行\n备注", ""),
+            List.of("交通", "地铁", "")), read(csv, SMALL_BUFFER));
+    }
+
+    @Test
+    void countsNewlinesInsideQuotesInLineNumbers() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a\n\"b\nc\nd\"\ne\n"));
+        List<Long> lines = new ArrayList<>();
+        while (reader.next()) {
+            lines.add(reader.getLineNumber());
+        }
+        assertEquals(List.of(1L, 2L, 5L), lines);
+    }
+
+    @Test
+    void acceptsLfCrLfAndCrLineEndings() throws IOException {
+        List<List<String>> expected = List.of(List.of("a", "b"), List.of("c", "d"), List.of("e", "f"));
+        for (String separator : List.of("\n", "\r\n", "\r")) {
+            String csv = "a,b" + separator + "c,d" + separator + "e,f" + separator;
+            assertEquals(expected, read(csv, SMALL_BUFFER), () -> "separator " + escape(separator));
+            assertEquals(expected, read(csv.substring(0, csv.length() - separator.length()), SMALL_BUFFER));
+        }
+    }
+
+    @Test
+    void keepsCrLfTogetherAcrossBufferRefill() throws IOException {
+        // 每个位置都让 CR 恰好落在缓冲区末尾一次
+        for (int padding = 0; padding < SMALL_BUFFER; padding++) {
+            String first = "x".repeat(padding);
+            String csv = first + "\r\nsecond\r\n\"q\"\r\nlast";
+            List<List<String>> records = read(csv, SMALL_BUFFER);
+            assertEquals(List.of(List.of(first), List.of("second"), List.of("q"), List.of("last")), records,
+                "padding " + padding);
+        }
+    }
+
+    @Test
+    void skipsByteOrderMark() throws IOException {
+        assertEquals(List.of(List.of("类别", "产品")), read("\uFEFF类别,产品\n", SMALL_BUFFER));
+        // 只跳过文件开头的 BOM
+        assertEquals(List.of(List.of("a"), List.of("\uFEFFb")), read("a\n\uFEFFb\n", 4096));
+    }
+
+    @Test
+    void keepsEmptyFieldsAndBlankLines() throws IOException {
+        assertEquals(List.of(List.of("a", ""), List.of(""), List.of("", "", "")),
+            read("a,\n\n,,\n", SMALL_BUFFER));
+        assertEquals(List.of(List.of("a", "")), read("a,", SMALL_BUFFER));
+        assertEquals(List.of(), read("", SMALL_BUFFER));
+    }
+
+    @Test
+    void rejectsUnterminatedQuote() {
+        IOException error = assertThrows(IOException.class, () -> read("a,b\nc,\"unterminated\nd\n", SMALL_BUFFER));
+        assertTrue(error.getMessage().contains("第 2 行"), error.getMessage());
+    }
+
+    @Test
+    void parsesDecimalsAndBlankFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(" 12.50 ,\" \",-3"));
+        assertTrue(reader.next());
+        assertEquals(new BigDecimal("12.50"), reader.getDecimal(0));
+        assertTrue(reader.isBlank(1));
+        assertFalse(reader.isBlank(2));
+        assertEquals(new BigDecimal("-3"), reader.getDecimal(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.getString(3));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void readsBackWhatCsvWriterWrites() throws IOException {
+        String[] pieces = {"", "a", "咖啡", ",", "\"", "\n", "\r", "\r\n", " ", "x\"y"};
+        Random random = new Random(7);
+        List<List<String>> records = new ArrayList<>();
+        StringWriter out = new StringWriter();
+        try (CsvWriter writer = new CsvWriter(out)) {
+            for (int i = 0; i < 200; i++) {
+                List<String> record = new ArrayList<>();
+                int fields = 1 + random.nextInt(5);
+                for (int f = 0; f < fields; f++) {
+                    StringBuilder value = new StringBuilder();
+                    int length = random.nextInt(4);
+                    for (int k = 0; k < length; k++) {
+                        value.append(pieces[random.nextInt(pieces.length)]);
+                    }
+                    record.add(value.toString());
+                    writer.write(value);
+                }
+                writer.endRecord();
+                records.add(record);
+            }
+        }
+        assertEquals(records, read(out.toString(), SMALL_BUFFER));
+    }
+
+    private static List<List<String>> read(String csv, int bufferSize) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader reader = new CsvReader(new StringReader(csv), bufferSize)) {
+            while (reader.next()) {
+                List<String> record = new ArrayList<>();
+                for (int i = 0; i < reader.getFieldCount(); i++) {
+                    record.add(reader.getString(i));
+                }
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static String escape(String separator) {
+        return separator.replace("\r", "\\r").replace("\n", "\\n");
+    }
+}